@@ -0,0 +1,63 @@
+package com.qualys.validator.benchmarks;
+
+import com.qualys.validator.engine.ErrorCode;
+import com.qualys.validator.engine.ErrorLog;
+import com.qualys.validator.engine.OrderIdIndex;
+import com.qualys.validator.engine.ValidationContext;
+import com.qualys.validator.engine.ValidationResult;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+// ValidationContext.captureErrors for a valid record and for one with a single error, with the
+// errors only counted or also appended to an error log (recreated every iteration so it stays small)
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CaptureErrorsBenchmark {
+
+    @Param({ "0", "1" })
+    public int errors;
+
+    @Param({ "none", "file" })
+    public String errorLog;
+
+    private Path logFile;
+    private ErrorLog log;
+    private ValidationContext context;
+    private final ValidationResult result = new ValidationResult();
+    private int lineNumber;
+
+    @Setup(Level.Iteration)
+    public void setUp() throws IOException {
+        if (errorLog.equals("file")) {
+            logFile = Files.createTempFile("bench-errors", ".ndjson");
+            log = new ErrorLog(logFile);
+        }
+        context = new ValidationContext(new OrderIdIndex(), log);
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws IOException {
+        if (log != null) {
+            log.close();
+            Files.deleteIfExists(logFile);
+            Files.deleteIfExists(ErrorLog.indexPath(logFile));
+        }
+    }
+
+    @Benchmark
+    public ValidationContext capture() {
+        result.reset(++lineNumber);
+        if (errors > 0)
+            result.addError(ErrorCode.UNKNOWN_FIELD, "coupon_code");
+        context.captureErrors(result);
+        return context;
+    }
+}
@@ -0,0 +1,67 @@
+package com.qualys.validator.benchmarks;
+
+import com.qualys.validator.CsvExporter;
+import com.qualys.validator.CsvPartitionWriter;
+import com.qualys.validator.engine.ErrorCode;
+import com.qualys.validator.engine.ValidationResult;
+import com.qualys.validator.model.Record;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// One record (one row per item): CsvExporter.exportToCsv into a discarding writer, and
+// CsvPartitionWriter into real valid/invalid files with every fourth record invalid
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CsvExportBenchmark {
+
+    private static final int POOL = 4096;
+
+    private List<Record> records;
+    private final ValidationResult[] results = new ValidationResult[POOL];
+    private final PrintWriter writer = new PrintWriter(Writer.nullWriter());
+    private Path directory;
+    private CsvPartitionWriter partitions;
+    private int cursor;
+
+    @Setup
+    public void setUp() throws IOException {
+        records = Fixtures.parse(POOL);
+        for (int i = 0; i < POOL; i++) {
+            results[i] = new ValidationResult(i + 1);
+            if (i % 4 == 0)
+                results[i].addError(ErrorCode.TOTAL_MISMATCH, "1.00", "2.00");
+        }
+        directory = Files.createTempDirectory("csv-bench");
+        partitions = new CsvPartitionWriter(directory.resolve("valid.csv"), directory.resolve("invalid.csv"));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        partitions.close();
+        Files.delete(directory.resolve("valid.csv"));
+        Files.delete(directory.resolve("invalid.csv"));
+        Files.delete(directory);
+    }
+
+    @Benchmark
+    public void export() {
+        CsvExporter.exportToCsv(records.get(cursor++ & (POOL - 1)), writer);
+    }
+
+    @Benchmark
+    public void partitioned() {
+        int index = cursor++ & (POOL - 1);
+        partitions.write(records.get(index), index + 1, results[index]);
+    }
+}
@@ -0,0 +1,128 @@
+package com.qualys.validator.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.qualys.validator.model.Record;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+
+// Deterministic synthetic orders in the shape of records.json: valid ones, and ones carrying
+// exactly one of the defects the rules look for. Amounts are computed in cents so valid totals
+// always reconcile.
+public final class Fixtures {
+
+    public enum Defect {
+        MISSING_USER_ID, UNKNOWN_FIELD, BAD_ORDER_ID, UPDATED_BEFORE_CREATED, BAD_CURRENCY, NEGATIVE_QTY,
+        TOTAL_MISMATCH, INJECTION, RISKY_CURRENCY, DUPLICATE_ORDER_ID, USER_BURST
+    }
+
+    private static final String[] CURRENCIES = { "USD", "EUR", "INR" };
+    private static final String[] CHANNELS = { "web", "mobile", "store" };
+    private static final LocalDateTime START = LocalDateTime.of(2025, 1, 1, 0, 0);
+    private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss'Z'");
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private Fixtures() {
+    }
+
+    public static String valid(int i) {
+        return record(i, null);
+    }
+
+    public static String invalid(int i, Defect defect) {
+        return record(i, defect);
+    }
+
+    // Cycles through the given defects
+    public static List<Record> parse(int count, Defect... defects) {
+        List<Record> records = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String json = defects.length == 0 ? valid(i) : invalid(i, defects[i % defects.length]);
+            records.add(parse(json));
+        }
+        return records;
+    }
+
+    public static Record parse(String json) {
+        try {
+            return MAPPER.readValue(json, Record.class);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // One record per line; every invalidEvery-th record carries a defect, cycling through all of them
+    public static Path writeFile(Path file, int records, int invalidEvery) throws IOException {
+        Defect[] defects = Defect.values();
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < records; i++) {
+                out.write(i % invalidEvery == 0 ? invalid(i, defects[(i / invalidEvery) % defects.length]) : valid(i));
+                out.write('\n');
+            }
+        }
+        return file;
+    }
+
+    private static String record(int i, Defect defect) {
+        String orderId = defect == Defect.DUPLICATE_ORDER_ID ? "O-0"
+                : defect == Defect.BAD_ORDER_ID ? "ORD" + i : "O-" + i;
+        String userId = defect == Defect.USER_BURST ? "U-1" : "U-" + (i * 7919L % 50_000);
+        String currency = defect == Defect.BAD_CURRENCY ? "GBP"
+                : defect == Defect.RISKY_CURRENCY ? "BTC" : CURRENCIES[i % CURRENCIES.length];
+        LocalDateTime created = START.plusSeconds(i * 37L);
+        LocalDateTime updated = defect == Defect.UPDATED_BEFORE_CREATED ? created.minusMinutes(5)
+                : created.plusMinutes(3);
+
+        StringBuilder json = new StringBuilder(320);
+        json.append("{\"order_id\": \"").append(orderId).append('"');
+        if (defect != Defect.MISSING_USER_ID)
+            json.append(", \"user_id\": \"").append(userId).append('"');
+        json.append(", \"currency\": \"").append(currency).append('"');
+
+        long totalCents = 0;
+        int itemCount = 1 + i % 3;
+        json.append(", \"items\": [");
+        for (int n = 0; n < itemCount; n++) {
+            int qty = defect == Defect.NEGATIVE_QTY && n == 0 ? -1 : 1 + (i + n) % 4;
+            long priceCents = 499 + (i * 31L + n * 977L) % 50_000;
+            totalCents += qty * priceCents;
+            if (n > 0)
+                json.append(", ");
+            String sku = defect == Defect.INJECTION && n == 0 ? "<script>alert(1)</script>" : "SKU-" + (i + n) % 1000;
+            json.append("{\"sku\": \"").append(sku).append("\", \"qty\": ").append(qty)
+                    .append(", \"price\": ").append(cents(priceCents)).append('}');
+        }
+        json.append(']');
+
+        long discountCents = i % 4 == 0 ? Math.min(295, totalCents) : 0;
+        json.append(", \"discounts\": [");
+        if (discountCents > 0)
+            json.append("{\"type\": \"PROMO\", \"amount\": ").append(cents(discountCents)).append('}');
+        json.append(']');
+        totalCents -= discountCents;
+        if (defect == Defect.TOTAL_MISMATCH)
+            totalCents += 1000;
+
+        json.append(", \"total_amount\": ").append(cents(totalCents));
+        json.append(", \"created_at\": \"").append(TIMESTAMP.format(created)).append('"');
+        json.append(", \"updated_at\": \"").append(TIMESTAMP.format(updated)).append('"');
+        json.append(", \"metadata\": {\"channel\": \"").append(CHANNELS[i % CHANNELS.length]).append("\"}");
+        if (defect == Defect.UNKNOWN_FIELD)
+            json.append(", \"coupon_code\": \"SPRING").append(i % 100).append('"');
+        return json.append('}').toString();
+    }
+
+    private static String cents(long cents) {
+        String sign = cents < 0 ? "-" : "";
+        long abs = Math.abs(cents);
+        return String.format("%s%d.%02d", sign, abs / 100, abs % 100);
+    }
+}
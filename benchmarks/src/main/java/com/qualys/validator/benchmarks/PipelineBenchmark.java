@@ -0,0 +1,106 @@
+package com.qualys.validator.benchmarks;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.qualys.validator.Validator;
+import com.qualys.validator.engine.ErrorLog;
+import com.qualys.validator.engine.OrderIdIndex;
+import com.qualys.validator.engine.ValidationContext;
+import com.qualys.validator.engine.ValidationResult;
+import com.qualys.validator.io.ParallelRecordReader;
+import com.qualys.validator.model.Record;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+// The loop Main runs over a generated file: chunked parsing and record-local rules on the worker
+// pool, in-order commit with duplicate and velocity checks, every error appended to the error log.
+// One operation is the whole file; records / (s/op) gives records per second.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class PipelineBenchmark {
+
+    @Param({ "200000" })
+    public int records;
+
+    @Param({ "1", "4" })
+    public int threads;
+
+    @Param({ "false", "true" })
+    public boolean lean;
+
+    private Path directory;
+    private Path input;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("bench-pipeline");
+        // Every 10th record is invalid
+        input = Fixtures.writeFile(directory.resolve("records.json"), records, 10);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(input);
+        Files.deleteIfExists(directory.resolve("validation_errors.ndjson"));
+        Files.deleteIfExists(ErrorLog.indexPath(directory.resolve("validation_errors.ndjson")));
+        Files.deleteIfExists(directory);
+    }
+
+    @Benchmark
+    public long validateFile() throws IOException {
+        ErrorLog errorLog = new ErrorLog(directory.resolve("validation_errors.ndjson"));
+        ValidationContext context = new ValidationContext(new OrderIdIndex(), errorLog);
+        Validator validator = new Validator(context);
+
+        ParallelRecordReader.WorkerStage<ValidationResult> stage;
+        if (lean) {
+            stage = new ParallelRecordReader.TokenStage<ValidationResult>() {
+                @Override
+                public boolean scan(JsonParser parser, ParallelRecordReader.Entry<ValidationResult> entry)
+                        throws IOException {
+                    Record record = new Record();
+                    ValidationResult result = validator.evaluate(parser, record);
+                    if (result == null)
+                        return false;
+                    entry.record = record;
+                    entry.workerResult = detach(result);
+                    return true;
+                }
+
+                @Override
+                public ValidationResult process(Record record) {
+                    return detach(validator.evaluate(record));
+                }
+            };
+        } else {
+            stage = record -> detach(validator.evaluate(record));
+        }
+
+        try (errorLog) {
+            new ParallelRecordReader(new ObjectMapper(), threads).read(input, stage,
+                    new ParallelRecordReader.Sink<ValidationResult>() {
+                        @Override
+                        public void accept(int lineNumber, Record record, ValidationResult localErrors) {
+                            validator.commit(record, lineNumber, localErrors);
+                        }
+
+                        @Override
+                        public void parseError(int lineNumber, String message) {
+                        }
+                    });
+        }
+        return context.getInvalidRecords();
+    }
+
+    private static ValidationResult detach(ValidationResult result) {
+        return result.hasErrors() ? result.copy() : null;
+    }
+}
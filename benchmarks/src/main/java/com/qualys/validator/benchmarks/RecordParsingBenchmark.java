@@ -0,0 +1,58 @@
+package com.qualys.validator.benchmarks;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.qualys.validator.io.RecordDecoder;
+import com.qualys.validator.model.Record;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+// One NDJSON line into a Record: Jackson databinding, and RecordDecoder, which workers try first
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RecordParsingBenchmark {
+
+    private static final int POOL = 4096;
+
+    @Param({ "valid", "invalid" })
+    public String input;
+
+    private final ObjectReader reader = new ObjectMapper().readerFor(Record.class);
+    private final JsonFactory jsonFactory = new JsonFactory();
+    private byte[][] lines;
+    private int cursor;
+
+    @Setup
+    public void setUp() {
+        Fixtures.Defect[] defects = Fixtures.Defect.values();
+        lines = new byte[POOL][];
+        for (int i = 0; i < POOL; i++) {
+            String json = input.equals("valid") ? Fixtures.valid(i) : Fixtures.invalid(i, defects[i % defects.length]);
+            lines[i] = json.getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    @Benchmark
+    public Record databind() throws IOException {
+        return reader.readValue(lines[cursor++ & (POOL - 1)]);
+    }
+
+    // Null for a record the decoder leaves to databinding
+    @Benchmark
+    public Record decoder() throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(lines[cursor++ & (POOL - 1)])) {
+            parser.nextToken();
+            Record record = new Record();
+            return RecordDecoder.read(parser, record) ? record : null;
+        }
+    }
+}
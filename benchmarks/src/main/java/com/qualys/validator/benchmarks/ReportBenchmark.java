@@ -0,0 +1,57 @@
+package com.qualys.validator.benchmarks;
+
+import com.qualys.validator.Validator;
+import com.qualys.validator.engine.ErrorLog;
+import com.qualys.validator.engine.OrderIdIndex;
+import com.qualys.validator.engine.ValidationContext;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// Validator.generateHtmlReport after validating a generated feed: dashboard plus paged detail files
+// read back from the error log
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ReportBenchmark {
+
+    @Param({ "100000" })
+    public int records;
+
+    private Path directory;
+    private Validator validator;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("bench-report");
+        ErrorLog errorLog = new ErrorLog(directory.resolve("validation_errors.ndjson"));
+        validator = new Validator(new ValidationContext(new OrderIdIndex(), errorLog));
+        Fixtures.Defect[] defects = Fixtures.Defect.values();
+        for (int i = 0; i < records; i++) {
+            // Every 5th record is invalid
+            String json = i % 5 == 0 ? Fixtures.invalid(i, defects[(i / 5) % defects.length]) : Fixtures.valid(i);
+            validator.validate(Fixtures.parse(json), i + 1);
+        }
+        errorLog.close();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public void generateHtmlReport() {
+        validator.generateHtmlReport(directory.resolve("validation_report.html").toString());
+    }
+}
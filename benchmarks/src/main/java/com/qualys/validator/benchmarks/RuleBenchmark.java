@@ -0,0 +1,84 @@
+package com.qualys.validator.benchmarks;
+
+import com.qualys.validator.benchmarks.Fixtures.Defect;
+import com.qualys.validator.engine.ValidationContext;
+import com.qualys.validator.engine.ValidationResult;
+import com.qualys.validator.engine.ValidationRule;
+import com.qualys.validator.model.Record;
+import com.qualys.validator.rules.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Each rule on its own over already bound records. "invalid" records carry the defects that rule
+// reports. The context starts over whenever the pool wraps, so the stateful rules (dedup, velocity)
+// see every valid order id and user as new.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RuleBenchmark {
+
+    private static final int POOL = 4096;
+
+    @Param({ "SchemaRule", "DataLogicRule", "FinancialRule", "SecurityRule", "CrossRecordRule", "VelocityRule" })
+    public String rule;
+
+    @Param({ "valid", "invalid" })
+    public String input;
+
+    private ValidationRule validationRule;
+    private List<Record> records;
+    private ValidationContext context;
+    private final ValidationResult result = new ValidationResult();
+    private int cursor;
+
+    @Setup
+    public void setUp() {
+        Defect[] defects;
+        switch (rule) {
+            case "SchemaRule":
+                validationRule = new SchemaRule();
+                defects = new Defect[] { Defect.MISSING_USER_ID, Defect.UNKNOWN_FIELD };
+                break;
+            case "DataLogicRule":
+                validationRule = new DataLogicRule();
+                defects = new Defect[] { Defect.BAD_ORDER_ID, Defect.BAD_CURRENCY, Defect.UPDATED_BEFORE_CREATED };
+                break;
+            case "FinancialRule":
+                validationRule = new FinancialRule();
+                defects = new Defect[] { Defect.NEGATIVE_QTY, Defect.TOTAL_MISMATCH };
+                break;
+            case "SecurityRule":
+                validationRule = new SecurityRule();
+                defects = new Defect[] { Defect.INJECTION, Defect.RISKY_CURRENCY };
+                break;
+            case "CrossRecordRule":
+                validationRule = new CrossRecordRule();
+                defects = new Defect[] { Defect.DUPLICATE_ORDER_ID };
+                break;
+            case "VelocityRule":
+                validationRule = new VelocityRule();
+                defects = new Defect[] { Defect.USER_BURST };
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown rule: " + rule);
+        }
+        records = input.equals("valid") ? Fixtures.parse(POOL) : Fixtures.parse(POOL, defects);
+        context = new ValidationContext();
+    }
+
+    @Benchmark
+    public ValidationResult validate() {
+        if (cursor == POOL) {
+            cursor = 0;
+            context = new ValidationContext();
+        }
+        result.reset(cursor);
+        validationRule.validate(records.get(cursor++), context, result);
+        return result;
+    }
+}
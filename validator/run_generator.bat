@@ -0,0 +1,14 @@
+@echo off
+echo Building project...
+cd d:\Qualys\validator
+call mvn clean package
+if %ERRORLEVEL% NEQ 0 (
+    echo Build failed.
+    pause
+    exit /b %ERRORLEVEL%
+)
+
+echo.
+echo Generating 1M synthetic records...
+java -cp target/records-validator-1.0-SNAPSHOT.jar com.qualys.validator.RecordGenerator "d:\Qualys\generated_records.json" --records 1M --missing-fields 0.01 --bad-totals 0.01 --duplicates 0.01 --risky-currencies 0.01 --injections 0.01 --unknown-fields 0.01
+pause
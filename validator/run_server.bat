@@ -0,0 +1,14 @@
+@echo off
+echo Building project...
+cd d:\Qualys\validator
+call mvn clean package
+if %ERRORLEVEL% NEQ 0 (
+    echo Build failed.
+    pause
+    exit /b %ERRORLEVEL%
+)
+
+echo.
+echo Starting validation service on port 8080...
+java -jar target/records-validator-1.0-SNAPSHOT.jar --serve 8080
+pause
@@ -1,7 +1,14 @@
 @echo off
 echo Building the project...
 cd d:\Qualys\validator
-call mvn clean package
+rem "run_validation.bat cds" also builds and uses the class-data archive (see README, Fast Start)
+set BUILD_ARGS=
+set JAVA_ARGS=
+if /i "%~1"=="cds" (
+    set BUILD_ARGS=-Pcds
+    set JAVA_ARGS=-XX:SharedArchiveFile=target/records-validator-1.0-SNAPSHOT.jsa
+)
+call mvn clean package %BUILD_ARGS%
 if %ERRORLEVEL% NEQ 0 (
     echo Build failed. Please ensure Maven is installed and in your PATH.
     pause
@@ -10,5 +17,5 @@ if %ERRORLEVEL% NEQ 0 (
 
 echo.
 echo Running validation against records.json...
-java -jar target/records-validator-1.0-SNAPSHOT.jar "d:\Qualys\records.json"
+java %JAVA_ARGS% -jar target/records-validator-1.0-SNAPSHOT.jar "d:\Qualys\records.json"
 pause
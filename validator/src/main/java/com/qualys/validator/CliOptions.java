@@ -0,0 +1,245 @@
+package com.qualys.validator;
+
+import com.qualys.validator.engine.UserVelocityIndex;
+import com.qualys.validator.engine.ValueProfile;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+public class CliOptions {
+    // Files, directories or globs; validated in order as one input
+    public List<String> inputPaths = new ArrayList<>();
+    public boolean exportCsv = false;
+    public int threads = 1;
+    // 0 keeps every order id for the whole run
+    public long dedupWindowSeconds = 0;
+    public boolean dedupBloom = false;
+    public String errorLogPath = "validation_errors.ndjson";
+    // Validate straight off the token stream instead of databinding every record
+    public boolean lean = false;
+    // Flag users with more than velocityLimit orders within velocityWindowSeconds
+    public int velocityLimit = UserVelocityIndex.DEFAULT_LIMIT;
+    public long velocityWindowSeconds = UserVelocityIndex.DEFAULT_WINDOW_SECONDS;
+    // Flag values above this quantile of their currency and channel once a segment has
+    // outlierMinSamples of them; 0 only profiles
+    public double outlierQuantile = ValueProfile.DEFAULT_QUANTILE;
+    public long outlierMinSamples = ValueProfile.DEFAULT_MIN_SAMPLES;
+    // null uses SecurityRule.DEFAULT_INJECTION_PATTERNS
+    public String injectionPatternsPath;
+    // null disables checkpoints
+    public String checkpointPath;
+    public long checkpointIntervalSeconds = 60;
+    // Continue from checkpointPath instead of starting at byte 0
+    public boolean resume = false;
+    // Keep validating lines appended to the input until interrupted
+    public boolean follow = false;
+    // Stop at a record's first HIGH-severity error; optionally reorder rules by measured cost
+    public boolean failFast = false;
+    public boolean adaptiveOrder = false;
+    // Write <metricsPrefix>.json and .prom at the end; null disables latency and allocation metrics
+    public String metricsPrefix;
+    // Print throughput and ETA on stderr while reading
+    public boolean progress = false;
+    // Write a columnar snapshot of the validated records; null disables it
+    public String snapshotPath;
+    // Run the HTTP validation service on this port instead of validating files; 0 disables it
+    public int servePort = 0;
+    // Service only: whether duplicate and velocity checks span all requests or each request alone
+    public boolean globalDedup = false;
+    // Validate only the records whose order id falls in slice shardIndex of shardCount
+    public int shardIndex = 0;
+    public int shardCount = 1;
+    // Write the context summary (see ContextSnapshot) at the end; null disables it unless sharding
+    public String contextPath;
+    // Reuse the results of lines a previous run saw, kept in this file; null validates every line
+    public String incrementalPath;
+    // Combine the context summaries given as inputs into one report instead of validating
+    public boolean merge = false;
+
+    public static CliOptions parse(String[] args) {
+        CliOptions options = new CliOptions();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equalsIgnoreCase("--csv")) {
+                options.exportCsv = true;
+            } else if (arg.equalsIgnoreCase("--threads")) {
+                options.threads = parseThreads(value(args, ++i, arg));
+            } else if (arg.equalsIgnoreCase("--dedup-window")) {
+                options.dedupWindowSeconds = parseDuration(value(args, ++i, arg));
+            } else if (arg.equalsIgnoreCase("--dedup-bloom")) {
+                options.dedupBloom = true;
+            } else if (arg.equalsIgnoreCase("--error-log")) {
+                options.errorLogPath = value(args, ++i, arg);
+            } else if (arg.equalsIgnoreCase("--injection-patterns")) {
+                options.injectionPatternsPath = value(args, ++i, arg);
+            } else if (arg.equalsIgnoreCase("--velocity-limit")) {
+                options.velocityLimit = parseVelocityLimit(value(args, ++i, arg));
+            } else if (arg.equalsIgnoreCase("--velocity-window")) {
+                options.velocityWindowSeconds = parseDuration(value(args, ++i, arg));
+            } else if (arg.equalsIgnoreCase("--outlier-quantile")) {
+                options.outlierQuantile = parseOutlierQuantile(value(args, ++i, arg));
+            } else if (arg.equalsIgnoreCase("--outlier-min-samples")) {
+                options.outlierMinSamples = Long.parseLong(value(args, ++i, arg));
+                if (options.outlierMinSamples < 1)
+                    throw new IllegalArgumentException("--outlier-min-samples must be positive");
+            } else if (arg.equalsIgnoreCase("--lean")) {
+                options.lean = true;
+            } else if (arg.equalsIgnoreCase("--checkpoint")) {
+                options.checkpointPath = value(args, ++i, arg);
+            } else if (arg.equalsIgnoreCase("--checkpoint-interval")) {
+                options.checkpointIntervalSeconds = parseDuration(value(args, ++i, arg));
+            } else if (arg.equalsIgnoreCase("--resume")) {
+                options.resume = true;
+            } else if (arg.equalsIgnoreCase("--follow")) {
+                options.follow = true;
+            } else if (arg.equalsIgnoreCase("--fail-fast")) {
+                options.failFast = true;
+            } else if (arg.equalsIgnoreCase("--adaptive-order")) {
+                options.adaptiveOrder = true;
+            } else if (arg.equalsIgnoreCase("--metrics")) {
+                options.metricsPrefix = value(args, ++i, arg);
+            } else if (arg.equalsIgnoreCase("--progress")) {
+                options.progress = true;
+            } else if (arg.equalsIgnoreCase("--snapshot")) {
+                options.snapshotPath = value(args, ++i, arg);
+            } else if (arg.equalsIgnoreCase("--serve")) {
+                options.servePort = parsePort(value(args, ++i, arg));
+            } else if (arg.equalsIgnoreCase("--dedup-scope")) {
+                options.globalDedup = parseDedupScope(value(args, ++i, arg));
+            } else if (arg.equalsIgnoreCase("--shard")) {
+                parseShard(value(args, ++i, arg), options);
+            } else if (arg.equalsIgnoreCase("--context")) {
+                options.contextPath = value(args, ++i, arg);
+            } else if (arg.equalsIgnoreCase("--incremental")) {
+                options.incrementalPath = value(args, ++i, arg);
+            } else if (arg.equalsIgnoreCase("--merge")) {
+                options.merge = true;
+            } else if (arg.startsWith("--")) {
+                throw new IllegalArgumentException("Unknown option: " + arg);
+            } else {
+                options.inputPaths.add(arg);
+            }
+        }
+        if (options.servePort > 0) {
+            if (!options.inputPaths.isEmpty() || options.exportCsv || options.snapshotPath != null
+                    || options.checkpointPath != null || options.follow || options.lean
+                    || options.metricsPrefix != null || options.progress || options.incrementalPath != null)
+                throw new IllegalArgumentException("--serve takes no input files and none of --csv, --snapshot,"
+                        + " --checkpoint, --follow, --lean, --metrics, --progress or --incremental");
+        } else if (options.inputPaths.isEmpty()) {
+            throw new IllegalArgumentException(options.merge ? "Missing context files to merge" : "Missing input path");
+        }
+        if (options.merge && (options.servePort > 0 || options.shardCount > 1 || options.contextPath != null
+                || options.exportCsv || options.snapshotPath != null || options.checkpointPath != null
+                || options.follow || options.lean || options.metricsPrefix != null || options.progress
+                || options.incrementalPath != null))
+            throw new IllegalArgumentException("--merge takes only context files and --error-log, none of --serve,"
+                    + " --shard, --context, --csv, --snapshot, --checkpoint, --follow, --lean, --metrics, --progress"
+                    + " or --incremental");
+        if (options.shardCount > 1 && options.contextPath == null)
+            options.contextPath = "validation_context.ctx";
+        if (options.dedupBloom && options.dedupWindowSeconds == 0)
+            throw new IllegalArgumentException("--dedup-bloom requires --dedup-window");
+        if (options.lean && options.exportCsv)
+            throw new IllegalArgumentException("--lean cannot be combined with --csv (the export needs full records)");
+        if (options.adaptiveOrder && !options.failFast)
+            throw new IllegalArgumentException("--adaptive-order requires --fail-fast");
+        if (options.resume && options.checkpointPath == null)
+            throw new IllegalArgumentException("--resume requires --checkpoint FILE");
+        if (options.lean && options.snapshotPath != null)
+            throw new IllegalArgumentException("--lean cannot be combined with --snapshot (it needs full records)");
+        if (options.resume && options.snapshotPath != null)
+            throw new IllegalArgumentException("--snapshot cannot be combined with --resume (it is written in one pass)");
+        if (options.incrementalPath != null && (options.exportCsv || options.snapshotPath != null))
+            throw new IllegalArgumentException("--incremental cannot be combined with --csv or --snapshot (they need"
+                    + " full records, the cache keeps only what the cross-record rules read)");
+        return options;
+    }
+
+    static int parseThreads(String value) {
+        if (value.equalsIgnoreCase("auto"))
+            return Runtime.getRuntime().availableProcessors();
+        int threads = Integer.parseInt(value);
+        if (threads < 1)
+            throw new IllegalArgumentException("--threads must be >= 1");
+        return threads;
+    }
+
+    private static int parsePort(String value) {
+        int port = Integer.parseInt(value);
+        if (port < 1 || port > 65535)
+            throw new IllegalArgumentException("--serve needs a port between 1 and 65535");
+        return port;
+    }
+
+    public static boolean parseDedupScope(String value) {
+        if (value.equalsIgnoreCase("global"))
+            return true;
+        if (value.equalsIgnoreCase("request"))
+            return false;
+        throw new IllegalArgumentException("--dedup-scope must be request or global");
+    }
+
+    // "I/N", e.g. 0/4 for the first of four shards
+    private static void parseShard(String value, CliOptions options) {
+        int slash = value.indexOf('/');
+        try {
+            options.shardIndex = Integer.parseInt(value.substring(0, Math.max(0, slash)));
+            options.shardCount = Integer.parseInt(value.substring(slash + 1));
+        } catch (NumberFormatException e) {
+            options.shardCount = 0;
+        }
+        if (options.shardCount < 1 || options.shardIndex < 0 || options.shardIndex >= options.shardCount)
+            throw new IllegalArgumentException("--shard takes I/N with 0 <= I < N, e.g. 0/4");
+    }
+
+    // 0.999, or a percentile such as p99.9
+    private static double parseOutlierQuantile(String value) {
+        double quantile = value.startsWith("p") ? new BigDecimal(value.substring(1)).movePointLeft(2).doubleValue()
+                : Double.parseDouble(value);
+        if (quantile < 0.5 || quantile >= 1)
+            throw new IllegalArgumentException("--outlier-quantile must be at least 0.5 and below 1, e.g. 0.999 or p99.9");
+        return quantile;
+    }
+
+    private static int parseVelocityLimit(String value) {
+        int limit = Integer.parseInt(value);
+        if (limit < 1 || limit > Byte.MAX_VALUE)
+            throw new IllegalArgumentException("--velocity-limit must be between 1 and " + Byte.MAX_VALUE);
+        return limit;
+    }
+
+    // "90s", "15m", "12h", "7d"
+    static long parseDuration(String value) {
+        if (value.length() < 2)
+            throw new IllegalArgumentException("Invalid duration: " + value);
+        long amount = Long.parseLong(value.substring(0, value.length() - 1));
+        long seconds;
+        switch (Character.toLowerCase(value.charAt(value.length() - 1))) {
+            case 's':
+                seconds = amount;
+                break;
+            case 'm':
+                seconds = amount * 60;
+                break;
+            case 'h':
+                seconds = amount * 3600;
+                break;
+            case 'd':
+                seconds = amount * 86400;
+                break;
+            default:
+                throw new IllegalArgumentException("Invalid duration unit: " + value);
+        }
+        if (seconds < 1)
+            throw new IllegalArgumentException("Duration must be positive: " + value);
+        return seconds;
+    }
+
+    private static String value(String[] args, int index, String option) {
+        if (index >= args.length)
+            throw new IllegalArgumentException("Missing value for " + option);
+        return args[index];
+    }
+}
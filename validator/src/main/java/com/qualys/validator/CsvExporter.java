@@ -7,6 +7,7 @@ import com.qualys.validator.model.Record;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.RandomAccessFile;
 import java.math.BigDecimal;
 
 public class CsvExporter {
@@ -18,6 +19,15 @@ public class CsvExporter {
         }
     }
 
+    // Drops rows written after a checkpoint, whose records will be exported again
+    public static void truncateCsv(String filename, long length) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(filename, "rw")) {
+            if (file.length() < length)
+                throw new IOException(filename + " is shorter than when the checkpoint was taken");
+            file.setLength(length);
+        }
+    }
+
     public static void exportToCsv(Record record, PrintWriter writer) {
         // Calculate total discount
         BigDecimal totalDiscount = BigDecimal.ZERO;
@@ -0,0 +1,400 @@
+package com.qualys.validator;
+
+import com.qualys.validator.engine.ErrorCode;
+import com.qualys.validator.engine.ValidationResult;
+import com.qualys.validator.model.Discount;
+import com.qualys.validator.model.Item;
+import com.qualys.validator.model.Record;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+// CSV export split into valid.csv and invalid.csv, the latter with the record's line number and
+// error codes ("TOTAL_MISMATCH|UNKNOWN_FIELD") appended. Rows have the same columns and values as
+// CsvExporter's, but are encoded by the committer straight into one of a few recycled byte
+// buffers; full buffers are written out by a dedicated thread, so the committer only waits when
+// the disk falls behind by more than BUFFERS buffers.
+public class CsvPartitionWriter implements Closeable {
+
+    public static final String HEADER = "order_id,user_id,currency,total_amount,created_at,updated_at,channel,"
+            + "total_discounts,item_sku,item_qty,item_price";
+    public static final String INVALID_HEADER = HEADER + ",line,error_codes";
+
+    private static final int VALID = 0;
+    private static final int INVALID = 1;
+    private static final int BUFFER_BYTES = 1 << 20;
+    private static final int BUFFERS = 6;
+    private static final byte[] NEWLINE = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+
+    // A buffer to write, or a flush barrier when buffer is null
+    private static final class Write {
+        final int partition;
+        final ByteBuffer buffer;
+        final CompletableFuture<Void> flushed;
+
+        Write(int partition, ByteBuffer buffer, CompletableFuture<Void> flushed) {
+            this.partition = partition;
+            this.buffer = buffer;
+            this.flushed = flushed;
+        }
+    }
+
+    private final FileChannel[] channels = new FileChannel[2];
+    private final ByteBuffer[] current = new ByteBuffer[2];
+    // Bytes handed to the writer per partition, i.e. the file size once everything is flushed
+    private final long[] written = new long[2];
+    private final BlockingQueue<ByteBuffer> free = new ArrayBlockingQueue<>(BUFFERS);
+    private final BlockingQueue<Write> writes = new ArrayBlockingQueue<>(BUFFERS + 1);
+    private final Thread writer;
+    private volatile IOException failure;
+    private boolean closed;
+
+    // Encoding scratch for one record; grows for very long rows
+    private byte[] row = new byte[4096];
+    private int rowLength;
+
+    // Starts both files with their header
+    public CsvPartitionWriter(Path valid, Path invalid) throws IOException {
+        this(valid, invalid, false);
+    }
+
+    // Continues both files after a checkpoint; they must already have been cut back to its lengths
+    public static CsvPartitionWriter append(Path valid, Path invalid) throws IOException {
+        return new CsvPartitionWriter(valid, invalid, true);
+    }
+
+    private CsvPartitionWriter(Path valid, Path invalid, boolean append) throws IOException {
+        channels[VALID] = open(valid, append);
+        channels[INVALID] = open(invalid, append);
+        for (int i = 0; i < BUFFERS; i++)
+            free.add(ByteBuffer.allocate(BUFFER_BYTES));
+        for (int partition = VALID; partition <= INVALID; partition++) {
+            written[partition] = channels[partition].size();
+            current[partition] = takeBuffer();
+        }
+        writer = new Thread(this::drain, "csv-writer");
+        writer.setDaemon(true);
+        writer.start();
+        if (!append) {
+            rowLength = 0;
+            putAscii(HEADER);
+            putNewline();
+            append(VALID);
+            rowLength = 0;
+            putAscii(INVALID_HEADER);
+            putNewline();
+            append(INVALID);
+        }
+    }
+
+    // One row per item (or one with empty item columns); `result` holds the record's errors
+    public void write(Record record, int lineNumber, ValidationResult result) {
+        boolean invalid = result != null && result.hasErrors();
+        String discount = totalDiscount(record);
+        rowLength = 0;
+        if (record.items == null || record.items.isEmpty()) {
+            putCommon(record, discount);
+            putAscii(",,,");
+            putErrors(invalid, lineNumber, result);
+        } else {
+            for (Item item : record.items) {
+                putCommon(record, discount);
+                putByte(',');
+                putString(item.sku);
+                putByte(',');
+                if (item.qty != null)
+                    putLong(item.qty);
+                putByte(',');
+                if (item.price != null)
+                    putDecimal(item.price);
+                putErrors(invalid, lineNumber, result);
+            }
+        }
+        append(invalid ? INVALID : VALID);
+    }
+
+    public long validBytes() {
+        return written[VALID];
+    }
+
+    public long invalidBytes() {
+        return written[INVALID];
+    }
+
+    // Returns once everything written so far is in both files
+    public void flush() throws IOException {
+        for (int partition = VALID; partition <= INVALID; partition++) {
+            if (current[partition].position() > 0) {
+                handOff(partition, current[partition]);
+                current[partition] = takeBuffer();
+            }
+        }
+        CompletableFuture<Void> flushed = new CompletableFuture<>();
+        enqueue(new Write(-1, null, flushed));
+        try {
+            flushed.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while flushing CSV", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to write CSV", e.getCause());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed)
+            return;
+        closed = true;
+        try {
+            flush();
+        } finally {
+            writer.interrupt();
+            channels[VALID].close();
+            channels[INVALID].close();
+        }
+    }
+
+    private void putCommon(Record record, String discount) {
+        putString(record.orderId);
+        putByte(',');
+        putString(record.userId);
+        putByte(',');
+        putString(record.currency);
+        putByte(',');
+        if (record.totalAmount != null)
+            putDecimal(record.totalAmount);
+        putByte(',');
+        putString(record.createdAt);
+        putByte(',');
+        putString(record.updatedAt);
+        putByte(',');
+        putString(record.metadata != null ? record.metadata.channel : "");
+        putByte(',');
+        putAscii(discount);
+    }
+
+    private void putErrors(boolean invalid, int lineNumber, ValidationResult result) {
+        if (invalid) {
+            putByte(',');
+            putLong(lineNumber);
+            putByte(',');
+            // Each code once, in the order reported
+            for (int i = 0; i < result.errorCount(); i++) {
+                ErrorCode code = result.getCode(i);
+                boolean repeated = false;
+                for (int j = 0; j < i && !repeated; j++)
+                    repeated = result.getCode(j) == code;
+                if (repeated)
+                    continue;
+                if (i > 0)
+                    putByte('|');
+                putAscii(code.name());
+            }
+        }
+        putNewline();
+    }
+
+    // Same text as CsvExporter's BigDecimal sum starting from ZERO, formatted once per record
+    private static String totalDiscount(Record record) {
+        List<Discount> discounts = record.discounts;
+        if (discounts == null || discounts.isEmpty())
+            return "0";
+        if (discounts.size() == 1) {
+            BigDecimal amount = discounts.get(0).amount;
+            if (amount == null)
+                return "0";
+            // ZERO + amount only differs from amount when its scale is negative (e.g. 1E+2)
+            if (amount.scale() >= 0)
+                return amount.toString();
+        }
+        BigDecimal total = BigDecimal.ZERO;
+        for (int i = 0; i < discounts.size(); i++) {
+            BigDecimal amount = discounts.get(i).amount;
+            if (amount != null)
+                total = total.add(amount);
+        }
+        return total.toString();
+    }
+
+    // Quoted like CsvExporter.escape; null is written as an empty field
+    private void putString(String value) {
+        if (value == null)
+            return;
+        boolean quote = false;
+        boolean ascii = true;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == ',' || c == '"' || c == '\n')
+                quote = true;
+            else if (c >= 0x80)
+                ascii = false;
+        }
+        if (quote)
+            putByte('"');
+        if (ascii) {
+            ensure(value.length() * 2);
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '"')
+                    row[rowLength++] = '"';
+                row[rowLength++] = (byte) c;
+            }
+        } else {
+            byte[] utf8 = (quote ? value.replace("\"", "\"\"") : value).getBytes(StandardCharsets.UTF_8);
+            ensure(utf8.length);
+            System.arraycopy(utf8, 0, row, rowLength, utf8.length);
+            rowLength += utf8.length;
+        }
+        if (quote)
+            putByte('"');
+    }
+
+    private void putAscii(String value) {
+        ensure(value.length());
+        for (int i = 0; i < value.length(); i++)
+            row[rowLength++] = (byte) value.charAt(i);
+    }
+
+    // BigDecimal caches its toString(), so a value is only formatted once
+    private void putDecimal(BigDecimal value) {
+        putAscii(value.toString());
+    }
+
+    private void putLong(long value) {
+        ensure(20);
+        if (value < 0) {
+            if (value == Long.MIN_VALUE) {
+                putAscii(Long.toString(value));
+                return;
+            }
+            row[rowLength++] = '-';
+            value = -value;
+        }
+        int start = rowLength;
+        do {
+            row[rowLength++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+        for (int i = start, j = rowLength - 1; i < j; i++, j--) {
+            byte digit = row[i];
+            row[i] = row[j];
+            row[j] = digit;
+        }
+    }
+
+    private void putNewline() {
+        ensure(NEWLINE.length);
+        for (byte b : NEWLINE)
+            row[rowLength++] = b;
+    }
+
+    private void putByte(int b) {
+        ensure(1);
+        row[rowLength++] = (byte) b;
+    }
+
+    private void ensure(int bytes) {
+        if (rowLength + bytes > row.length) {
+            byte[] larger = new byte[Math.max(row.length * 2, rowLength + bytes)];
+            System.arraycopy(row, 0, larger, 0, rowLength);
+            row = larger;
+        }
+    }
+
+    // Moves the encoded record into the partition's buffer
+    private void append(int partition) {
+        int offset = 0;
+        while (offset < rowLength) {
+            ByteBuffer buffer = current[partition];
+            if (!buffer.hasRemaining()) {
+                handOff(partition, buffer);
+                buffer = current[partition] = takeBuffer();
+            }
+            int length = Math.min(buffer.remaining(), rowLength - offset);
+            buffer.put(row, offset, length);
+            offset += length;
+        }
+    }
+
+    private void handOff(int partition, ByteBuffer buffer) {
+        buffer.flip();
+        written[partition] += buffer.remaining();
+        enqueue(new Write(partition, buffer, null));
+    }
+
+    private void enqueue(Write write) {
+        try {
+            writes.put(write);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new UncheckedIOException(new IOException("Interrupted while writing CSV", e));
+        }
+    }
+
+    private ByteBuffer takeBuffer() {
+        if (failure != null)
+            throw new UncheckedIOException("Failed to write CSV", failure);
+        try {
+            ByteBuffer buffer;
+            // Polls so a writer that failed does not leave the committer waiting forever
+            while ((buffer = free.poll(100, TimeUnit.MILLISECONDS)) == null) {
+                if (failure != null)
+                    throw new UncheckedIOException("Failed to write CSV", failure);
+            }
+            return buffer;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new UncheckedIOException(new IOException("Interrupted while writing CSV", e));
+        }
+    }
+
+    // Writer thread: writes buffers in the order they were handed off and recycles them
+    private void drain() {
+        try {
+            while (true) {
+                Write write = writes.take();
+                if (write.buffer == null) {
+                    if (failure != null)
+                        write.flushed.completeExceptionally(failure);
+                    else
+                        write.flushed.complete(null);
+                    continue;
+                }
+                if (failure == null) {
+                    try {
+                        FileChannel channel = channels[write.partition];
+                        while (write.buffer.hasRemaining())
+                            channel.write(write.buffer);
+                    } catch (IOException e) {
+                        failure = e;
+                    }
+                }
+                write.buffer.clear();
+                free.add(write.buffer);
+            }
+        } catch (InterruptedException e) {
+            // Closed
+        }
+    }
+
+    private static FileChannel open(Path path, boolean append) throws IOException {
+        if (append)
+            return FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+    }
+}
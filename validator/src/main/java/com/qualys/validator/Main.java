@@ -1,73 +1,536 @@
 package com.qualys.validator;
 
-import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonParser;
-import com.fasterxml.jackson.core.JsonToken;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.qualys.validator.engine.*;
+import com.qualys.validator.io.InputFiles;
+import com.qualys.validator.io.ParallelRecordReader;
+import com.qualys.validator.metrics.ProgressMeter;
+import com.qualys.validator.metrics.RunMetrics;
 import com.qualys.validator.model.Record;
+import com.qualys.validator.rules.SecurityRule;
+import com.qualys.validator.server.ValidationServer;
+import com.qualys.validator.snapshot.SnapshotWriter;
 
-import java.io.File;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 public class Main {
+
+    private static final String REPORT_FILE = "validation_report.html";
+    private static final String VALID_CSV_FILE = "valid.csv";
+    private static final String INVALID_CSV_FILE = "invalid.csv";
+    private static final long FOLLOW_POLL_MILLIS = 1000;
+    private static final long FOLLOW_REFRESH_SECONDS = 30;
+    // How long Ctrl-C waits for the last chunks, the final checkpoint and the report
+    private static final long SHUTDOWN_GRACE_SECONDS = 60;
+    private static final long PROGRESS_SECONDS = 10;
+
     public static void main(String[] args) {
-        if (args.length < 1) {
-            System.err.println("Usage: java -jar parser.jar <path-to-records.json>");
+        long mainNanos = System.nanoTime();
+        CliOptions options;
+        try {
+            options = CliOptions.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: java -jar parser.jar <records.json|dir|glob|file.gz>... [--csv] [--threads N|auto]"
+                    + " [--dedup-window 7d [--dedup-bloom]] [--error-log FILE] [--lean]"
+                    + " [--injection-patterns FILE] [--velocity-limit N] [--velocity-window 1h]"
+                    + " [--checkpoint FILE [--checkpoint-interval 1m] [--resume]] [--follow]"
+                    + " [--fail-fast [--adaptive-order]] [--metrics PREFIX] [--progress] [--snapshot FILE]"
+                    + " [--outlier-quantile 0.999 [--outlier-min-samples N]] [--shard I/N] [--context FILE]"
+                    + " [--incremental CACHE]");
+            System.err.println("       java -jar parser.jar --serve PORT [--dedup-scope request|global] [--dedup-window 7d]"
+                    + " [--injection-patterns FILE] [--velocity-limit N] [--velocity-window 1h] [--outlier-quantile 0.999]"
+                    + " [--fail-fast]");
+            System.err.println("       java -jar parser.jar --merge <shard.ctx>... [--error-log FILE]");
             System.exit(1);
+            return;
+        }
+        if (options.servePort > 0) {
+            serve(options);
+            return;
+        }
+        if (options.merge) {
+            merge(options);
+            return;
         }
 
-        String filePath = args[0];
-        File file = new File(filePath);
-
-        if (!file.exists()) {
-            System.err.println("File not found: " + filePath);
+        List<Path> inputs;
+        long inputBytes = 0;
+        try {
+            inputs = InputFiles.resolve(options.inputPaths);
+            if ((options.checkpointPath != null || options.follow)
+                    && (inputs.size() != 1 || InputFiles.isGzip(inputs.get(0))))
+                throw new IOException("--checkpoint and --follow need a single uncompressed input file");
+            for (Path input : inputs)
+                inputBytes += Files.size(input);
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
             System.exit(1);
+            return;
+        }
+        // The file checkpoints and follow mode refer to
+        Path file = inputs.get(0);
+
+        Checkpoint checkpoint = null;
+        if (options.resume) {
+            try {
+                checkpoint = Checkpoint.read(Path.of(options.checkpointPath), file);
+            } catch (IOException e) {
+                System.err.println("Failed to read checkpoint: " + e.getMessage());
+                System.exit(1);
+                return;
+            }
+            System.out.println("Resuming after line " + checkpoint.lineNumber + " (byte " + checkpoint.inputOffset + ")");
         }
 
-        boolean exportCsv = args.length > 1 && args[1].equalsIgnoreCase("--csv");
-        String csvFile = "output.csv";
-        java.io.PrintWriter csvWriter = null;
+        CsvPartitionWriter csvWriter = null;
 
-        if (exportCsv) {
+        if (options.exportCsv) {
             try {
-                CsvExporter.initCsv(csvFile);
-                csvWriter = new java.io.PrintWriter(new java.io.FileWriter(csvFile, true));
-                System.out.println("Exporting CSV to: " + csvFile);
+                if (checkpoint == null) {
+                    csvWriter = new CsvPartitionWriter(Path.of(VALID_CSV_FILE), Path.of(INVALID_CSV_FILE));
+                } else if (checkpoint.validCsvBytes < 0) {
+                    throw new IOException("the checkpointed run did not export CSV");
+                } else {
+                    CsvExporter.truncateCsv(VALID_CSV_FILE, checkpoint.validCsvBytes);
+                    CsvExporter.truncateCsv(INVALID_CSV_FILE, checkpoint.invalidCsvBytes);
+                    csvWriter = CsvPartitionWriter.append(Path.of(VALID_CSV_FILE), Path.of(INVALID_CSV_FILE));
+                }
+                System.out.println("Exporting CSV to: " + VALID_CSV_FILE + " and " + INVALID_CSV_FILE);
             } catch (IOException e) {
                 System.err.println("Failed to initialize CSV exporter: " + e.getMessage());
             }
         }
 
-        Validator validator = new Validator();
-        ObjectMapper mapper = new ObjectMapper();
-        JsonFactory jsonFactory = new JsonFactory();
+        SnapshotWriter snapshotWriter = null;
+        if (options.snapshotPath != null) {
+            try {
+                snapshotWriter = new SnapshotWriter(Path.of(options.snapshotPath));
+                System.out.println("Writing snapshot to: " + options.snapshotPath);
+            } catch (IOException e) {
+                System.err.println("Failed to create snapshot: " + e.getMessage());
+            }
+        }
+
+        DuplicateDetector duplicateDetector = options.dedupWindowSeconds > 0
+                ? new WindowedDuplicateDetector(options.dedupWindowSeconds, options.dedupBloom)
+                : new OrderIdIndex();
+        ErrorLog errorLog;
+        try {
+            errorLog = checkpoint != null ? checkpoint.resumeErrorLog(Path.of(options.errorLogPath))
+                    : new ErrorLog(Path.of(options.errorLogPath));
+        } catch (IOException e) {
+            System.err.println("Failed to open error log: " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+        List<String> injectionPatterns = injectionPatterns(options);
+        UserVelocityIndex userVelocity = new UserVelocityIndex(options.velocityLimit, options.velocityWindowSeconds,
+                UserVelocityIndex.DEFAULT_MAX_USERS);
+        ValidationContext context = new ValidationContext(duplicateDetector, errorLog, userVelocity,
+                new ValueProfile(options.outlierQuantile, options.outlierMinSamples));
+        if (checkpoint != null) {
+            try {
+                checkpoint.restore(context);
+            } catch (IOException e) {
+                System.err.println("Failed to restore checkpoint: " + e.getMessage());
+                System.exit(1);
+                return;
+            }
+        }
+        Validator validator = new Validator(context, injectionPatterns);
+        validator.setFailFast(options.failFast);
+        validator.setAdaptiveOrder(options.adaptiveOrder);
+        RunMetrics metrics = options.metricsPrefix != null ? new RunMetrics() : null;
+        if (metrics != null)
+            validator.setMetrics(metrics);
+
+        if (options.threads > 1)
+            System.out.println("Validating with " + options.threads + " worker threads");
+        if (options.shardCount > 1)
+            System.out.println("Validating shard " + options.shardIndex + " of " + options.shardCount
+                    + " (by order_id); context goes to " + options.contextPath);
+        if (inputs.size() > 1)
+            System.out.println("Validating " + inputs.size() + " files as one input (line numbers run on across files)");
 
-        try (JsonParser parser = jsonFactory.createParser(file)) {
-            int lineNumber = 0;
+        ParallelRecordReader.WorkerStage<ValidationResult> stage;
+        if (options.lean) {
+            stage = new ParallelRecordReader.TokenStage<ValidationResult>() {
+                @Override
+                public boolean scan(JsonParser parser, ParallelRecordReader.Entry<ValidationResult> entry)
+                        throws IOException {
+                    Record record = new Record();
+                    ValidationResult result = validator.evaluate(parser, record);
+                    if (result == null)
+                        return false;
+                    entry.record = record;
+                    entry.workerResult = detach(result);
+                    return true;
+                }
 
-            while (parser.nextToken() != null) {
-                lineNumber++;
+                @Override
+                public ValidationResult process(Record record) {
+                    return detach(validator.evaluate(record));
+                }
+            };
+        } else {
+            stage = record -> detach(validator.evaluate(record));
+        }
+
+        CommitSink sink = new CommitSink(validator, file, csvWriter, options, metrics);
+        sink.announceFiles = inputs.size() > 1;
+        sink.snapshot = snapshotWriter;
+        ParallelRecordReader reader = new ParallelRecordReader(options.threads);
+        reader.setMetrics(metrics);
+        if (options.shardCount > 1) {
+            int shard = options.shardIndex;
+            int shards = options.shardCount;
+            reader.setFilter(record -> OrderIdIndex.shardOf(record.orderId, shards) == shard);
+            // Lines that are not JSON belong to no shard; the first one reports them
+            sink.reportParseErrors = shard == 0;
+        }
+        ResultCache resultCache = null;
+        if (options.incrementalPath != null) {
+            try {
+                resultCache = new ResultCache(Path.of(options.incrementalPath), ResultCache.settings(injectionPatterns,
+                        options.failFast, options.adaptiveOrder, options.lean));
+            } catch (IOException e) {
+                System.err.println("Failed to open result cache: " + e.getMessage());
+                System.exit(1);
+                return;
+            }
+            if (resultCache.staleReason() != null)
+                System.out.println("Not reusing " + options.incrementalPath + ": " + resultCache.staleReason());
+            reader.setLineCache(resultCache);
+        }
+        CountDownLatch finished = new CountDownLatch(1);
+        if (checkpoint != null) {
+            sink.lineNumber = checkpoint.lineNumber;
+            sink.inputOffset = checkpoint.inputOffset;
+        }
+        int startLine = sink.lineNumber;
+        long startOffset = sink.inputOffset;
+        long startInvalid = context.getInvalidRecords();
+        if (options.progress)
+            sink.progressMeter = new ProgressMeter(PROGRESS_SECONDS, options.follow ? 0 : inputBytes, startLine,
+                    startOffset);
+        if (options.follow) {
+            reader.setFollow(FOLLOW_POLL_MILLIS);
+            // Ctrl-C ends a follow run cleanly: chunks already read are committed, then the final
+            // checkpoint, summary and report are written below
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                reader.stop();
                 try {
-                    if (parser.currentToken() == JsonToken.START_OBJECT) {
-                        Record record = mapper.readValue(parser, Record.class);
-                        validator.validate(record, lineNumber);
+                    finished.await(SHUTDOWN_GRACE_SECONDS, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }));
+            System.out.println("Following " + file + " (Ctrl-C to stop)");
+        }
 
-                        if (csvWriter != null) {
-                            CsvExporter.exportToCsv(record, csvWriter);
+        try {
+            boolean completed = false;
+            try {
+                reader.read(inputs, sink.inputOffset, sink.lineNumber, stage, sink);
+                completed = true;
+            } catch (IOException e) {
+                e.printStackTrace();
+            } finally {
+                // After a failure the state may be past the last chunk boundary; the last
+                // periodic checkpoint stays the one to resume from
+                if (completed && options.checkpointPath != null)
+                    sink.checkpoint();
+                try {
+                    if (csvWriter != null)
+                        csvWriter.close();
+                } catch (IOException e) {
+                    System.err.println("Failed to close CSV export: " + e.getMessage());
+                }
+                try {
+                    if (snapshotWriter != null)
+                        snapshotWriter.close();
+                } catch (IOException e) {
+                    System.err.println("Failed to write snapshot: " + e.getMessage());
+                }
+                try {
+                    errorLog.close();
+                } catch (IOException e) {
+                    System.err.println("Failed to close error log: " + e.getMessage());
+                }
+                if (resultCache != null) {
+                    // A failed run keeps the previous cache
+                    try {
+                        if (completed)
+                            resultCache.commit();
+                    } catch (IOException e) {
+                        System.err.println("Failed to write result cache: " + e.getMessage());
+                    } finally {
+                        try {
+                            resultCache.close();
+                        } catch (IOException e) {
+                            System.err.println("Failed to close result cache: " + e.getMessage());
                         }
                     }
-                } catch (Exception e) {
-                    System.err.println("Line " + lineNumber + ": Failed to parse JSON - " + e.getMessage());
+                }
+                // Only a finished run stands for its whole shard
+                if (completed && options.contextPath != null) {
+                    try {
+                        ContextSnapshot.write(Path.of(options.contextPath), options.shardIndex, options.shardCount,
+                                inputBytes, context);
+                        System.out.println("Context written to " + options.contextPath);
+                    } catch (IOException e) {
+                        System.err.println("Failed to write context: " + e.getMessage());
+                    }
                 }
             }
-        } catch (IOException e) {
-            e.printStackTrace();
+
+            validator.printConsoleSummary();
+            if (resultCache != null)
+                System.out.println("Result cache: " + resultCache.hits() + " of " + (sink.lineNumber - startLine)
+                        + " lines reused, " + resultCache.size() + " kept in " + options.incrementalPath);
+            if (sink.firstRecordNanos != 0) {
+                // Counted from JVM start; the uptime is only asked for now, as the management beans
+                // behind it take a while to load
+                long now = System.nanoTime();
+                long uptimeMillis = ManagementFactory.getRuntimeMXBean().getUptime();
+                long millis = uptimeMillis - TimeUnit.NANOSECONDS.toMillis(now - sink.firstRecordNanos);
+                long launchMillis = uptimeMillis - TimeUnit.NANOSECONDS.toMillis(now - mainNanos);
+                System.out.println("Time to first record: " + millis + " ms (JVM start to main: " + launchMillis
+                        + " ms)");
+                if (metrics != null)
+                    metrics.setTimeToFirstRecord(millis / 1e3);
+            }
+            if (metrics != null) {
+                // Figures cover this run only, not what a resumed checkpoint had already read
+                try {
+                    metrics.write(options.metricsPrefix, sink.lineNumber - startLine,
+                            context.getInvalidRecords() - startInvalid, sink.inputOffset - startOffset);
+                    System.out.println("Metrics written to " + options.metricsPrefix + ".json and "
+                            + options.metricsPrefix + ".prom");
+                } catch (IOException e) {
+                    System.err.println("Failed to write metrics: " + e.getMessage());
+                }
+            }
+            validator.generateHtmlReport(REPORT_FILE);
         } finally {
-            if (csvWriter != null)
-                csvWriter.close();
+            finished.countDown();
+        }
+    }
+
+    // One report over the context snapshots of every shard of a run
+    private static void merge(CliOptions options) {
+        List<ContextSnapshot> shards = new ArrayList<>();
+        try {
+            for (String path : options.inputPaths)
+                shards.add(ContextSnapshot.read(Path.of(path)));
+            ContextSnapshot.checkComplete(shards);
+        } catch (IOException e) {
+            System.err.println("Failed to read context: " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+
+        Path logPath = Path.of(options.errorLogPath).toAbsolutePath().normalize();
+        ErrorLog errorLog = null;
+        boolean logs = true;
+        for (ContextSnapshot shard : shards) {
+            if (shard.errorLog == null || !Files.exists(shard.errorLog)) {
+                System.err.println("No error log for shard " + shard.shardIndex + " (" + shard.errorLog
+                        + "); the report will have no error detail pages");
+                logs = false;
+            } else if (shard.errorLog.normalize().equals(logPath)) {
+                System.err.println("--error-log " + options.errorLogPath + " is the error log of shard "
+                        + shard.shardIndex + "; merge into another file");
+                System.exit(1);
+                return;
+            }
+        }
+        if (logs) {
+            try {
+                errorLog = new ErrorLog(logPath);
+                ContextSnapshot.mergeErrorLogs(shards, errorLog);
+                errorLog.close();
+            } catch (IOException e) {
+                System.err.println("Failed to merge error logs: " + e.getMessage());
+                System.exit(1);
+                return;
+            }
+        }
+
+        ValidationContext context = new ValidationContext(new OrderIdIndex(), errorLog);
+        try {
+            for (ContextSnapshot shard : shards)
+                shard.mergeInto(context);
+        } catch (IOException e) {
+            System.err.println("Failed to read context: " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+        System.out.println("Merged " + shards.size() + " shards.");
+        System.out.println("Total: " + context.getTotalRecords());
+        System.out.println("Invalid: " + context.getInvalidRecords());
+        if (errorLog != null)
+            System.out.println("Error log: " + options.errorLogPath);
+        new Validator(context).generateHtmlReport(REPORT_FILE);
+    }
+
+    private static void serve(CliOptions options) {
+        try {
+            new ValidationServer(options, injectionPatterns(options)).start();
+        } catch (IOException e) {
+            System.err.println("Failed to start server: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    // Exits when the --injection-patterns file cannot be used
+    private static List<String> injectionPatterns(CliOptions options) {
+        if (options.injectionPatternsPath == null)
+            return SecurityRule.DEFAULT_INJECTION_PATTERNS;
+        try {
+            return SecurityRule.loadInjectionPatterns(Path.of(options.injectionPatternsPath));
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Failed to load injection patterns: " + e.getMessage());
+            System.exit(1);
+            return null;
+        }
+    }
+
+    // Commits records in input order; between chunks it takes the periodic checkpoint and, while
+    // following, refreshes the summary and report
+    private static class CommitSink implements ParallelRecordReader.Sink<ValidationResult> {
+        private final Validator validator;
+        private final Path input;
+        private final CsvPartitionWriter csv;
+        private final Path checkpointPath;
+        private final long checkpointNanos;
+        private final boolean follow;
+        private final RunMetrics metrics;
+        ProgressMeter progressMeter;
+        boolean announceFiles;
+        boolean reportParseErrors = true;
+        SnapshotWriter snapshot;
+        // System.nanoTime() at the first commit, 0 before
+        long firstRecordNanos;
+
+        // Position after the last completed chunk
+        int lineNumber = 0;
+        long inputOffset = 0;
+        private long nextCheckpoint;
+        private long nextRefresh;
+        private long refreshedTotal = -1;
+
+        CommitSink(Validator validator, Path input, CsvPartitionWriter csv, CliOptions options, RunMetrics metrics) {
+            this.validator = validator;
+            this.input = input;
+            this.csv = csv;
+            this.checkpointPath = options.checkpointPath != null ? Path.of(options.checkpointPath) : null;
+            this.checkpointNanos = TimeUnit.SECONDS.toNanos(options.checkpointIntervalSeconds);
+            this.follow = options.follow;
+            this.metrics = metrics;
+            long now = System.nanoTime();
+            this.nextCheckpoint = now + checkpointNanos;
+            this.nextRefresh = now + TimeUnit.SECONDS.toNanos(FOLLOW_REFRESH_SECONDS);
         }
 
-        validator.printConsoleSummary();
-        validator.generateHtmlReport("validation_report.html");
+        @Override
+        public void accept(int lineNumber, Record record, ValidationResult localErrors) {
+            if (firstRecordNanos == 0)
+                firstRecordNanos = System.nanoTime();
+            ValidationResult errors = validator.commit(record, lineNumber, localErrors);
+            if (csv != null || snapshot != null) {
+                if (metrics != null && RunMetrics.sample()) {
+                    long start = System.nanoTime();
+                    export(record, lineNumber, errors);
+                    metrics.record(RunMetrics.Stage.EXPORT, System.nanoTime() - start);
+                } else {
+                    export(record, lineNumber, errors);
+                }
+            }
+        }
+
+        private void export(Record record, int lineNumber, ValidationResult errors) {
+            if (csv != null)
+                csv.write(record, lineNumber, errors);
+            if (snapshot != null)
+                snapshot.write(record, lineNumber, errors);
+        }
+
+        @Override
+        public void parseError(int lineNumber, String message) {
+            if (reportParseErrors)
+                System.err.println("Line " + lineNumber + ": Failed to parse JSON - " + message);
+        }
+
+        @Override
+        public void startFile(Path file, int firstLine) {
+            if (announceFiles)
+                System.out.println("Reading " + file + " from line " + firstLine);
+        }
+
+        @Override
+        public void progress(int lineNumber, long inputOffset) {
+            this.lineNumber = lineNumber;
+            this.inputOffset = inputOffset;
+            if (progressMeter != null) {
+                String line = progressMeter.update(lineNumber, inputOffset);
+                if (line != null)
+                    System.err.println(line);
+            }
+            long now = System.nanoTime();
+            if (checkpointPath != null && now - nextCheckpoint >= 0) {
+                checkpoint();
+                nextCheckpoint = now + checkpointNanos;
+            }
+            if (follow && now - nextRefresh >= 0) {
+                refresh();
+                nextRefresh = now + TimeUnit.SECONDS.toNanos(FOLLOW_REFRESH_SECONDS);
+            }
+        }
+
+        void checkpoint() {
+            try {
+                long validCsvBytes = -1;
+                long invalidCsvBytes = -1;
+                if (csv != null) {
+                    csv.flush();
+                    validCsvBytes = csv.validBytes();
+                    invalidCsvBytes = csv.invalidBytes();
+                }
+                Checkpoint.write(checkpointPath, input, inputOffset, lineNumber, validCsvBytes, invalidCsvBytes,
+                        validator.getContext());
+            } catch (IOException e) {
+                System.err.println("Failed to write checkpoint: " + e.getMessage());
+            }
+        }
+
+        private void refresh() {
+            ValidationContext context = validator.getContext();
+            if (context.getTotalRecords() == refreshedTotal)
+                return;
+            refreshedTotal = context.getTotalRecords();
+            System.out.println("Following " + input.getFileName() + ": " + context.getTotalRecords() + " records, "
+                    + context.getInvalidRecords() + " invalid");
+            try {
+                if (context.getErrorLog() != null)
+                    context.getErrorLog().flush();
+                validator.generateHtmlReport(REPORT_FILE);
+            } catch (IOException e) {
+                System.err.println("Failed to flush error log: " + e.getMessage());
+            }
+        }
+    }
+
+    // Only records with errors need their result carried over to the committer
+    private static ValidationResult detach(ValidationResult result) {
+        return result.hasErrors() ? result.copy() : null;
     }
 }
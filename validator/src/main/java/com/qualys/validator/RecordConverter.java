@@ -1,9 +1,6 @@
 package com.qualys.validator;
 
-import com.fasterxml.jackson.core.JsonFactory;
-import com.fasterxml.jackson.core.JsonParser;
-import com.fasterxml.jackson.core.JsonToken;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.qualys.validator.io.ParallelRecordReader;
 import com.qualys.validator.model.Discount;
 import com.qualys.validator.model.Item;
 import com.qualys.validator.model.Record;
@@ -36,21 +33,20 @@ public class RecordConverter {
             writer.println(
                     "order_id,user_id,currency,total_amount,created_at,updated_at,channel,total_discounts,item_sku,item_qty,item_price");
 
-            ObjectMapper mapper = new ObjectMapper();
-            JsonFactory jsonFactory = new JsonFactory();
+            int threads = Runtime.getRuntime().availableProcessors();
 
-            try (JsonParser parser = jsonFactory.createParser(inputFile)) {
-                while (parser.nextToken() != null) {
-                    if (parser.currentToken() == JsonToken.START_OBJECT) {
-                        try {
-                            Record record = mapper.readValue(parser, Record.class);
+            new ParallelRecordReader(threads).read(inputFile.toPath(), record -> null,
+                    new ParallelRecordReader.Sink<Object>() {
+                        @Override
+                        public void accept(int lineNumber, Record record, Object unused) {
                             writeRecord(record, writer);
-                        } catch (Exception e) {
-                            System.err.println("Skipping malformed record: " + e.getMessage());
                         }
-                    }
-                }
-            }
+
+                        @Override
+                        public void parseError(int lineNumber, String message) {
+                            System.err.println("Skipping malformed record: " + message);
+                        }
+                    });
             System.out.println("Conversion complete: " + outputPath);
 
         } catch (IOException e) {
@@ -0,0 +1,360 @@
+package com.qualys.validator;
+
+import com.qualys.validator.rules.SecurityRule;
+import com.qualys.validator.util.Hashing;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+
+// Writes synthetic orders in the records.json schema for scale and load tests. Every record is
+// derived from (seed, line index) alone, so the output is byte-identical for any --threads.
+// Defects are drawn independently per record with the configured rates; valid amounts are
+// computed in cents so totals always reconcile.
+public class RecordGenerator {
+
+    public enum Defect {
+        MISSING_FIELD("--missing-fields"),
+        BAD_TOTAL("--bad-totals"),
+        DUPLICATE("--duplicates"),
+        RISKY_CURRENCY("--risky-currencies"),
+        INJECTION("--injections"),
+        UNKNOWN_FIELD("--unknown-fields");
+
+        final String option;
+
+        Defect(String option) {
+            this.option = option;
+        }
+    }
+
+    private static final int BLOCK_RECORDS = 4096;
+    // A duplicate repeats the order id of one of the preceding records, so it is caught by any dedup window
+    private static final int DUPLICATE_DISTANCE = 64;
+    private static final long START = LocalDateTime.of(2025, 1, 1, 0, 0).toEpochSecond(ZoneOffset.UTC);
+    private static final long SPAN_SECONDS = 365L * 86400;
+
+    private static final String[] CURRENCIES = { "USD", "EUR", "INR" };
+    private static final String[] RISKY_CURRENCIES = { "BTC", "XXX", "AUD", "XMR" };
+    private static final String[] CHANNELS = { "web", "mobile", "store" };
+    // Never order_id (duplicates rely on it) or items (the totals would stop reconciling too)
+    private static final String[] DROPPABLE = { "user_id", "currency", "total_amount", "created_at", "updated_at",
+            "channel" };
+    private static final String[] UNKNOWN_FIELDS = { "coupon_code", "gift_wrap", "referrer", "loyalty_tier" };
+    private static final List<String> INJECTIONS = SecurityRule.DEFAULT_INJECTION_PATTERNS;
+
+    public long records = 1_000_000;
+    public long seed = 42;
+    public int threads = Runtime.getRuntime().availableProcessors();
+    // 0 scales with the record count: about 100 orders per user over the year
+    public long users = 0;
+    public boolean gzip = false;
+    public final double[] rates = new double[Defect.values().length];
+
+    private String outputPath;
+
+    public static void main(String[] args) {
+        RecordGenerator generator;
+        try {
+            generator = parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: java -cp records-validator.jar com.qualys.validator.RecordGenerator <output.json[.gz]>"
+                    + " [--records 1M] [--seed N] [--threads N|auto] [--users N] [--gzip]"
+                    + " [--missing-fields RATE] [--bad-totals RATE] [--duplicates RATE]"
+                    + " [--risky-currencies RATE] [--injections RATE] [--unknown-fields RATE]");
+            System.exit(1);
+            return;
+        }
+
+        Path output = Path.of(generator.outputPath);
+        System.out.println("Generating " + generator.records + " records into " + output + "...");
+        long start = System.nanoTime();
+        try {
+            long[] counts = generator.generate(output);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("Wrote %d records (%,d bytes) in %.1fs%n", generator.records, Files.size(output), seconds);
+            for (Defect defect : Defect.values())
+                System.out.printf("  %-16s %,d%n", defect, counts[defect.ordinal()]);
+        } catch (IOException e) {
+            System.err.println("Generation failed: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    static RecordGenerator parse(String[] args) {
+        RecordGenerator generator = new RecordGenerator();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equalsIgnoreCase("--records")) {
+                generator.records = parseCount(value(args, ++i, arg));
+            } else if (arg.equalsIgnoreCase("--seed")) {
+                generator.seed = Long.parseLong(value(args, ++i, arg));
+            } else if (arg.equalsIgnoreCase("--threads")) {
+                generator.threads = CliOptions.parseThreads(value(args, ++i, arg));
+            } else if (arg.equalsIgnoreCase("--users")) {
+                generator.users = parseCount(value(args, ++i, arg));
+            } else if (arg.equalsIgnoreCase("--gzip")) {
+                generator.gzip = true;
+            } else if (defectOption(arg) != null) {
+                generator.rates[defectOption(arg).ordinal()] = parseRate(value(args, ++i, arg));
+            } else if (arg.startsWith("--")) {
+                throw new IllegalArgumentException("Unknown option: " + arg);
+            } else if (generator.outputPath == null) {
+                generator.outputPath = arg;
+            } else {
+                throw new IllegalArgumentException("Unexpected argument: " + arg);
+            }
+        }
+        if (generator.outputPath == null)
+            throw new IllegalArgumentException("Missing output path");
+        if (generator.outputPath.endsWith(".gz"))
+            generator.gzip = true;
+        return generator;
+    }
+
+    // Writes the file and returns how many records carry each defect
+    public long[] generate(Path output) throws IOException {
+        long userCount = users > 0 ? users : Math.max(10_000, records / 100);
+        long blocks = (records + BLOCK_RECORDS - 1) / BLOCK_RECORDS;
+        long[] counts = new long[Defect.values().length];
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "generator");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Blocks are written in order; at most 2 per thread are buffered ahead of the writer
+        ArrayDeque<Future<Block>> pending = new ArrayDeque<>();
+        try (OutputStream out = Files.newOutputStream(output)) {
+            long next = 0;
+            while (next < blocks || !pending.isEmpty()) {
+                while (next < blocks && pending.size() < threads * 2) {
+                    long first = next++ * BLOCK_RECORDS;
+                    long last = Math.min(records, first + BLOCK_RECORDS);
+                    pending.add(pool.submit(() -> block(first, last, userCount)));
+                }
+                Block block = pending.poll().get();
+                out.write(block.bytes);
+                for (int d = 0; d < counts.length; d++)
+                    counts[d] += block.counts[d];
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        return counts;
+    }
+
+    private static final class Block {
+        final byte[] bytes;
+        final long[] counts;
+
+        Block(byte[] bytes, long[] counts) {
+            this.bytes = bytes;
+            this.counts = counts;
+        }
+    }
+
+    // A gzip block is a complete gzip member; concatenated members form one valid .gz stream
+    private Block block(long first, long last, long userCount) throws IOException {
+        long[] counts = new long[Defect.values().length];
+        StringBuilder json = new StringBuilder((int) (last - first) * 320);
+        for (long i = first; i < last; i++) {
+            record(i, userCount, json, counts);
+            json.append('\n');
+        }
+        byte[] bytes = json.toString().getBytes(StandardCharsets.US_ASCII);
+        if (gzip) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(bytes.length / 4);
+            try (GZIPOutputStream out = new GZIPOutputStream(compressed, 1 << 16)) {
+                out.write(bytes);
+            }
+            bytes = compressed.toByteArray();
+        }
+        return new Block(bytes, counts);
+    }
+
+    private void record(long i, long userCount, StringBuilder json, long[] counts) {
+        SplittableRandom random = random(i);
+        // The duplicate draws come first so resolve() can replay them for earlier records
+        boolean duplicate = i > 0 && random.nextDouble() < rates[Defect.DUPLICATE.ordinal()];
+        long duplicateOf = Math.max(0, i - 1 - random.nextInt(DUPLICATE_DISTANCE));
+        boolean missing = random.nextDouble() < rates[Defect.MISSING_FIELD.ordinal()];
+        boolean badTotal = random.nextDouble() < rates[Defect.BAD_TOTAL.ordinal()];
+        boolean risky = random.nextDouble() < rates[Defect.RISKY_CURRENCY.ordinal()];
+        boolean injection = random.nextDouble() < rates[Defect.INJECTION.ordinal()];
+        boolean unknown = random.nextDouble() < rates[Defect.UNKNOWN_FIELD.ordinal()];
+        String dropped = missing ? DROPPABLE[random.nextInt(DROPPABLE.length)] : "";
+
+        count(counts, Defect.DUPLICATE, duplicate);
+        count(counts, Defect.MISSING_FIELD, missing);
+        count(counts, Defect.BAD_TOTAL, badTotal);
+        count(counts, Defect.RISKY_CURRENCY, risky);
+        count(counts, Defect.INJECTION, injection);
+        count(counts, Defect.UNKNOWN_FIELD, unknown);
+
+        json.append("{\"order_id\": \"O-").append(duplicate ? resolve(duplicateOf) : i).append('"');
+        if (!dropped.equals("user_id"))
+            json.append(", \"user_id\": \"U-").append(random.nextLong(userCount)).append('"');
+        String currency = risky ? RISKY_CURRENCIES[random.nextInt(RISKY_CURRENCIES.length)]
+                : CURRENCIES[random.nextInt(CURRENCIES.length)];
+        if (!dropped.equals("currency"))
+            json.append(", \"currency\": \"").append(currency).append('"');
+
+        long totalCents = 0;
+        int itemCount = 1 + random.nextInt(5);
+        int injectedItem = injection ? random.nextInt(itemCount) : -1;
+        json.append(", \"items\": [");
+        for (int n = 0; n < itemCount; n++) {
+            int qty = 1 + random.nextInt(4);
+            long priceCents = 100 + random.nextInt(19_901);
+            totalCents += qty * priceCents;
+            if (n > 0)
+                json.append(", ");
+            json.append("{\"sku\": \"SKU-").append(random.nextInt(1000));
+            if (n == injectedItem)
+                json.append(INJECTIONS.get(random.nextInt(INJECTIONS.size())));
+            json.append("\", \"qty\": ").append(qty).append(", \"price\": ");
+            cents(json, priceCents).append('}');
+        }
+        json.append(']');
+
+        long discountCents = random.nextInt(4) == 0 ? 1 + random.nextLong(totalCents / 20 + 1) : 0;
+        json.append(", \"discounts\": [");
+        if (discountCents > 0)
+            cents(json.append("{\"type\": \"PROMO\", \"amount\": "), discountCents).append('}');
+        json.append(']');
+        totalCents -= discountCents;
+        if (badTotal) {
+            // Off by 1.00 to 50.00, never below zero so only TOTAL_MISMATCH is reported
+            long offset = 100 + random.nextInt(4_901);
+            totalCents += random.nextBoolean() && totalCents > offset ? -offset : offset;
+        }
+        if (!dropped.equals("total_amount"))
+            cents(json.append(", \"total_amount\": "), totalCents);
+
+        // Spread evenly over one year, in input order, with some jitter
+        long created = START + i * SPAN_SECONDS / records + random.nextInt(60);
+        long updated = created + 60 + random.nextInt(20 * 60);
+        if (!dropped.equals("created_at"))
+            timestamp(json.append(", \"created_at\": \""), created).append('"');
+        if (!dropped.equals("updated_at"))
+            timestamp(json.append(", \"updated_at\": \""), updated).append('"');
+        json.append(", \"metadata\": {");
+        if (!dropped.equals("channel"))
+            json.append("\"channel\": \"").append(CHANNELS[random.nextInt(CHANNELS.length)]).append('"');
+        json.append('}');
+        if (unknown)
+            json.append(", \"").append(UNKNOWN_FIELDS[random.nextInt(UNKNOWN_FIELDS.length)]).append("\": \"X-")
+                    .append(random.nextInt(1000)).append('"');
+        json.append('}');
+    }
+
+    // The order number record i was written with: a duplicate of a duplicate repeats the original
+    private long resolve(long i) {
+        while (i > 0) {
+            SplittableRandom random = random(i);
+            if (!(random.nextDouble() < rates[Defect.DUPLICATE.ordinal()]))
+                break;
+            i = Math.max(0, i - 1 - random.nextInt(DUPLICATE_DISTANCE));
+        }
+        return i;
+    }
+
+    private SplittableRandom random(long i) {
+        return new SplittableRandom(Hashing.mix64(seed ^ Hashing.mix64(i + 1)));
+    }
+
+    private static void count(long[] counts, Defect defect, boolean drawn) {
+        if (drawn)
+            counts[defect.ordinal()]++;
+    }
+
+    private static StringBuilder cents(StringBuilder json, long cents) {
+        if (cents < 0)
+            json.append('-');
+        long abs = Math.abs(cents);
+        json.append(abs / 100).append('.');
+        if (abs % 100 < 10)
+            json.append('0');
+        return json.append(abs % 100);
+    }
+
+    private static StringBuilder timestamp(StringBuilder json, long epochSecond) {
+        LocalDateTime time = LocalDateTime.ofEpochSecond(epochSecond, 0, ZoneOffset.UTC);
+        json.append(time.getYear()).append('-');
+        pad(json, time.getMonthValue()).append('-');
+        pad(json, time.getDayOfMonth()).append('T');
+        pad(json, time.getHour()).append(':');
+        pad(json, time.getMinute()).append(':');
+        return pad(json, time.getSecond()).append('Z');
+    }
+
+    private static StringBuilder pad(StringBuilder json, int value) {
+        return (value < 10 ? json.append('0') : json).append(value);
+    }
+
+    private static Defect defectOption(String arg) {
+        for (Defect defect : Defect.values()) {
+            if (defect.option.equalsIgnoreCase(arg))
+                return defect;
+        }
+        return null;
+    }
+
+    // "250000", "500k", "1M", "1B"
+    static long parseCount(String value) {
+        long multiplier = 1;
+        switch (Character.toLowerCase(value.charAt(value.length() - 1))) {
+            case 'k':
+                multiplier = 1_000;
+                break;
+            case 'm':
+                multiplier = 1_000_000;
+                break;
+            case 'b':
+                multiplier = 1_000_000_000;
+                break;
+            default:
+                break;
+        }
+        String digits = multiplier == 1 ? value : value.substring(0, value.length() - 1);
+        long count = Long.parseLong(digits.replace("_", "")) * multiplier;
+        if (count < 1)
+            throw new IllegalArgumentException("Count must be positive: " + value);
+        return count;
+    }
+
+    // "0.02" or "2%"
+    static double parseRate(String value) {
+        double rate = value.endsWith("%") ? Double.parseDouble(value.substring(0, value.length() - 1)) / 100
+                : Double.parseDouble(value);
+        if (!(rate >= 0 && rate <= 1))
+            throw new IllegalArgumentException("Rate must be between 0 and 1: " + value);
+        return rate;
+    }
+
+    private static String value(String[] args, int index, String option) {
+        if (index >= args.length)
+            throw new IllegalArgumentException("Missing value for " + option);
+        return args[index];
+    }
+}
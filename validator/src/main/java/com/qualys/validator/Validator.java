@@ -1,251 +1,358 @@
 package com.qualys.validator;
 
+import com.fasterxml.jackson.core.JsonParser;
 import com.qualys.validator.engine.*;
+import com.qualys.validator.io.LeanRecordScanner;
+import com.qualys.validator.metrics.RunMetrics;
 import com.qualys.validator.model.Record;
+import com.qualys.validator.report.HtmlReportWriter;
 import com.qualys.validator.rules.*;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
-import java.io.PrintWriter;
-import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.nio.file.Path;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
 
 public class Validator {
 
+    private static final double MB = 1024.0 * 1024.0;
+    // In adaptive mode one record in TIMING_SAMPLE runs every rule with timing, so each rule's cost
+    // and rejection rate are measured independently of where it currently sits in the order
+    private static final int TIMING_SAMPLE = 64;
+    // On average the order is re-planned after this many timed records
+    private static final int REPLAN_SAMPLES = 1024;
+    private static final long MIN_SAMPLES = 256;
+
     private final List<ValidationRule> rules = new ArrayList<>();
-    private final ValidationContext context = new ValidationContext();
+    private final List<ValidationRule> orderedRules = new ArrayList<>();
+    private final ValidationContext context;
+
+    // Fail-fast: a record is rejected by the first rule that reports a HIGH-severity error and the
+    // remaining rules are skipped. Record-local rules then run in ruleOrder (indexes into `rules`),
+    // cheapest first and, in adaptive mode, by measured rejections per nanosecond.
+    private boolean failFast = false;
+    private boolean adaptiveOrder = false;
+    private volatile int[] ruleOrder;
+    private int[][] ruleDependencies;
+    private RuleStats[] ruleStats;
+
+    // null unless metrics are collected; timers are indexed like `rules` and `orderedRules`
+    private RunMetrics metrics;
+    private int[] ruleTimers;
+    private int[] orderedRuleTimers;
 
     public Validator() {
+        this(new ValidationContext());
+    }
+
+    public Validator(ValidationContext context) {
+        this(context, SecurityRule.DEFAULT_INJECTION_PATTERNS);
+    }
+
+    public Validator(ValidationContext context, List<String> injectionPatterns) {
+        this.context = context;
+        SecurityRule securityRule = new SecurityRule(injectionPatterns);
         // Register Rules
-        rules.add(new SchemaRule());
-        rules.add(new DataLogicRule());
-        rules.add(new FinancialRule());
-        rules.add(new SecurityRule());
-        rules.add(new CrossRecordRule());
+        register(new SchemaRule());
+        register(new DataLogicRule());
+        register(new FinancialRule());
+        register(securityRule);
+        register(new CrossRecordRule());
+        register(new VelocityRule());
+        register(new OutlierRule());
+        this.workerScanner = ThreadLocal.withInitial(() -> new LeanRecordScanner(securityRule.getInjectionPatterns()));
+        resolveDependencies();
+    }
+
+    private void register(ValidationRule rule) {
+        if (rule.requiresInputOrder())
+            orderedRules.add(rule);
+        else
+            rules.add(rule);
+    }
+
+    // Dependencies on rules of the other stage are met anyway: record-local rules run before the
+    // committer and ordered rules keep their registration order
+    private void resolveDependencies() {
+        ruleDependencies = new int[rules.size()][];
+        ruleStats = new RuleStats[rules.size()];
+        for (int i = 0; i < rules.size(); i++) {
+            List<Integer> dependencies = new ArrayList<>();
+            for (Class<? extends ValidationRule> dependency : rules.get(i).getDependencies()) {
+                for (int j = 0; j < rules.size(); j++) {
+                    if (dependency.isInstance(rules.get(j)))
+                        dependencies.add(j);
+                }
+            }
+            ruleDependencies[i] = dependencies.stream().mapToInt(Integer::intValue).toArray();
+            ruleStats[i] = new RuleStats();
+        }
+        double[] score = new double[rules.size()];
+        for (int i = 0; i < rules.size(); i++)
+            score[i] = -rules.get(i).getCost().ordinal();
+        ruleOrder = plan(score);
+    }
+
+    public void setFailFast(boolean failFast) {
+        this.failFast = failFast;
+    }
+
+    // Registers a latency timer per rule; must be called before the first record
+    public void setMetrics(RunMetrics metrics) {
+        this.metrics = metrics;
+        ruleTimers = new int[rules.size()];
+        for (int i = 0; i < rules.size(); i++)
+            ruleTimers[i] = metrics.ruleTimer(rules.get(i).getClass().getSimpleName());
+        orderedRuleTimers = new int[orderedRules.size()];
+        for (int i = 0; i < orderedRules.size(); i++)
+            orderedRuleTimers[i] = metrics.ruleTimer(orderedRules.get(i).getClass().getSimpleName());
+    }
+
+    // Only takes effect together with fail-fast, where the order decides how much work is skipped
+    public void setAdaptiveOrder(boolean adaptiveOrder) {
+        this.adaptiveOrder = adaptiveOrder;
+    }
+
+    // Greedy: of the rules whose dependencies are already placed, the highest score goes next
+    // (earliest registered on ties)
+    private int[] plan(double[] score) {
+        int[] order = new int[rules.size()];
+        boolean[] placed = new boolean[rules.size()];
+        for (int slot = 0; slot < order.length; slot++) {
+            int best = -1;
+            for (int i = 0; i < order.length; i++) {
+                if (!placed[i] && dependenciesPlaced(i, placed) && (best < 0 || score[i] > score[best]))
+                    best = i;
+            }
+            if (best < 0)
+                throw new IllegalStateException("Circular rule dependencies");
+            placed[best] = true;
+            order[slot] = best;
+        }
+        return order;
     }
 
+    private boolean dependenciesPlaced(int rule, boolean[] placed) {
+        for (int dependency : ruleDependencies[rule]) {
+            if (!placed[dependency])
+                return false;
+        }
+        return true;
+    }
+
+    // For independent filters, sorting by rejection probability over cost minimises the expected
+    // cost per record
+    private synchronized void replan() {
+        double[] score = new double[rules.size()];
+        for (int i = 0; i < rules.size(); i++) {
+            RuleStats stats = ruleStats[i];
+            long samples = stats.samples.sum();
+            if (samples < MIN_SAMPLES)
+                return;
+            score[i] = (double) stats.rejections.sum() / Math.max(1, stats.nanos.sum());
+        }
+        ruleOrder = plan(score);
+    }
+
+    // Per worker thread; evaluate() hands it back, so it is only valid until the next call
+    private final ThreadLocal<ValidationResult> workerResult = ThreadLocal.withInitial(ValidationResult::new);
+    private final ThreadLocal<LeanRecordScanner> workerScanner;
+    // Used only by the in-order committer
+    private final ValidationResult commitResult = new ValidationResult();
+
     public void validate(Record record, int lineNumber) {
-        context.incrementTotal();
-        ValidationResult result = new ValidationResult(lineNumber);
+        commit(record, lineNumber, evaluate(record));
+    }
 
-        for (ValidationRule rule : rules) {
-            rule.validate(record, context, result);
+    // Runs the record-local rules. Safe to call from any number of worker threads.
+    // The returned result is reused by the next call on the same thread: copy() it to keep it.
+    public ValidationResult evaluate(Record record) {
+        ValidationResult result = workerResult.get();
+        result.reset(0);
+        runRules(record, null, result, metrics != null && RunMetrics.sample());
+        return result;
+    }
+
+    // Lean mode: reads one record straight off the parser (on its START_OBJECT) into `into`, which
+    // ends up with only its scalar fields set, and runs the record-local rules on what was scanned.
+    // Returns null when the record has to be databound and go through evaluate(Record) instead;
+    // otherwise the same reuse rules as evaluate(Record) apply.
+    public ValidationResult evaluate(JsonParser parser, Record into) throws IOException {
+        LeanRecordScanner scanner = workerScanner.get();
+        boolean timed = metrics != null && RunMetrics.sample();
+        long start = timed ? System.nanoTime() : 0;
+        if (!scanner.scan(parser, into))
+            return null;
+        if (timed)
+            metrics.record(RunMetrics.Stage.PARSE, System.nanoTime() - start);
+        ValidationResult result = workerResult.get();
+        result.reset(0);
+        runRules(into, scanner, result, timed);
+        return result;
+    }
+
+    // `timed` records every rule's latency for this record
+    private void runRules(Record record, LeanRecordScanner scanned, ValidationResult result, boolean timed) {
+        if (!failFast) {
+            for (int i = 0; i < rules.size(); i++)
+                runRule(i, record, scanned, result, timed);
+            return;
+        }
+        int[] order = ruleOrder;
+        if (adaptiveOrder && ThreadLocalRandom.current().nextInt(TIMING_SAMPLE) == 0) {
+            sampleRules(order, record, scanned, result, timed);
+            return;
         }
+        for (int i = 0; i < order.length; i++) {
+            int errorsBefore = result.errorCount();
+            runRule(order[i], record, scanned, result, timed);
+            if (result.hasSeverity(ValidationError.Severity.HIGH, errorsBefore))
+                return;
+        }
+    }
 
+    // Runs every rule, timed, then keeps only what fail-fast would have reported
+    private void sampleRules(int[] order, Record record, LeanRecordScanner scanned, ValidationResult result,
+            boolean timed) {
+        int rejectedAt = -1;
+        for (int i = 0; i < order.length; i++) {
+            int errorsBefore = result.errorCount();
+            long start = System.nanoTime();
+            runRule(order[i], record, scanned, result, timed);
+            long nanos = System.nanoTime() - start;
+            boolean rejected = result.hasSeverity(ValidationError.Severity.HIGH, errorsBefore);
+            ruleStats[order[i]].add(nanos, rejected);
+            if (rejected && rejectedAt < 0)
+                rejectedAt = result.errorCount();
+        }
+        if (rejectedAt >= 0)
+            result.truncate(rejectedAt);
+        if (ThreadLocalRandom.current().nextInt(REPLAN_SAMPLES) == 0)
+            replan();
+    }
+
+    private void runRule(int index, Record record, LeanRecordScanner scanned, ValidationResult result,
+            boolean timed) {
+        ValidationRule rule = rules.get(index);
+        long start = timed ? System.nanoTime() : 0;
+        if (scanned != null)
+            rule.validate(record, scanned, context, result);
+        else
+            rule.validate(record, context, result);
+        if (timed)
+            metrics.record(ruleTimers[index], System.nanoTime() - start);
+    }
+
+    // Runs the order-sensitive rules on top of the record-local errors (null if none) and records
+    // the outcome. Must be called in input order. Returns all of the record's errors, valid until
+    // the next commit.
+    public ValidationResult commit(Record record, int lineNumber, ValidationResult localErrors) {
+        return commit(context, record, lineNumber, localErrors, commitResult);
+    }
+
+    // The same against another context (e.g. one per service request), into a result the caller
+    // owns. The rules keep their cross-record state in the context, so this validator's rules can
+    // serve any number of contexts; commits to one context must not overlap.
+    public ValidationResult commit(ValidationContext context, Record record, int lineNumber,
+            ValidationResult localErrors, ValidationResult result) {
+        context.incrementTotal();
+        result.reset(lineNumber);
+        if (localErrors != null)
+            result.addAll(localErrors);
+        // In fail-fast mode a rejected record is not remembered by the cross-record indexes either
+        boolean rejected = failFast && result.hasSeverity(ValidationError.Severity.HIGH, 0);
+        boolean timed = metrics != null && RunMetrics.sample();
+        long start = timed ? System.nanoTime() : 0;
+        for (int i = 0; i < orderedRules.size() && !rejected; i++) {
+            int errorsBefore = result.errorCount();
+            orderedRules.get(i).validate(record, context, result);
+            rejected = failFast && result.hasSeverity(ValidationError.Severity.HIGH, errorsBefore);
+            if (timed) {
+                long now = System.nanoTime();
+                metrics.record(orderedRuleTimers[i], now - start);
+                start = now;
+            }
+        }
         context.captureErrors(result);
+        if (timed)
+            metrics.record(RunMetrics.Stage.COMMIT, System.nanoTime() - start);
+        return result;
+    }
+
+    public ValidationContext getContext() {
+        return context;
     }
 
     public void printConsoleSummary() {
         System.out.println("Processing Complete.");
         System.out.println("Total: " + context.getTotalRecords());
         System.out.println("Invalid: " + context.getInvalidRecords());
+        printResourceUsage();
         System.out.println("See validation_report.html for details.");
     }
 
-    public void generateHtmlReport(String filename) {
-        StringBuilder html = new StringBuilder();
-        html.append("<!DOCTYPE html><html lang='en'><head><meta charset='UTF-8'>");
-        html.append(
-                "<meta http-equiv=\"Content-Security-Policy\" content=\"script-src 'unsafe-inline' https://cdn.jsdelivr.net;\">");
-        html.append("<title>Validation Report Dashboard</title>");
-        html.append("<script src=\"https://cdn.jsdelivr.net/npm/chart.js\"></script>");
-        html.append("<style>");
-        html.append(
-                ":root { --primary: #2c3e50; --secondary: #34495e; --accent: #3498db; --bg: #f4f6f9; --card-bg: #ffffff; --text: #333; --border: #e0e0e0; }");
-        html.append(
-                "body { font-family: 'Segoe UI', Roboto, Helvetica, Arial, sans-serif; background: var(--bg); color: var(--text); margin: 0; padding: 0; line-height: 1.6; }");
-        html.append(".container { max-width: 1400px; margin: 0 auto; padding: 20px; }");
-        html.append(
-                "header { background: var(--primary); color: white; padding: 1rem 0; box-shadow: 0 2px 5px rgba(0,0,0,0.1); margin-bottom: 2rem; }");
-        html.append(
-                "header .container { display: flex; justify-content: space-between; align-items: center; padding: 0 20px; }");
-        html.append("h1 { margin: 0; font-size: 1.5rem; }");
-        html.append(".timestamp { font-size: 0.9rem; opacity: 0.8; }");
-
-        // KPI Cards
-        html.append(
-                ".kpi-grid { display: grid; grid-template-columns: repeat(auto-fit, minmax(200px, 1fr)); gap: 15px; margin-bottom: 2rem; }");
-        html.append(
-                ".card { background: var(--card-bg); border-radius: 8px; padding: 20px; box-shadow: 0 2px 4px rgba(0,0,0,0.05); border-left: 4px solid var(--accent); }");
-        html.append(
-                ".card h3 { margin: 0 0 10px 0; font-size: 0.85rem; color: #7f8c8d; text-transform: uppercase; letter-spacing: 0.5px; }");
-        html.append(".card .value { font-size: 1.8rem; font-weight: 700; color: var(--primary); }");
-        html.append(
-                ".card.danger { border-left-color: #e74c3c; } .card.success { border-left-color: #27ae60; } .card.warning { border-left-color: #f39c12; }");
-
-        // Charts Section
-        html.append(
-                ".charts-row { display: grid; grid-template-columns: repeat(auto-fit, minmax(400px, 1fr)); gap: 20px; margin-bottom: 2rem; }");
-        html.append(
-                ".chart-container { background: var(--card-bg); padding: 20px; border-radius: 8px; box-shadow: 0 2px 4px rgba(0,0,0,0.05); position: relative; height: 300px; }");
-        html.append(
-                ".chart-container h3 { margin-top: 0; margin-bottom: 15px; font-size: 1rem; border-bottom: 1px solid var(--border); padding-bottom: 10px; }");
-
-        // Risk Insights
-        html.append(
-                ".insights { background: #fff3cd; border: 1px solid #ffeeba; color: #856404; padding: 15px; border-radius: 8px; margin-bottom: 2rem; }");
-        html.append(
-                ".insights h3 { margin-top: 0; font-size: 1.1rem; display: flex; align-items: center; gap: 10px; }");
-        html.append(".insights ul { margin: 10px 0 0 0; padding-left: 20px; }");
-
-        // Detailed Sections
-        html.append(
-                "details { background: var(--card-bg); margin-bottom: 15px; border-radius: 8px; box-shadow: 0 1px 3px rgba(0,0,0,0.1); overflow: hidden; }");
-        html.append(
-                "summary { padding: 15px 20px; cursor: pointer; font-weight: 600; display: flex; justify-content: space-between; align-items: center; background: #f8f9fa; transition: background 0.2s; }");
-        html.append("summary:hover { background: #e9ecef; }");
-        html.append("summary::-webkit-details-marker { display: none; }");
-        html.append(
-                ".badge { padding: 4px 10px; border-radius: 20px; font-size: 0.75rem; color: white; min-width: 25px; text-align: center; }");
-        html.append(
-                ".badge.high { background: #e74c3c; } .badge.medium { background: #f39c12; } .badge.low { background: #3498db; }");
-
-        // Tables
-        html.append(".table-wrapper { overflow-x: auto; padding: 0; }");
-        html.append("table { width: 100%; border-collapse: collapse; font-size: 0.9rem; }");
-        html.append("th, td { padding: 12px 20px; text-align: left; border-bottom: 1px solid var(--border); }");
-        html.append("th { background: #f8f9fa; color: #495057; font-weight: 600; position: sticky; top: 0; }");
-        html.append("tr:last-child td { border-bottom: none; }");
-        html.append("tr:hover { background-color: #f8f9fa; }");
-
-        html.append(
-                "footer { text-align: center; padding: 2rem; color: #7f8c8d; font-size: 0.85rem; margin-top: 2rem; border-top: 1px solid var(--border); }");
-        html.append("</style></head><body>");
-
-        // Header
-        html.append("<header><div class='container'><h1>Validation Dashboard</h1><span class='timestamp'>Generated: ")
-                .append(java.time.LocalDateTime.now()).append("</span></div></header>");
-
-        html.append("<div class='container'>");
-
-        // Calculate Scores
-        int total = context.getTotalRecords();
-        int valid = context.getValidRecords();
-        int invalid = context.getInvalidRecords();
-        double qualityScore = total > 0 ? (double) valid / total * 100 : 0;
-
-        Map<ValidationError.Severity, Integer> sevCounts = context.getSeverityCounts();
-        int high = sevCounts.getOrDefault(ValidationError.Severity.HIGH, 0);
-        int medium = sevCounts.getOrDefault(ValidationError.Severity.MEDIUM, 0);
-        int low = sevCounts.getOrDefault(ValidationError.Severity.LOW, 0);
-
-        // Heuristic Security Score (100 - weighted penalty)
-        double penalty = (high * 5.0 + medium * 2.0 + low) / (total > 0 ? total : 1) * 10;
-        double securityScore = Math.max(0, 100 - penalty);
-
-        // Executive Summary (KPIs)
-        html.append("<div class='kpi-grid'>");
-        html.append(kpiCard("Total Records", String.valueOf(total), ""));
-        html.append(kpiCard("Valid Records", String.valueOf(valid), "success"));
-        html.append(kpiCard("Invalid Records", String.valueOf(invalid), invalid > 0 ? "danger" : "success"));
-        html.append(kpiCard("Quality Score", String.format("%.1f%%", qualityScore),
-                qualityScore > 90 ? "success" : (qualityScore > 70 ? "warning" : "danger")));
-        html.append(kpiCard("Security Score", String.format("%.1f", securityScore),
-                securityScore > 90 ? "success" : "warning"));
-        html.append("</div>");
-
-        // Risk Insights
-        html.append(generateInsights(context, qualityScore, securityScore));
-
-        // Charts Row
-        html.append("<div class='charts-row'>");
-        html.append("<div class='chart-container'><h3>Category Distribution</h3><canvas id='catChart'></canvas></div>");
-        html.append("<div class='chart-container'><h3>Severity Breakdown</h3><canvas id='sevChart'></canvas></div>");
-        html.append("</div>");
-
-        // Detailed Breakdown
-        html.append("<h2>Detailed Diagnostics</h2>");
-        for (ValidationError.Category cat : ValidationError.Category.values()) {
-            List<String> errors = context.getDetailedErrors().get(cat);
-            int count = context.getCategoryCounts().getOrDefault(cat, 0);
-
-            html.append("<details ").append(count > 0 ? "open" : "").append(">");
-            html.append("<summary>").append(cat.toString()).append(" Issues");
-            html.append("<span class='badge ").append(count > 0 ? "high" : "low").append("'>").append(count)
-                    .append("</span>");
-            html.append("</summary>");
-
-            if (count > 0) {
-                html.append("<div class='table-wrapper'><table><thead><tr><th>Log Message</th></tr></thead><tbody>");
-                // Limit to 5000 for display
-                errors.stream().limit(5000)
-                        .forEach(e -> html.append("<tr><td>").append(escapeHtml(e)).append("</td></tr>"));
-                if (errors.size() > 5000) {
-                    html.append("<tr><td><i>And ").append(errors.size() - 5000).append(" more...</i></td></tr>");
-                }
-                html.append("</tbody></table></div>");
+    private void printResourceUsage() {
+        System.out.println("Order-id index: " + context.getDuplicateDetector().describe());
+        System.out.println("Velocity index: " + context.getUserVelocity().describe());
+        System.out.println("Value profile: " + context.getValueProfile().describe());
+        if (failFast)
+            System.out.println("Rule order: " + describeRuleOrder());
+
+        Runtime runtime = Runtime.getRuntime();
+        System.out.printf("Heap used: %.1f MB of %.1f MB%n",
+                (runtime.totalMemory() - runtime.freeMemory()) / MB, runtime.maxMemory() / MB);
+
+        long gcCount = 0;
+        long gcMillis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            gcCount += Math.max(0, gc.getCollectionCount());
+            gcMillis += Math.max(0, gc.getCollectionTime());
+        }
+        System.out.println("GC: " + gcCount + " collections, " + gcMillis + " ms");
+    }
+
+    private String describeRuleOrder() {
+        StringBuilder description = new StringBuilder();
+        for (int rule : ruleOrder) {
+            if (description.length() > 0)
+                description.append(" > ");
+            ValidationRule validationRule = rules.get(rule);
+            description.append(validationRule.getClass().getSimpleName());
+            long samples = ruleStats[rule].samples.sum();
+            if (samples > 0) {
+                description.append(String.format(" (%.0f ns, %.1f%% rejected)",
+                        (double) ruleStats[rule].nanos.sum() / samples,
+                        100.0 * ruleStats[rule].rejections.sum() / samples));
             } else {
-                html.append("<div style='padding:20px;color:#7f8c8d;'>No issues detected in this category.</div>");
+                description.append(" (").append(validationRule.getCost()).append(")");
             }
-            html.append("</details>");
         }
+        return description.toString();
+    }
 
-        html.append("<footer>Qualys Validator 2.0 &bull; Confidential &bull; Generated Automatically</footer>");
-
-        // JS for Charts
-        html.append("<script>");
-        html.append("const ctxCat = document.getElementById('catChart').getContext('2d');");
-        html.append("new Chart(ctxCat, { type: 'doughnut', data: { labels: [");
-        for (ValidationError.Category c : ValidationError.Category.values())
-            html.append("'").append(c).append("',");
-        html.append("], datasets: [{ data: [");
-        for (ValidationError.Category c : ValidationError.Category.values())
-            html.append(context.getCategoryCounts().getOrDefault(c, 0)).append(",");
-        html.append(
-                "], backgroundColor: ['#3498db', '#e74c3c', '#f1c40f', '#9b59b6', '#2ecc71'] }] }, options: { maintainAspectRatio: false } });");
-
-        html.append("const ctxSev = document.getElementById('sevChart').getContext('2d');");
-        html.append(
-                "new Chart(ctxSev, { type: 'bar', data: { labels: ['High', 'Medium', 'Low'], datasets: [{ label: 'Count', data: [");
-        html.append(high).append(",").append(medium).append(",").append(low);
-        html.append(
-                "], backgroundColor: ['#e74c3c', '#f39c12', '#3498db'] }] }, options: { maintainAspectRatio: false, scales: { y: { beginAtZero: true } } } });");
-        html.append("</script>");
-
-        html.append("</div></body></html>");
-
-        try (PrintWriter out = new PrintWriter(filename)) {
-            out.println(html.toString());
+    public void generateHtmlReport(String filename) {
+        try {
+            new HtmlReportWriter(context).write(Path.of(filename));
             System.out.println("Enhanced HTML Report generated: " + filename);
         } catch (Exception e) {
             e.printStackTrace();
         }
     }
 
-    private String kpiCard(String title, String value, String cls) {
-        return "<div class='card " + cls + "'><h3>" + title + "</h3><div class='value'>" + value + "</div></div>";
-    }
+    private static final class RuleStats {
+        final LongAdder samples = new LongAdder();
+        final LongAdder rejections = new LongAdder();
+        final LongAdder nanos = new LongAdder();
 
-    private String generateInsights(ValidationContext ctx, double qualScore, double secScore) {
-        if (qualScore > 99 && secScore > 90)
-            return "";
-
-        StringBuilder sb = new StringBuilder();
-        sb.append("<div class='insights'><h3>&#9888; Automated Risk Insights</h3><ul>");
-
-        if (qualScore < 80)
-            sb.append(
-                    "<li><b>High Failure Rate:</b> More than 20% of records failed validation. Investigate data ingestion source.</li>");
-        if (secScore < 70)
-            sb.append(
-                    "<li><b>Security Alert:</b> Significant security risks detected. Check for injection patterns or high-risk currencies.</li>");
-
-        Integer finErr = ctx.getCategoryCounts().get(ValidationError.Category.FINANCIAL);
-        if (finErr != null && finErr > 10)
-            sb.append("<li><b>Financial Integrity:</b> ").append(finErr)
-                    .append(" financial discrepancies detected. Review calculation logic.</li>");
-
-        Integer schemaErr = ctx.getCategoryCounts().get(ValidationError.Category.SCHEMA);
-        if (schemaErr != null && schemaErr > 0)
-            sb.append("<li><b>Schema Drift:</b> Unexpected fields or missing mandatory data detected.</li>");
-
-        sb.append("</ul></div>");
-        return sb.toString();
-    }
-
-    private String escapeHtml(String s) {
-        if (s == null)
-            return "";
-        return s.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;").replace("'",
-                "&#39;");
+        void add(long elapsed, boolean rejected) {
+            samples.increment();
+            nanos.add(elapsed);
+            if (rejected)
+                rejections.increment();
+        }
     }
 }
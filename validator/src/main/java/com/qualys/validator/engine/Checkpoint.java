@@ -0,0 +1,130 @@
+package com.qualys.validator.engine;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+// Snapshot of a run at a record boundary: the input byte offset and line number reached, the
+// lengths of the CSV exports, the error log's position and index, and the whole ValidationContext.
+// A run restored from it continues exactly where the snapshot was taken. The file is written
+// next to its final name and moved into place, so a crash while checkpointing keeps the old one.
+public final class Checkpoint {
+
+    private static final int MAGIC = 0x51564350;
+    private static final int VERSION = 5;
+    // A CRC of the input's first bytes catches resuming against a different file
+    private static final int FINGERPRINT_BYTES = 64 * 1024;
+
+    public final long inputOffset;
+    public final int lineNumber;
+    // Lengths of valid.csv and invalid.csv, -1 when the run did not export CSV
+    public final long validCsvBytes;
+    public final long invalidCsvBytes;
+
+    private final Path path;
+    private final long inputFingerprint;
+    private final byte[] errorLogSnapshot;
+
+    private Checkpoint(Path path, DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC)
+            throw new IOException(path + " is not a checkpoint");
+        if (in.readInt() != VERSION)
+            throw new IOException("Checkpoint " + path + " was written by an incompatible version");
+        this.path = path;
+        this.inputOffset = in.readLong();
+        this.lineNumber = in.readInt();
+        this.inputFingerprint = in.readLong();
+        this.validCsvBytes = in.readLong();
+        this.invalidCsvBytes = in.readLong();
+        int errorLogBytes = in.readInt();
+        if (errorLogBytes >= 0) {
+            errorLogSnapshot = new byte[errorLogBytes];
+            in.readFully(errorLogSnapshot);
+        } else {
+            errorLogSnapshot = null;
+        }
+    }
+
+    // Must be called from the committer, between records
+    public static void write(Path path, Path input, long inputOffset, int lineNumber, long validCsvBytes,
+            long invalidCsvBytes, ValidationContext context) throws IOException {
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileOutputStream file = new FileOutputStream(temp.toFile());
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(inputOffset);
+            out.writeInt(lineNumber);
+            out.writeLong(fingerprint(input, inputOffset));
+            out.writeLong(validCsvBytes);
+            out.writeLong(invalidCsvBytes);
+
+            if (context.getErrorLog() != null) {
+                ByteArrayOutputStream errorLog = new ByteArrayOutputStream();
+                context.getErrorLog().writeSnapshot(new DataOutputStream(errorLog));
+                out.writeInt(errorLog.size());
+                errorLog.writeTo(out);
+            } else {
+                out.writeInt(-1);
+            }
+
+            context.writeSnapshot(out);
+            out.writeInt(MAGIC);
+            out.flush();
+            file.getFD().sync();
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Reads the position part and checks that it belongs to `input`; the context follows with restore()
+    public static Checkpoint read(Path path, Path input) throws IOException {
+        Checkpoint checkpoint;
+        try (DataInputStream in = open(path)) {
+            checkpoint = new Checkpoint(path, in);
+        }
+        if (Files.size(input) < checkpoint.inputOffset
+                || fingerprint(input, checkpoint.inputOffset) != checkpoint.inputFingerprint)
+            throw new IOException("Checkpoint " + path + " was not taken on " + input);
+        return checkpoint;
+    }
+
+    public ErrorLog resumeErrorLog(Path logPath) throws IOException {
+        if (errorLogSnapshot == null)
+            throw new IOException("Checkpoint " + path + " was taken without an error log");
+        return ErrorLog.resume(logPath, new DataInputStream(new ByteArrayInputStream(errorLogSnapshot)));
+    }
+
+    // Into a fresh context built with the settings of the checkpointed run
+    public void restore(ValidationContext context) throws IOException {
+        try (DataInputStream in = open(path)) {
+            new Checkpoint(path, in); // skips the position part
+            context.readSnapshot(in);
+            if (in.readInt() != MAGIC)
+                throw new IOException("Checkpoint " + path + " is corrupt");
+        }
+    }
+
+    private static DataInputStream open(Path path) throws IOException {
+        return new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16));
+    }
+
+    private static long fingerprint(Path input, long inputOffset) throws IOException {
+        int length = (int) Math.min(inputOffset, FINGERPRINT_BYTES);
+        ByteBuffer head = ByteBuffer.allocate(length);
+        try (FileChannel channel = FileChannel.open(input, StandardOpenOption.READ)) {
+            while (head.hasRemaining()) {
+                if (channel.read(head) < 0)
+                    break;
+            }
+        }
+        head.flip();
+        CRC32 crc = new CRC32();
+        crc.update(head);
+        return crc.getValue();
+    }
+}
@@ -0,0 +1,144 @@
+package com.qualys.validator.engine;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+// What one shard of a sharded run (--shard I/N) leaves for the merge: which shard it was, the size
+// of the input it read, where its error log is, and its ValidationContext's counters and samples
+// (not the cross-record indexes, which only matter while validating). A few KB whatever the input.
+// Written next to its final name and moved into place, like Checkpoint.
+public final class ContextSnapshot {
+
+    private static final int MAGIC = 0x51564353;
+    private static final int VERSION = 3;
+
+    public final Path path;
+    public final int shardIndex;
+    public final int shardCount;
+    public final long inputBytes;
+    // null when the shard kept no error log
+    public final Path errorLog;
+
+    private ContextSnapshot(Path path, DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC)
+            throw new IOException(path + " is not a context snapshot");
+        if (in.readInt() != VERSION)
+            throw new IOException("Context snapshot " + path + " was written by an incompatible version");
+        this.path = path;
+        this.shardIndex = in.readInt();
+        this.shardCount = in.readInt();
+        this.inputBytes = in.readLong();
+        String log = in.readUTF();
+        // Relative to the snapshot's directory, so a shard's output can be moved as a whole
+        Path directory = path.toAbsolutePath().getParent();
+        this.errorLog = log.isEmpty() ? null : directory.resolve(log);
+    }
+
+    // After the run, once the error log is closed
+    public static void write(Path path, int shardIndex, int shardCount, long inputBytes, ValidationContext context)
+            throws IOException {
+        String log = "";
+        if (context.getErrorLog() != null) {
+            Path logPath = context.getErrorLog().getPath().toAbsolutePath();
+            Path directory = path.toAbsolutePath().getParent();
+            log = logPath.getParent().equals(directory) ? logPath.getFileName().toString() : logPath.toString();
+        }
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileOutputStream file = new FileOutputStream(temp.toFile());
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(shardIndex);
+            out.writeInt(shardCount);
+            out.writeLong(inputBytes);
+            out.writeUTF(log);
+            context.writeSummary(out);
+            out.writeInt(MAGIC);
+            out.flush();
+            file.getFD().sync();
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Reads the shard description; the counters follow with mergeInto()
+    public static ContextSnapshot read(Path path) throws IOException {
+        try (DataInputStream in = open(path)) {
+            return new ContextSnapshot(path, in);
+        }
+    }
+
+    // Every shard of one run exactly once
+    public static void checkComplete(List<ContextSnapshot> shards) throws IOException {
+        ContextSnapshot first = shards.get(0);
+        boolean[] seen = new boolean[first.shardCount];
+        for (ContextSnapshot shard : shards) {
+            if (shard.shardCount != first.shardCount || shard.inputBytes != first.inputBytes)
+                throw new IOException(shard.path + " belongs to a different run than " + first.path);
+            if (seen[shard.shardIndex])
+                throw new IOException("Shard " + shard.shardIndex + " is given twice");
+            seen[shard.shardIndex] = true;
+        }
+        for (int i = 0; i < seen.length; i++) {
+            if (!seen[i])
+                throw new IOException("Shard " + i + "/" + first.shardCount + " is missing");
+        }
+    }
+
+    public void mergeInto(ValidationContext context) throws IOException {
+        try (DataInputStream in = open(path)) {
+            new ContextSnapshot(path, in); // skips the shard description
+            context.mergeSummary(in);
+            if (in.readInt() != MAGIC)
+                throw new IOException("Context snapshot " + path + " is corrupt");
+        }
+    }
+
+    // Interleaves the shards' error logs by line into one, the same log an unsharded run writes
+    public static void mergeErrorLogs(List<ContextSnapshot> shards, ErrorLog into) throws IOException {
+        List<ErrorLogReader.Cursor> cursors = new ArrayList<>();
+        // Heads of the cursors by line, ties (never across shards) by cursor
+        PriorityQueue<Head> heads = new PriorityQueue<>(
+                Comparator.comparingInt((Head head) -> head.entry.lineNumber).thenComparingInt(head -> head.cursor));
+        try {
+            for (ContextSnapshot shard : shards) {
+                ErrorLogReader.Cursor cursor = ErrorLogReader.scan(shard.errorLog);
+                cursors.add(cursor);
+                ErrorLogReader.Entry entry = cursor.next();
+                if (entry != null)
+                    heads.add(new Head(entry, cursors.size() - 1));
+            }
+            Head head;
+            while ((head = heads.poll()) != null) {
+                Object[] args = head.entry.error.getArgs();
+                into.append(head.entry.lineNumber, head.entry.error.getCode(), args.length > 0 ? args[0] : null,
+                        args.length > 1 ? args[1] : null);
+                ErrorLogReader.Entry next = cursors.get(head.cursor).next();
+                if (next != null)
+                    heads.add(new Head(next, head.cursor));
+            }
+        } finally {
+            for (ErrorLogReader.Cursor cursor : cursors)
+                cursor.close();
+        }
+    }
+
+    private static final class Head {
+        final ErrorLogReader.Entry entry;
+        final int cursor;
+
+        Head(ErrorLogReader.Entry entry, int cursor) {
+            this.entry = entry;
+            this.cursor = cursor;
+        }
+    }
+
+    private static DataInputStream open(Path path) throws IOException {
+        return new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16));
+    }
+}
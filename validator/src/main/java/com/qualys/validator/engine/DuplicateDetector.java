@@ -0,0 +1,34 @@
+package com.qualys.validator.engine;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+// Remembers order ids for CrossRecordRule
+public interface DuplicateDetector {
+
+    enum Match {
+        NEW, DUPLICATE, POSSIBLE_DUPLICATE
+    }
+
+    // Used when a record carries no usable created_at (same sentinel as Iso8601.INVALID)
+    long NO_TIMESTAMP = Long.MIN_VALUE;
+
+    Match check(String orderId, long createdAtEpochSecond);
+
+    // Lets CrossRecordRule skip timestamp parsing when the detector ignores it
+    default boolean usesTimestamps() {
+        return false;
+    }
+
+    long size();
+
+    long memoryBytes();
+
+    String describe();
+
+    // For checkpoints; readSnapshot fills a freshly created detector with the same settings
+    void writeSnapshot(DataOutput out) throws IOException;
+
+    void readSnapshot(DataInput in) throws IOException;
+}
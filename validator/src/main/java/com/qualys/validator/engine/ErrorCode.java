@@ -0,0 +1,90 @@
+package com.qualys.validator.engine;
+
+import static com.qualys.validator.engine.ValidationError.Category.*;
+import static com.qualys.validator.engine.ValidationError.Severity.*;
+
+// Fixed catalog of everything the rules can report. Rules record a code plus its arguments;
+// the message text is only formatted when a report or log reader renders it.
+public enum ErrorCode {
+    // SchemaRule
+    MISSING_ORDER_ID(SCHEMA, HIGH, "Missing order_id"),
+    MISSING_USER_ID(SCHEMA, HIGH, "Missing user_id"),
+    MISSING_CURRENCY(SCHEMA, HIGH, "Missing currency"),
+    MISSING_ITEMS(SCHEMA, HIGH, "Items missing or empty"),
+    MISSING_TOTAL_AMOUNT(SCHEMA, HIGH, "Missing total_amount"),
+    MISSING_CREATED_AT(SCHEMA, HIGH, "Missing created_at"),
+    MISSING_UPDATED_AT(SCHEMA, HIGH, "Missing updated_at"),
+    MISSING_CHANNEL(SCHEMA, MEDIUM, "Missing metadata.channel"),
+    UNKNOWN_FIELD(SCHEMA, MEDIUM, "Unknown field detected: %s"),
+
+    // DataLogicRule
+    INVALID_ORDER_ID_FORMAT(SCHEMA, MEDIUM, "Invalid order_id format"),
+    INVALID_USER_ID_FORMAT(SCHEMA, MEDIUM, "Invalid user_id format"),
+    INVALID_CURRENCY(BUSINESS, MEDIUM, "Invalid currency: %s"),
+    UPDATED_BEFORE_CREATED(BUSINESS, MEDIUM, "updated_at before created_at"),
+    CREATED_IN_FUTURE(BUSINESS, MEDIUM, "created_at in future"),
+    MALFORMED_TIMESTAMP(SCHEMA, MEDIUM, "Malformed timestamp format"),
+
+    // FinancialRule
+    ITEM_QTY_NOT_POSITIVE(FINANCIAL, HIGH, "Item qty <= 0"),
+    ITEM_PRICE_NEGATIVE(FINANCIAL, HIGH, "Item price < 0"),
+    QTY_OUTLIER(FINANCIAL, MEDIUM, "Qty outlier > 10,000"),
+    PRICE_OUTLIER(FINANCIAL, MEDIUM, "Price outlier > 10,000,000"),
+    DISCOUNT_NEGATIVE(FINANCIAL, HIGH, "Discount amount < 0"),
+    TOTAL_MISMATCH(FINANCIAL, HIGH, "Calculated %s != Declared %s"),
+    NEGATIVE_TOTAL(FINANCIAL, HIGH, "Negative Total Amount"),
+    DISCOUNT_EXCEEDS_GROSS(FINANCIAL, HIGH, "Discount > Gross Amount"),
+
+    // SecurityRule
+    HIGH_RISK_CURRENCY(SECURITY, HIGH, "High Risk Currency detected: %s"),
+    INJECTION_ORDER_ID(SECURITY, HIGH, "Potential Injection in order_id"),
+    INJECTION_USER_ID(SECURITY, HIGH, "Potential Injection in user_id"),
+    INJECTION_CURRENCY(SECURITY, HIGH, "Potential Injection in currency"),
+    INJECTION_CREATED_AT(SECURITY, HIGH, "Potential Injection in created_at"),
+    INJECTION_UPDATED_AT(SECURITY, HIGH, "Potential Injection in updated_at"),
+    INJECTION_METADATA(SECURITY, HIGH, "Potential Injection in metadata"),
+    INJECTION_SKU(SECURITY, HIGH, "Potential Injection in items.sku"),
+    INJECTION_DISCOUNT_TYPE(SECURITY, HIGH, "Potential Injection in discounts.type"),
+    INJECTION_UNKNOWN_FIELD(SECURITY, HIGH, "Potential Injection in unknown field: %s"),
+
+    // CrossRecordRule
+    DUPLICATE_ORDER_ID(BUSINESS, HIGH, "Duplicate Order ID detected: %s"),
+    POSSIBLE_DUPLICATE_ORDER_ID(BUSINESS, LOW, "Possible duplicate Order ID (seen before the dedup window): %s"),
+
+    // VelocityRule
+    USER_VELOCITY_EXCEEDED(BUSINESS, MEDIUM, "User %s placed more than %s orders within the velocity window"),
+
+    // OutlierRule
+    PRICE_QUANTILE_OUTLIER(FINANCIAL, LOW, "Item price %s above the outlier quantile (%s) for its currency and channel"),
+    QTY_QUANTILE_OUTLIER(FINANCIAL, LOW, "Item qty %s above the outlier quantile (%s) for its currency and channel"),
+    TOTAL_QUANTILE_OUTLIER(FINANCIAL, LOW, "total_amount %s above the outlier quantile (%s) for its currency and channel");
+
+    public static final int MAX_ARGS = 2;
+
+    private final ValidationError.Category category;
+    private final ValidationError.Severity severity;
+    private final String template;
+
+    ErrorCode(ValidationError.Category category, ValidationError.Severity severity, String template) {
+        this.category = category;
+        this.severity = severity;
+        this.template = template;
+    }
+
+    public ValidationError.Category getCategory() {
+        return category;
+    }
+
+    public ValidationError.Severity getSeverity() {
+        return severity;
+    }
+
+    // Message with placeholders, for dashboards that list codes rather than individual errors
+    public String getDescription() {
+        return template.replace("%s", "…");
+    }
+
+    public String format(Object... args) {
+        return args.length == 0 ? template : String.format(template, args);
+    }
+}
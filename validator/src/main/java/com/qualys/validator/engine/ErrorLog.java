@@ -0,0 +1,176 @@
+package com.qualys.validator.engine;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Append-only NDJSON log of every validation error, one object per line:
+//   {"line":12,"code":"UNKNOWN_FIELD","args":["email"]}
+// Category, severity and message text all derive from the ErrorCode and are not repeated per line.
+// A sidecar index (<log>.idx) records per category the total count and the byte offset of every
+// INDEX_STRIDE-th entry, so ErrorLogReader can jump to any page of a category without a full scan.
+// Index entries (category byte, offset long) are appended to the sidecar as they are produced, so
+// nothing grows on the heap with the error count; the header of stride and per-category counts is
+// rewritten in place on close() and flush(). A checkpointed run reopens the log with resume().
+public class ErrorLog implements Closeable {
+
+    public static final int INDEX_STRIDE = 500;
+    static final int INDEX_ENTRY_BYTES = 1 + 8;
+
+    static int indexHeaderBytes() {
+        return 4 + 4 + 8 * ValidationError.Category.values().length;
+    }
+
+    private final Path path;
+    private final CountingOutputStream out;
+    private final JsonGenerator generator;
+    private final long[] counts = new long[ValidationError.Category.values().length];
+    private final FileChannel indexChannel;
+    private final DataOutputStream indexOut;
+    private long indexEntries = 0;
+
+    public ErrorLog(Path path) throws IOException {
+        this(path, false);
+    }
+
+    private ErrorLog(Path path, boolean append) throws IOException {
+        this.path = path;
+        this.out = new CountingOutputStream(
+                new BufferedOutputStream(new FileOutputStream(path.toFile(), append), 1 << 16));
+        this.generator = new JsonFactory().createGenerator(out, JsonEncoding.UTF8);
+        this.generator.setRootValueSeparator(null);
+        this.indexChannel = FileChannel.open(indexPath(path), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        if (!append)
+            indexChannel.truncate(0);
+        indexChannel.position(Math.max(indexChannel.size(), indexHeaderBytes()));
+        this.indexOut = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(indexChannel), 1 << 12));
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    // Reopens the log of a checkpointed run: entries written after the snapshot was taken belong to
+    // records that will be validated again, so the log and its index are cut back to the snapshot's
+    // lengths first
+    public static ErrorLog resume(Path path, DataInput snapshot) throws IOException {
+        long length = snapshot.readLong();
+        long indexEntries = snapshot.readLong();
+        truncate(path, length);
+        truncate(indexPath(path), indexHeaderBytes() + indexEntries * INDEX_ENTRY_BYTES);
+        ErrorLog log = new ErrorLog(path, true);
+        log.out.count = length;
+        log.indexEntries = indexEntries;
+        if (snapshot.readInt() != log.counts.length)
+            throw new IOException("Error log snapshot has a different set of categories");
+        for (int category = 0; category < log.counts.length; category++)
+            log.counts[category] = snapshot.readLong();
+        return log;
+    }
+
+    private static void truncate(Path path, long length) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            if (channel.size() < length)
+                throw new IOException("Error log " + path + " is shorter than when the checkpoint was taken");
+            channel.truncate(length);
+        }
+    }
+
+    public static Path indexPath(Path logPath) {
+        return logPath.resolveSibling(logPath.getFileName() + ".idx");
+    }
+
+    public synchronized void append(int lineNumber, ErrorCode code, Object arg0, Object arg1) throws IOException {
+        int category = code.getCategory().ordinal();
+        if (counts[category] % INDEX_STRIDE == 0) {
+            indexOut.writeByte(category);
+            indexOut.writeLong(position());
+            indexEntries++;
+        }
+        counts[category]++;
+
+        generator.writeStartObject();
+        generator.writeNumberField("line", lineNumber);
+        generator.writeStringField("code", code.name());
+        if (arg0 != null) {
+            generator.writeArrayFieldStart("args");
+            generator.writeString(arg0.toString());
+            if (arg1 != null)
+                generator.writeString(arg1.toString());
+            generator.writeEndArray();
+        }
+        generator.writeEndObject();
+        generator.writeRaw('\n');
+    }
+
+    private long position() {
+        return out.count + generator.getOutputBuffered();
+    }
+
+    // Pushes everything appended so far to the file and rewrites the index header, so the log can
+    // be read (e.g. for a report) while the run goes on
+    public synchronized void flush() throws IOException {
+        generator.flush();
+        writeIndexHeader();
+    }
+
+    public synchronized void writeSnapshot(DataOutput snapshot) throws IOException {
+        generator.flush();
+        indexOut.flush();
+        snapshot.writeLong(position());
+        snapshot.writeLong(indexEntries);
+        snapshot.writeInt(counts.length);
+        for (long count : counts)
+            snapshot.writeLong(count);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        generator.close();
+        try {
+            writeIndexHeader();
+        } finally {
+            indexOut.close();
+        }
+    }
+
+    private void writeIndexHeader() throws IOException {
+        indexOut.flush();
+        ByteBuffer header = ByteBuffer.allocate(indexHeaderBytes());
+        header.putInt(INDEX_STRIDE);
+        header.putInt(counts.length);
+        for (long count : counts)
+            header.putLong(count);
+        header.flip();
+        long position = 0;
+        while (header.hasRemaining())
+            position += indexChannel.write(header, position);
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+        long count = 0;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
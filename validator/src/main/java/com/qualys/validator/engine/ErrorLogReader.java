@@ -0,0 +1,160 @@
+package com.qualys.validator.engine;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.EnumMap;
+import java.util.Map;
+
+// Random access to an ErrorLog after the run, one category at a time
+public class ErrorLogReader {
+
+    public static class Entry {
+        public final int lineNumber;
+        public final ValidationError error;
+
+        Entry(int lineNumber, ValidationError error) {
+            this.lineNumber = lineNumber;
+            this.error = error;
+        }
+    }
+
+    public interface EntryConsumer {
+        void accept(Entry entry) throws IOException;
+    }
+
+    private final Path logPath;
+    private final JsonFactory jsonFactory = new JsonFactory();
+    private final int stride;
+    private final Map<ValidationError.Category, Long> counts = new EnumMap<>(ValidationError.Category.class);
+    private final Map<ValidationError.Category, long[]> offsets = new EnumMap<>(ValidationError.Category.class);
+
+    public ErrorLogReader(Path logPath) throws IOException {
+        this.logPath = logPath;
+        Path indexPath = ErrorLog.indexPath(logPath);
+        ValidationError.Category[] categories = ValidationError.Category.values();
+        try (DataInputStream index = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(indexPath), 1 << 16))) {
+            this.stride = index.readInt();
+            if (index.readInt() != categories.length)
+                throw new IOException("Error log index " + indexPath + " has a different set of categories");
+            long[][] categoryOffsets = new long[categories.length][];
+            for (ValidationError.Category category : categories) {
+                long count = index.readLong();
+                counts.put(category, count);
+                categoryOffsets[category.ordinal()] = new long[(int) ((count + stride - 1) / stride)];
+            }
+            // Entries are in log order, so each category's offsets arrive already sorted
+            int[] filled = new int[categories.length];
+            long entries = (Files.size(indexPath) - ErrorLog.indexHeaderBytes()) / ErrorLog.INDEX_ENTRY_BYTES;
+            for (long i = 0; i < entries; i++) {
+                int category = index.readUnsignedByte();
+                long offset = index.readLong();
+                if (filled[category] < categoryOffsets[category].length)
+                    categoryOffsets[category][filled[category]++] = offset;
+            }
+            for (ValidationError.Category category : categories) {
+                int c = category.ordinal();
+                offsets.put(category, java.util.Arrays.copyOf(categoryOffsets[c], filled[c]));
+            }
+        }
+    }
+
+    public long count(ValidationError.Category category) {
+        return counts.getOrDefault(category, 0L);
+    }
+
+    // Streams entries [from, from + limit) of one category, in log order
+    public void read(ValidationError.Category category, long from, int limit, EntryConsumer consumer)
+            throws IOException {
+        long[] categoryOffsets = offsets.get(category);
+        if (categoryOffsets == null || from >= count(category) || limit <= 0)
+            return;
+
+        int block = (int) (from / stride);
+        if (block >= categoryOffsets.length)
+            return;
+        long skip = from - (long) block * stride;
+        try (FileChannel channel = FileChannel.open(logPath, StandardOpenOption.READ)) {
+            channel.position(categoryOffsets[block]);
+            InputStream in = Channels.newInputStream(channel);
+            try (JsonParser parser = jsonFactory.createParser(in)) {
+                int delivered = 0;
+                while (delivered < limit && parser.nextToken() == JsonToken.START_OBJECT) {
+                    Entry entry = readEntry(parser);
+                    if (entry.error.getCategory() != category)
+                        continue;
+                    if (skip > 0) {
+                        skip--;
+                        continue;
+                    }
+                    consumer.accept(entry);
+                    delivered++;
+                }
+            }
+        }
+    }
+
+    // Every entry of a log from the start, in log (that is, line) order; needs no index
+    public static Cursor scan(Path logPath) throws IOException {
+        return new Cursor(new JsonFactory().createParser(logPath.toFile()));
+    }
+
+    public static final class Cursor implements Closeable {
+        private final JsonParser parser;
+
+        private Cursor(JsonParser parser) {
+            this.parser = parser;
+        }
+
+        // null after the last entry
+        public Entry next() throws IOException {
+            return parser.nextToken() == JsonToken.START_OBJECT ? readEntry(parser) : null;
+        }
+
+        @Override
+        public void close() throws IOException {
+            parser.close();
+        }
+    }
+
+    private static Entry readEntry(JsonParser parser) throws IOException {
+        int line = 0;
+        ErrorCode code = null;
+        Object[] args = new Object[0];
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            switch (field) {
+                case "line":
+                    line = parser.getIntValue();
+                    break;
+                case "code":
+                    code = ErrorCode.valueOf(parser.getText());
+                    break;
+                case "args":
+                    java.util.List<Object> values = new java.util.ArrayList<>(ErrorCode.MAX_ARGS);
+                    while (parser.nextToken() != JsonToken.END_ARRAY) {
+                        values.add(parser.getText());
+                    }
+                    args = values.toArray();
+                    break;
+                default:
+                    parser.skipChildren();
+                    break;
+            }
+        }
+        return new Entry(line, new ValidationError(code, args));
+    }
+}
@@ -0,0 +1,174 @@
+package com.qualys.validator.engine;
+
+import com.qualys.validator.util.Hashing;
+import com.qualys.validator.util.IdScanner;
+import com.qualys.validator.util.LongHashSet;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongConsumer;
+
+// Seen-order-id index for duplicate detection.
+// Canonical "O-<digits>" ids are stored as primitive longs in lock-striped open-addressing sets;
+// anything else (leading zeros, overlong numbers, foreign formats) falls back to a string set.
+public class OrderIdIndex implements DuplicateDetector {
+
+    private static final int STRIPES = 64;
+    // Rough per-entry footprint of a ConcurrentHashMap key set entry plus its String
+    private static final int FALLBACK_ENTRY_BYTES = 96;
+
+    private final LongHashSet[] stripes = new LongHashSet[STRIPES];
+    private final Set<String> fallback = ConcurrentHashMap.newKeySet();
+
+    public OrderIdIndex() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new LongHashSet();
+        }
+    }
+
+    // Starts the stripes small for an index that is expected to hold few ids; they grow as needed
+    public OrderIdIndex(int expectedIds) {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new LongHashSet(expectedIds / STRIPES);
+        }
+    }
+
+    @Override
+    public Match check(String orderId, long createdAtEpochSecond) {
+        return add(orderId) ? Match.NEW : Match.DUPLICATE;
+    }
+
+    // Returns false if the id was already present
+    public boolean add(String orderId) {
+        long numeric = parseNumericId(orderId);
+        if (numeric < 0)
+            return fallback.add(orderId);
+        LongHashSet stripe = stripeFor(numeric);
+        synchronized (stripe) {
+            return stripe.add(numeric);
+        }
+    }
+
+    public boolean contains(String orderId) {
+        long numeric = parseNumericId(orderId);
+        if (numeric < 0)
+            return fallback.contains(orderId);
+        LongHashSet stripe = stripeFor(numeric);
+        synchronized (stripe) {
+            return stripe.contains(numeric);
+        }
+    }
+
+    public long numericCount() {
+        long count = 0;
+        for (LongHashSet stripe : stripes) {
+            synchronized (stripe) {
+                count += stripe.size();
+            }
+        }
+        return count;
+    }
+
+    public long fallbackCount() {
+        return fallback.size();
+    }
+
+    @Override
+    public long size() {
+        return numericCount() + fallbackCount();
+    }
+
+    @Override
+    public long memoryBytes() {
+        long bytes = 0;
+        for (LongHashSet stripe : stripes) {
+            synchronized (stripe) {
+                bytes += stripe.memoryBytes();
+            }
+        }
+        return bytes + fallbackCount() * FALLBACK_ENTRY_BYTES;
+    }
+
+    @Override
+    public String describe() {
+        return String.format("%d ids (%d compact, %d fallback), ~%.1f MB",
+                size(), numericCount(), fallbackCount(), memoryBytes() / (1024.0 * 1024.0));
+    }
+
+    @Override
+    public void writeSnapshot(DataOutput out) throws IOException {
+        for (LongHashSet stripe : stripes) {
+            long[] ids;
+            synchronized (stripe) {
+                ids = stripe.toArray();
+            }
+            out.writeInt(ids.length);
+            for (long id : ids)
+                out.writeLong(id);
+        }
+        String[] others = fallback.toArray(new String[0]);
+        out.writeInt(others.length);
+        for (String orderId : others) {
+            // Not writeUTF, which is limited to 64 KB
+            byte[] utf8 = orderId.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(utf8.length);
+            out.write(utf8);
+        }
+    }
+
+    @Override
+    public void readSnapshot(DataInput in) throws IOException {
+        for (LongHashSet stripe : stripes) {
+            int count = in.readInt();
+            synchronized (stripe) {
+                for (int i = 0; i < count; i++)
+                    stripe.add(in.readLong());
+            }
+        }
+        int others = in.readInt();
+        for (int i = 0; i < others; i++) {
+            byte[] utf8 = new byte[in.readInt()];
+            in.readFully(utf8);
+            fallback.add(new String(utf8, StandardCharsets.UTF_8));
+        }
+    }
+
+    // Visits every stored id as its keyHash
+    public void forEachKeyHash(LongConsumer consumer) {
+        for (LongHashSet stripe : stripes) {
+            synchronized (stripe) {
+                stripe.forEach(numeric -> consumer.accept(Hashing.mix64(numeric)));
+            }
+        }
+        for (String orderId : fallback) {
+            consumer.accept(Hashing.hash64(orderId));
+        }
+    }
+
+    // Stable 64-bit key for an order id, consistent with forEachKeyHash
+    public static long keyHash(String orderId) {
+        long numeric = parseNumericId(orderId);
+        return numeric >= 0 ? Hashing.mix64(numeric) : Hashing.hash64(orderId);
+    }
+
+    // Which of `shards` slices of the input an order belongs to, so every copy of an id lands in the
+    // same shard and duplicate detection stays exact per shard. Records without an id go to shard 0.
+    public static int shardOf(String orderId, int shards) {
+        if (orderId == null || shards == 1)
+            return 0;
+        return (int) (((keyHash(orderId) >>> 32) * shards) >>> 32);
+    }
+
+    private LongHashSet stripeFor(long numeric) {
+        // High bits of the mix, so stripe choice is independent of the slot inside the stripe
+        return stripes[(LongHashSet.mix(numeric) >>> 26) & (STRIPES - 1)];
+    }
+
+    static long parseNumericId(String orderId) {
+        return IdScanner.parseNumeric(orderId, 'O');
+    }
+}
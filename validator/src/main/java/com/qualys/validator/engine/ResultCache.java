@@ -0,0 +1,509 @@
+package com.qualys.validator.engine;
+
+import com.qualys.validator.io.ParallelRecordReader;
+import com.qualys.validator.model.Item;
+import com.qualys.validator.model.Metadata;
+import com.qualys.validator.model.Record;
+import com.qualys.validator.util.Hashing;
+import com.qualys.validator.util.LongHashSet;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+// Results of NDJSON lines by content, for re-validating input that mostly did not change
+// (--incremental). An entry maps the 128-bit hash of a line, from the start of its last record (so
+// the whole line when it holds one record), to that record's record-local errors and the
+// fields the ordered rules read: order and user id, created_at, currency, channel, total_amount
+// and each item's sku, qty and price. A hit skips parsing and the record-local rules; the
+// committer still runs the ordered rules on the rebuilt record, so duplicates, velocity and the
+// value profile come out as in a full run.
+// The previous cache is memory-mapped behind an in-heap table of entry offsets. The next one is
+// written alongside from this run's lines, hits copied and misses encoded, and commit() moves it
+// into place, so the file holds the lines of the last completed run and nothing older.
+// Entries depend only on a line's bytes and the settings fingerprinted by settings(); a cache
+// written under other settings or by another build is started afresh. Line hashes are seeded per
+// cache, so lines cannot be crafted to collide with cached ones without reading the file.
+public final class ResultCache implements ParallelRecordReader.LineCache<ValidationResult>, Closeable {
+
+    private static final int MAGIC = 0x51565243;
+    private static final int VERSION = 1;
+    // Magic, version, settings, seed
+    private static final int HEADER_BYTES = 24;
+    // Entry count, magic
+    private static final int TRAILER_BYTES = 8;
+    // Two hash halves and the payload length
+    private static final int ENTRY_HEADER_BYTES = 20;
+    private static final ErrorCode[] CODES = ErrorCode.values();
+    // Few distinct values repeat on most lines, so a small direct-mapped table saves decoding them
+    private static final int SHARED_STRINGS = 1024;
+
+    private final Path path;
+    private final Path temp;
+    private final long seed;
+    // null when there was no usable cache
+    private final ByteBuffer previous;
+    // Offsets of the previous entries by hash, 0 for a free slot
+    private final int[] slots;
+    // Just past the previous entries
+    private final int end;
+    private final String staleReason;
+    private final LongAdder hits = new LongAdder();
+    private final ThreadLocal<Encoder> encoders = ThreadLocal.withInitial(Encoder::new);
+
+    // Guarded by this. Identical lines are written once: hits by their entry, new lines by hash.
+    private final DataOutputStream out;
+    private final BitSet copied = new BitSet();
+    private final LongHashSet written = new LongHashSet();
+    private int entries;
+    private IOException failure;
+    private boolean committed;
+
+    // Opens the cache at path, empty if there is none or it cannot be used (see staleReason)
+    public ResultCache(Path path, long settings) throws IOException {
+        this.path = path;
+        this.temp = path.resolveSibling(path.getFileName() + ".tmp");
+        ByteBuffer data = null;
+        String reason = null;
+        if (Files.exists(path)) {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                long size = channel.size();
+                if (size > Integer.MAX_VALUE)
+                    reason = "it is too large";
+                else
+                    data = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+            if (data != null) {
+                if (data.limit() < HEADER_BYTES + TRAILER_BYTES || data.getInt(0) != MAGIC)
+                    throw new IOException(path + " is not a result cache");
+                if (data.getInt(4) != VERSION)
+                    reason = "it was written by an incompatible version";
+                else if (data.getLong(8) != settings)
+                    reason = "it was written with other rule settings or by another build";
+                else if (data.getInt(data.limit() - 4) != MAGIC)
+                    reason = "it is incomplete";
+            }
+        }
+        int[] table = null;
+        if (data != null && reason == null) {
+            table = index(data);
+            if (table == null)
+                reason = "it is corrupt";
+        }
+        if (table != null) {
+            this.previous = data;
+            this.slots = table;
+            this.end = data.limit() - TRAILER_BYTES;
+            this.seed = data.getLong(16);
+        } else {
+            this.previous = null;
+            this.slots = new int[1];
+            this.end = 0;
+            this.seed = new SecureRandom().nextLong();
+        }
+        this.staleReason = reason;
+
+        out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(settings);
+        out.writeLong(seed);
+    }
+
+    // Everything the record-local results depend on besides the line: the rule settings, the
+    // error catalog and the build the rules come from
+    public static long settings(List<String> injectionPatterns, boolean failFast, boolean adaptiveOrder,
+            boolean lean) {
+        StringBuilder settings = new StringBuilder();
+        for (ErrorCode code : CODES)
+            settings.append(code.name()).append(',');
+        for (String pattern : injectionPatterns)
+            settings.append(pattern).append('\n');
+        settings.append(failFast).append(adaptiveOrder).append(lean).append(build());
+        return Hashing.hash64(settings);
+    }
+
+    // Size and time of the jar, or "" when running from classes
+    private static String build() {
+        try {
+            Path location = Path.of(ResultCache.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+            if (Files.isRegularFile(location))
+                return Files.size(location) + "@" + Files.getLastModifiedTime(location).toMillis();
+        } catch (IOException | URISyntaxException | SecurityException | NullPointerException e) {
+            // Without it a rebuilt jar reuses results; the catalog still catches most changes
+        }
+        return "";
+    }
+
+    // Why the previous cache was discarded, or null when it was used or there was none
+    public String staleReason() {
+        return staleReason;
+    }
+
+    // Lines taken from the cache so far
+    public long hits() {
+        return hits.sum();
+    }
+
+    // Entries written for the next run so far
+    public synchronized int size() {
+        return entries;
+    }
+
+    // Lines mostly come in the order of the previous run, so the entry after a thread's last hit
+    // is tried before the table
+    @Override
+    public boolean lookup(ByteBuffer data, int from, int to, ParallelRecordReader.Entry<ValidationResult> entry) {
+        if (previous == null)
+            return false;
+        Encoder encoder = encoders.get();
+        long[] hash = encoder.hash;
+        Hashing.hash128(data, from, to, seed, hash);
+        int offset = encoder.next;
+        if (offset == 0 || offset >= end || !matches(offset, hash)) {
+            int mask = slots.length - 1;
+            int slot = (int) hash[0] & mask;
+            while ((offset = slots[slot]) != 0 && !matches(offset, hash))
+                slot = (slot + 1) & mask;
+            if (offset == 0)
+                return false;
+        }
+        // Decoded from the copy that goes into the next cache
+        int length = ENTRY_HEADER_BYTES + previous.getInt(offset + 16);
+        encoder.reset(length);
+        previous.get(offset, encoder.bytes, 0, length);
+        encoder.size = length;
+        decode(new Decoder(encoder.bytes, ENTRY_HEADER_BYTES, encoder.shared), entry);
+        copy((offset - HEADER_BYTES) / ENTRY_HEADER_BYTES, encoder);
+        encoder.next = offset + length;
+        hits.increment();
+        return true;
+    }
+
+    private boolean matches(int offset, long[] hash) {
+        return previous.getLong(offset) == hash[0] && previous.getLong(offset + 8) == hash[1];
+    }
+
+    @Override
+    public void store(ByteBuffer data, int from, int to, ParallelRecordReader.Entry<ValidationResult> entry) {
+        ValidationResult result = entry.workerResult;
+        if (result != null) {
+            for (int i = 0; i < result.errorCount(); i++) {
+                // Relative to the clock, so it may not hold on the next run
+                if (result.getCode(i) == ErrorCode.CREATED_IN_FUTURE)
+                    return;
+            }
+        }
+        Encoder encoder = encoders.get();
+        long[] hash = encoder.hash;
+        Hashing.hash128(data, from, to, seed, hash);
+        encoder.reset(256);
+        encoder.writeLong(hash[0]);
+        encoder.writeLong(hash[1]);
+        encoder.size += 4;
+        encode(entry.record, result, encoder);
+        int payload = encoder.size - ENTRY_HEADER_BYTES;
+        for (int i = 0; i < 4; i++)
+            encoder.bytes[16 + i] = (byte) (payload >>> (24 - 8 * i));
+        append(hash[0], encoder);
+    }
+
+    // Entries are at least ENTRY_HEADER_BYTES apart, so `index` tells them apart
+    private synchronized void copy(int index, Encoder entry) {
+        if (!copied.get(index)) {
+            copied.set(index);
+            write(entry);
+        }
+    }
+
+    private synchronized void append(long hash0, Encoder entry) {
+        if (written.add(hash0))
+            write(entry);
+    }
+
+    // A write failure is held for commit()
+    private void write(Encoder entry) {
+        if (failure != null || committed)
+            return;
+        try {
+            out.write(entry.bytes, 0, entry.size);
+            entries++;
+        } catch (IOException e) {
+            failure = e;
+        }
+    }
+
+    // Replaces the previous cache with the lines of this run. Only after every line was read, as
+    // the cache should not lose lines a run did not get to.
+    public synchronized void commit() throws IOException {
+        if (failure != null)
+            throw failure;
+        out.writeInt(entries);
+        out.writeInt(MAGIC);
+        out.close();
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        committed = true;
+    }
+
+    // Without a commit() the previous cache stays as it was
+    @Override
+    public synchronized void close() throws IOException {
+        if (committed)
+            return;
+        committed = true;
+        try {
+            out.close();
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    // Open-addressing table of entry offsets at most half full, or null if the entries do not
+    // add up to the file
+    private static int[] index(ByteBuffer data) {
+        int count = data.getInt(data.limit() - TRAILER_BYTES);
+        int end = data.limit() - TRAILER_BYTES;
+        if (count < 0 || count > (end - HEADER_BYTES) / ENTRY_HEADER_BYTES)
+            return null;
+        int[] slots = new int[Integer.highestOneBit(Math.max(16, count * 2) - 1) << 1];
+        int mask = slots.length - 1;
+        int offset = HEADER_BYTES;
+        for (int i = 0; i < count; i++) {
+            if (end - offset < ENTRY_HEADER_BYTES)
+                return null;
+            int length = data.getInt(offset + 16);
+            if (length < 0 || end - offset - ENTRY_HEADER_BYTES < length)
+                return null;
+            int slot = (int) data.getLong(offset) & mask;
+            while (slots[slot] != 0)
+                slot = (slot + 1) & mask;
+            slots[slot] = offset;
+            offset += ENTRY_HEADER_BYTES + length;
+        }
+        return offset == end ? slots : null;
+    }
+
+    private static void encode(Record record, ValidationResult result, Encoder out) {
+        out.writeString(record.orderId);
+        out.writeString(record.userId);
+        out.writeString(record.currency);
+        out.writeString(record.createdAt);
+        out.writeString(record.metadata != null ? record.metadata.channel : null);
+        out.writeDecimal(record.totalAmount);
+        if (record.items == null) {
+            out.writeVarLong(0);
+        } else {
+            out.writeVarLong(record.items.size() + 1L);
+            for (Item item : record.items) {
+                out.writeString(item != null ? item.sku : null);
+                out.writeVarLong(item == null || item.qty == null ? 0 : zigZag(item.qty) + 1);
+                out.writeDecimal(item != null ? item.price : null);
+            }
+        }
+        int errors = result != null ? result.errorCount() : 0;
+        out.writeVarLong(errors);
+        for (int i = 0; i < errors; i++) {
+            out.writeVarLong(result.getCode(i).ordinal());
+            // As the error log has them
+            Object arg0 = result.getArg(i, 0);
+            Object arg1 = result.getArg(i, 1);
+            out.writeString(arg0 != null ? arg0.toString() : null);
+            out.writeString(arg1 != null ? arg1.toString() : null);
+        }
+    }
+
+    private static void decode(Decoder in, ParallelRecordReader.Entry<ValidationResult> entry) {
+        Record record = new Record();
+        record.orderId = in.readString();
+        record.userId = in.readString();
+        record.currency = in.readShared();
+        record.createdAt = in.readString();
+        String channel = in.readShared();
+        if (channel != null) {
+            record.metadata = new Metadata();
+            record.metadata.channel = channel;
+        }
+        record.totalAmount = in.readDecimal();
+        int items = (int) in.readVarLong() - 1;
+        if (items >= 0) {
+            record.items = new ArrayList<>(items);
+            for (int i = 0; i < items; i++) {
+                Item item = new Item();
+                item.sku = in.readShared();
+                long qty = in.readVarLong();
+                item.qty = qty == 0 ? null : (int) unZigZag(qty - 1);
+                item.price = in.readDecimal();
+                record.items.add(item);
+            }
+        }
+        int errors = (int) in.readVarLong();
+        ValidationResult result = null;
+        if (errors > 0) {
+            result = new ValidationResult();
+            for (int i = 0; i < errors; i++)
+                result.addError(CODES[(int) in.readVarLong()], in.readString(), in.readString());
+        }
+        entry.record = record;
+        entry.workerResult = result;
+    }
+
+    private static long zigZag(long value) {
+        return value << 1 ^ value >> 63;
+    }
+
+    private static long unZigZag(long value) {
+        return value >>> 1 ^ -(value & 1);
+    }
+
+    // Per worker thread: the entry being written or copied, a line's hash, the offset after the
+    // last hit and recently decoded currencies, channels and SKUs
+    private static final class Encoder {
+        final long[] hash = new long[2];
+        int next;
+        final String[] shared = new String[SHARED_STRINGS];
+        byte[] bytes = new byte[256];
+        int size;
+
+        void reset(int capacity) {
+            if (bytes.length < capacity)
+                bytes = new byte[Math.max(capacity, bytes.length * 2)];
+            size = 0;
+        }
+
+        private void ensure(int more) {
+            if (size + more > bytes.length)
+                bytes = Arrays.copyOf(bytes, Math.max(size + more, bytes.length * 2));
+        }
+
+        void writeLong(long value) {
+            ensure(Long.BYTES);
+            for (int i = 0; i < Long.BYTES; i++)
+                bytes[size++] = (byte) (value >>> (56 - 8 * i));
+        }
+
+        void writeVarLong(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                bytes[size++] = (byte) (value & 0x7F | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte) value;
+        }
+
+        // Length + 1, so 0 is null
+        void writeString(String value) {
+            if (value == null) {
+                writeVarLong(0);
+                return;
+            }
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(utf8.length + 1L);
+            ensure(utf8.length);
+            System.arraycopy(utf8, 0, bytes, size, utf8.length);
+            size += utf8.length;
+        }
+
+        // 0 null, 1 unscaled value and scale, 2 text when the unscaled value needs more than a long
+        void writeDecimal(BigDecimal value) {
+            if (value == null) {
+                writeVarLong(0);
+                return;
+            }
+            BigInteger unscaled = value.unscaledValue();
+            if (unscaled.bitLength() < Long.SIZE) {
+                writeVarLong(1);
+                writeVarLong(zigZag(unscaled.longValue()));
+                writeVarLong(zigZag(value.scale()));
+            } else {
+                writeVarLong(2);
+                writeString(value.toString());
+            }
+        }
+    }
+
+    private static final class Decoder {
+        private final byte[] data;
+        private final String[] shared;
+        private int position;
+
+        Decoder(byte[] data, int position, String[] shared) {
+            this.data = data;
+            this.position = position;
+            this.shared = shared;
+        }
+
+        long readVarLong() {
+            long value = 0;
+            for (int shift = 0;; shift += 7) {
+                byte b = data[position++];
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0)
+                    return value;
+            }
+        }
+
+        String readString() {
+            int length = (int) readVarLong() - 1;
+            if (length < 0)
+                return null;
+            String value = new String(data, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+
+        // The same string as last time these bytes were read, if still in the table
+        String readShared() {
+            int length = (int) readVarLong() - 1;
+            if (length < 0)
+                return null;
+            int hash = length;
+            for (int i = position; i < position + length; i++)
+                hash = hash * 31 + data[i];
+            int slot = (hash ^ hash >>> 16) & (shared.length - 1);
+            String value = shared[slot];
+            if (value == null || !equals(value, position, length)) {
+                value = new String(data, position, length, StandardCharsets.UTF_8);
+                shared[slot] = value;
+            }
+            position += length;
+            return value;
+        }
+
+        // Only ASCII is compared, anything else is decoded
+        private boolean equals(String value, int from, int length) {
+            if (value.length() != length)
+                return false;
+            for (int i = 0; i < length; i++) {
+                if (value.charAt(i) != data[from + i])
+                    return false;
+            }
+            return true;
+        }
+
+        BigDecimal readDecimal() {
+            switch ((int) readVarLong()) {
+                case 0:
+                    return null;
+                case 1:
+                    long unscaled = unZigZag(readVarLong());
+                    return BigDecimal.valueOf(unscaled, (int) unZigZag(readVarLong()));
+                default:
+                    return new BigDecimal(readString());
+            }
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package com.qualys.validator.engine;
+
+import com.qualys.validator.util.Hashing;
+import com.qualys.validator.util.IdScanner;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+// Recent order times per user, for VelocityRule. Only touched by the in-order committer.
+// Each user owns a fixed ring of the last `limit` created_at values (seconds relative to the first
+// order seen) in one open-addressing table with linear probing, so state per user is constant.
+// Users whose newest order has left the window are evicted by an incremental sweep that advances a
+// few slots per recorded order; if the table still reaches maxUsers, the least recently active of
+// a small sample of users is dropped instead of growing further. Each slot costs 10 + 4 * limit
+// bytes and the table is kept at most 3/4 full, so the default cap of 2^19 users with the default
+// limit of 10 comes to a 2^20-slot table of about 50 MB.
+// Canonical "U-<digits>" ids are keyed by their number, anything else by a 64-bit hash of the id.
+public class UserVelocityIndex {
+
+    public static final int DEFAULT_LIMIT = 10;
+    public static final long DEFAULT_WINDOW_SECONDS = 3600;
+    public static final int DEFAULT_MAX_USERS = 1 << 19;
+
+    private static final int INITIAL_CAPACITY = 1 << 10;
+    private static final int SWEEP_SLOTS_PER_RECORD = 4;
+    private static final int EVICTION_SAMPLE = 8;
+
+    private final int limit;
+    private final long windowSeconds;
+    private final int maxUsers;
+
+    private long[] keys;
+    // Orders in the ring, 0 marks an empty slot
+    private byte[] sizes;
+    // Next ring position to write
+    private byte[] heads;
+    private int[] stamps;
+    private int mask;
+    private int size;
+
+    private boolean hasBase;
+    private long base;
+    private long watermark = Long.MIN_VALUE;
+    private int sweepCursor;
+    private long evictedIdle;
+    private long evictedFull;
+
+    public UserVelocityIndex() {
+        this(DEFAULT_LIMIT, DEFAULT_WINDOW_SECONDS, DEFAULT_MAX_USERS);
+    }
+
+    public UserVelocityIndex(int limit, long windowSeconds, int maxUsers) {
+        this(limit, windowSeconds, maxUsers, INITIAL_CAPACITY);
+    }
+
+    // initialCapacity (a power of two) is only where the table starts; it grows as users arrive
+    public UserVelocityIndex(int limit, long windowSeconds, int maxUsers, int initialCapacity) {
+        if (limit < 1 || limit > Byte.MAX_VALUE)
+            throw new IllegalArgumentException("Velocity limit must be between 1 and " + Byte.MAX_VALUE);
+        if (windowSeconds < 1)
+            throw new IllegalArgumentException("Velocity window must be positive");
+        if (maxUsers < 1)
+            throw new IllegalArgumentException("Velocity user cap must be positive");
+        if (initialCapacity < 2 || Integer.bitCount(initialCapacity) != 1)
+            throw new IllegalArgumentException("Velocity index capacity must be a power of two");
+        this.limit = limit;
+        this.windowSeconds = windowSeconds;
+        this.maxUsers = maxUsers;
+        allocate(initialCapacity);
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public long getWindowSeconds() {
+        return windowSeconds;
+    }
+
+    // Records one order and returns true if the user now has more than `limit` orders within the
+    // window ending at this order's created_at
+    public boolean record(String userId, long epochSecond) {
+        if (!hasBase) {
+            base = epochSecond;
+            hasBase = true;
+        }
+        watermark = Math.max(watermark, epochSecond);
+        sweep(SWEEP_SLOTS_PER_RECORD);
+
+        long key = keyOf(userId);
+        int stamp = stampOf(epochSecond);
+        int slot = find(key);
+        if (sizes[slot] == 0) {
+            if (size >= maxUsers) {
+                evictSample();
+                slot = find(key);
+            }
+            keys[slot] = key;
+            sizes[slot] = 1;
+            heads[slot] = (byte) (1 % limit);
+            stamps[slot * limit] = stamp;
+            if (++size > (mask + 1) * 3 / 4)
+                grow();
+            return false;
+        }
+
+        // Earlier orders of this user inside (t - window, t]
+        long from = (long) stamp - windowSeconds;
+        int inWindow = 0;
+        int offset = slot * limit;
+        for (int i = 0; i < sizes[slot]; i++) {
+            int previous = stamps[offset + i];
+            if (previous > from && previous <= stamp)
+                inWindow++;
+        }
+        stamps[offset + heads[slot]] = stamp;
+        heads[slot] = (byte) ((heads[slot] + 1) % limit);
+        if (sizes[slot] < limit)
+            sizes[slot]++;
+        return inWindow >= limit;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long memoryBytes() {
+        long slots = mask + 1L;
+        return slots * (Long.BYTES + 2 + (long) limit * Integer.BYTES);
+    }
+
+    public String describe() {
+        return String.format("%d users, %d evicted idle, %d evicted at cap, ~%.1f MB", size, evictedIdle, evictedFull,
+                memoryBytes() / (1024.0 * 1024.0));
+    }
+
+    // Occupied slots are written with their position, so a restored table sweeps and evicts
+    // exactly as the original would have
+    public void writeSnapshot(DataOutput out) throws IOException {
+        out.writeInt(limit);
+        out.writeLong(windowSeconds);
+        out.writeInt(mask + 1);
+        out.writeInt(size);
+        out.writeBoolean(hasBase);
+        out.writeLong(base);
+        out.writeLong(watermark);
+        out.writeInt(sweepCursor);
+        out.writeLong(evictedIdle);
+        out.writeLong(evictedFull);
+        for (int slot = 0; slot <= mask; slot++) {
+            if (sizes[slot] == 0)
+                continue;
+            out.writeInt(slot);
+            out.writeLong(keys[slot]);
+            out.writeByte(sizes[slot]);
+            out.writeByte(heads[slot]);
+            for (int i = 0; i < limit; i++)
+                out.writeInt(stamps[slot * limit + i]);
+        }
+    }
+
+    public void readSnapshot(DataInput in) throws IOException {
+        if (in.readInt() != limit || in.readLong() != windowSeconds)
+            throw new IOException("Snapshot was taken with a different --velocity-limit or --velocity-window");
+        int capacity = in.readInt();
+        if (capacity < 1 || Integer.bitCount(capacity) != 1)
+            throw new IOException("Corrupt velocity index snapshot");
+        allocate(capacity);
+        size = in.readInt();
+        hasBase = in.readBoolean();
+        base = in.readLong();
+        watermark = in.readLong();
+        sweepCursor = in.readInt() & mask;
+        evictedIdle = in.readLong();
+        evictedFull = in.readLong();
+        for (int i = 0; i < size; i++) {
+            int slot = in.readInt() & mask;
+            keys[slot] = in.readLong();
+            sizes[slot] = in.readByte();
+            heads[slot] = in.readByte();
+            for (int j = 0; j < limit; j++)
+                stamps[slot * limit + j] = in.readInt();
+        }
+    }
+
+    private static long keyOf(String userId) {
+        long numeric = IdScanner.parseNumeric(userId, 'U');
+        // Hashed keys have the sign bit set so they never collide with numeric ones
+        return numeric >= 0 ? numeric : Hashing.hash64(userId) | Long.MIN_VALUE;
+    }
+
+    // Relative to the first order seen; clamped so absurd years cannot overflow
+    private int stampOf(long epochSecond) {
+        long relative = epochSecond - base;
+        return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, relative));
+    }
+
+    private int find(long key) {
+        int slot = (int) Hashing.mix64(key) & mask;
+        while (sizes[slot] != 0 && keys[slot] != key)
+            slot = (slot + 1) & mask;
+        return slot;
+    }
+
+    private int newestStamp(int slot) {
+        int newest = (heads[slot] + limit - 1) % limit;
+        return stamps[slot * limit + newest];
+    }
+
+    private boolean isIdle(int slot) {
+        return newestStamp(slot) <= (long) stampOf(watermark) - windowSeconds;
+    }
+
+    // Moves the cursor over `slots` slots. A removal shifts a later entry into the cursor's slot,
+    // which is looked at again and does not count, so sweeping mask + 1 slots is one full pass.
+    private void sweep(int slots) {
+        for (int advanced = 0; advanced < slots; ) {
+            int slot = sweepCursor;
+            if (sizes[slot] != 0 && isIdle(slot)) {
+                remove(slot);
+                evictedIdle++;
+            } else {
+                sweepCursor = (sweepCursor + 1) & mask;
+                advanced++;
+            }
+        }
+    }
+
+    // Drops the least recently active of a few users near a random slot
+    private void evictSample() {
+        int slot = (int) (Hashing.mix64(watermark ^ size ^ evictedFull) & mask);
+        int victim = -1;
+        for (int seen = 0, probed = 0; seen < EVICTION_SAMPLE && probed <= mask; probed++) {
+            if (sizes[slot] != 0) {
+                if (victim < 0 || newestStamp(slot) < newestStamp(victim))
+                    victim = slot;
+                seen++;
+            }
+            slot = (slot + 1) & mask;
+        }
+        remove(victim);
+        evictedFull++;
+    }
+
+    // Backward-shift deletion keeps probe sequences intact without tombstones
+    private void remove(int slot) {
+        int hole = slot;
+        int next = (hole + 1) & mask;
+        while (sizes[next] != 0) {
+            int home = (int) Hashing.mix64(keys[next]) & mask;
+            // Move the entry back if its home is not cyclically within (hole, next]
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                sizes[hole] = sizes[next];
+                heads[hole] = heads[next];
+                System.arraycopy(stamps, next * limit, stamps, hole * limit, limit);
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        sizes[hole] = 0;
+        size--;
+    }
+
+    private void grow() {
+        // Evicting everything idle may make growing unnecessary
+        sweep(mask + 1);
+        if (size <= (mask + 1) / 2)
+            return;
+        long[] oldKeys = keys;
+        byte[] oldSizes = sizes;
+        byte[] oldHeads = heads;
+        int[] oldStamps = stamps;
+        allocate((mask + 1) * 2);
+        for (int i = 0; i < oldSizes.length; i++) {
+            if (oldSizes[i] == 0)
+                continue;
+            int slot = find(oldKeys[i]);
+            keys[slot] = oldKeys[i];
+            sizes[slot] = oldSizes[i];
+            heads[slot] = oldHeads[i];
+            System.arraycopy(oldStamps, i * limit, stamps, slot * limit, limit);
+        }
+        sweepCursor = 0;
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        sizes = new byte[capacity];
+        heads = new byte[capacity];
+        stamps = new int[capacity * limit];
+        mask = capacity - 1;
+    }
+}
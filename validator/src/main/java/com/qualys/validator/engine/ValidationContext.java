@@ -1,93 +1,269 @@
 package com.qualys.validator.engine;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.*;
-import java.time.LocalDateTime;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
 
+// Shared by all worker threads in parallel mode: dedup is lock-striped, counters are lock-free,
+// errors are captured by the single in-order committer.
 public class ValidationContext {
-    private final Set<String> seenOrderIds = new HashSet<>();
-    // Map<UserId, List<Timestamp>> to detect velocity
-    private final Map<String, List<LocalDateTime>> userActivity = new HashMap<>();
+    private final DuplicateDetector duplicateDetector;
+    // Recent order times per user, to detect velocity
+    private final UserVelocityIndex userVelocity;
+    // Value distributions and distinct counts, for OutlierRule and the dashboard
+    private final ValueProfile valueProfile;
 
     // Stats
-    private int totalRecords = 0;
-    private int validRecords = 0;
-    private int invalidRecords = 0;
+    private final LongAdder totalRecords = new LongAdder();
+    private final LongAdder validRecords = new LongAdder();
+    private final LongAdder invalidRecords = new LongAdder();
 
-    private final Map<ValidationError.Category, List<String>> detailedErrors = new EnumMap<>(
-            ValidationError.Category.class);
+    // Per error code only a count and the first few line numbers stay on the heap;
+    // the full list goes to the ErrorLog
+    public static final int SAMPLE_LINES = 20;
+    private final ErrorLog errorLog;
+    private final AtomicLongArray codeCounts = new AtomicLongArray(ErrorCode.values().length);
+    private final int[][] sampleLines = new int[ErrorCode.values().length][SAMPLE_LINES];
 
-    // Metrics for Dashboard
-    private final Map<ValidationError.Severity, Integer> severityCounts = new EnumMap<>(ValidationError.Severity.class);
-    private final Map<ValidationError.Category, Integer> categoryCounts = new EnumMap<>(ValidationError.Category.class);
+    // Metrics for Dashboard, indexed by enum ordinal
+    private final AtomicLongArray severityCounts = new AtomicLongArray(ValidationError.Severity.values().length);
+    private final AtomicLongArray categoryCounts = new AtomicLongArray(ValidationError.Category.values().length);
 
     public ValidationContext() {
-        for (ValidationError.Category cat : ValidationError.Category.values()) {
-            detailedErrors.put(cat, new ArrayList<>());
-            categoryCounts.put(cat, 0);
-        }
-        for (ValidationError.Severity sev : ValidationError.Severity.values()) {
-            severityCounts.put(sev, 0);
-        }
+        this(new OrderIdIndex());
+    }
+
+    public ValidationContext(DuplicateDetector duplicateDetector) {
+        this(duplicateDetector, null);
+    }
+
+    public ValidationContext(DuplicateDetector duplicateDetector, ErrorLog errorLog) {
+        this(duplicateDetector, errorLog, new UserVelocityIndex());
+    }
+
+    public ValidationContext(DuplicateDetector duplicateDetector, ErrorLog errorLog, UserVelocityIndex userVelocity) {
+        this(duplicateDetector, errorLog, userVelocity, new ValueProfile());
+    }
+
+    public ValidationContext(DuplicateDetector duplicateDetector, ErrorLog errorLog, UserVelocityIndex userVelocity,
+            ValueProfile valueProfile) {
+        this.duplicateDetector = duplicateDetector;
+        this.errorLog = errorLog;
+        this.userVelocity = userVelocity;
+        this.valueProfile = valueProfile;
     }
 
     public void incrementTotal() {
-        totalRecords++;
+        totalRecords.increment();
     }
 
     public void incrementValid() {
-        validRecords++;
+        validRecords.increment();
     }
 
     public void incrementInvalid() {
-        invalidRecords++;
+        invalidRecords.increment();
     }
 
-    public Set<String> getSeenOrderIds() {
-        return seenOrderIds;
+    public DuplicateDetector getDuplicateDetector() {
+        return duplicateDetector;
     }
 
-    public Map<String, List<LocalDateTime>> getUserActivity() {
-        return userActivity;
+    public UserVelocityIndex getUserVelocity() {
+        return userVelocity;
     }
 
-    public int getTotalRecords() {
-        return totalRecords;
+    public ValueProfile getValueProfile() {
+        return valueProfile;
     }
 
-    public int getValidRecords() {
-        return validRecords;
+    public long getTotalRecords() {
+        return totalRecords.sum();
     }
 
-    public int getInvalidRecords() {
-        return invalidRecords;
+    public long getValidRecords() {
+        return validRecords.sum();
     }
 
-    public Map<ValidationError.Severity, Integer> getSeverityCounts() {
-        return severityCounts;
+    public long getInvalidRecords() {
+        return invalidRecords.sum();
     }
 
-    public Map<ValidationError.Category, Integer> getCategoryCounts() {
-        return categoryCounts;
+    public long getSeverityCount(ValidationError.Severity severity) {
+        return severityCounts.get(severity.ordinal());
+    }
+
+    public long getCategoryCount(ValidationError.Category category) {
+        return categoryCounts.get(category.ordinal());
     }
 
     public void captureErrors(ValidationResult result) {
         if (result.hasErrors()) {
             incrementInvalid();
-            for (ValidationError error : result.getErrors()) {
-                String logMsg = "Line " + result.getLineNumber() + " [" + error.getSeverity() + "]: "
-                        + error.getMessage();
-                detailedErrors.get(error.getCategory()).add(logMsg);
+            for (int i = 0; i < result.errorCount(); i++) {
+                ErrorCode code = result.getCode(i);
+                if (errorLog != null) {
+                    try {
+                        errorLog.append(result.getLineNumber(), code, result.getArg(i, 0), result.getArg(i, 1));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException("Failed to write error log", e);
+                    }
+                }
 
                 // Track stats
-                severityCounts.merge(error.getSeverity(), 1, Integer::sum);
-                categoryCounts.merge(error.getCategory(), 1, Integer::sum);
+                long seen = codeCounts.getAndIncrement(code.ordinal());
+                if (seen < SAMPLE_LINES)
+                    sampleLines[code.ordinal()][(int) seen] = result.getLineNumber();
+                severityCounts.incrementAndGet(code.getSeverity().ordinal());
+                categoryCounts.incrementAndGet(code.getCategory().ordinal());
             }
         } else {
             incrementValid();
         }
     }
 
-    public Map<ValidationError.Category, List<String>> getDetailedErrors() {
-        return detailedErrors;
+    public long getCodeCount(ErrorCode code) {
+        return codeCounts.get(code.ordinal());
+    }
+
+    // Line numbers of the first SAMPLE_LINES occurrences of a code
+    public int[] getSampleLines(ErrorCode code) {
+        return Arrays.copyOf(sampleLines[code.ordinal()], (int) Math.min(SAMPLE_LINES, getCodeCount(code)));
+    }
+
+    // Counters, per-code samples and the cross-record indexes, for Checkpoint (which snapshots the
+    // error log itself). Only consistent while no record is being committed.
+    public void writeSnapshot(DataOutput out) throws IOException {
+        out.writeLong(getTotalRecords());
+        out.writeLong(getValidRecords());
+        out.writeLong(getInvalidRecords());
+        ErrorCode[] codes = ErrorCode.values();
+        out.writeInt(codes.length);
+        for (ErrorCode code : codes) {
+            // By name, so a checkpoint survives codes being added to the catalog
+            out.writeUTF(code.name());
+            long count = getCodeCount(code);
+            out.writeLong(count);
+            for (int line : getSampleLines(code))
+                out.writeInt(line);
+        }
+        out.writeUTF(duplicateDetector.getClass().getName());
+        duplicateDetector.writeSnapshot(out);
+        userVelocity.writeSnapshot(out);
+        valueProfile.writeSnapshot(out);
+    }
+
+    // Into a fresh context built with the same detector, velocity and profile settings
+    public void readSnapshot(DataInput in) throws IOException {
+        totalRecords.add(in.readLong());
+        validRecords.add(in.readLong());
+        invalidRecords.add(in.readLong());
+        int codes = in.readInt();
+        for (int i = 0; i < codes; i++) {
+            String name = in.readUTF();
+            long count = in.readLong();
+            ErrorCode code;
+            try {
+                code = ErrorCode.valueOf(name);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Snapshot contains unknown error code " + name);
+            }
+            codeCounts.set(code.ordinal(), count);
+            for (int j = 0; j < Math.min(SAMPLE_LINES, count); j++)
+                sampleLines[code.ordinal()][j] = in.readInt();
+            severityCounts.addAndGet(code.getSeverity().ordinal(), count);
+            categoryCounts.addAndGet(code.getCategory().ordinal(), count);
+        }
+        String detector = in.readUTF();
+        if (!detector.equals(duplicateDetector.getClass().getName()))
+            throw new IOException("Snapshot was taken with a different duplicate detector (" + detector + ")");
+        duplicateDetector.readSnapshot(in);
+        userVelocity.readSnapshot(in);
+        valueProfile.readSnapshot(in);
+    }
+
+    // Counters, per-code samples and the value profile without the cross-record indexes, for
+    // ContextSnapshot. Tallies and codes go by name, so shards written by builds with different
+    // catalogs still merge.
+    public void writeSummary(DataOutput out) throws IOException {
+        out.writeLong(getTotalRecords());
+        out.writeLong(getValidRecords());
+        out.writeLong(getInvalidRecords());
+        out.writeInt(severityCounts.length());
+        for (ValidationError.Severity severity : ValidationError.Severity.values()) {
+            out.writeUTF(severity.name());
+            out.writeLong(getSeverityCount(severity));
+        }
+        out.writeInt(categoryCounts.length());
+        for (ValidationError.Category category : ValidationError.Category.values()) {
+            out.writeUTF(category.name());
+            out.writeLong(getCategoryCount(category));
+        }
+        int used = 0;
+        for (ErrorCode code : ErrorCode.values()) {
+            if (getCodeCount(code) > 0)
+                used++;
+        }
+        out.writeInt(used);
+        for (ErrorCode code : ErrorCode.values()) {
+            long count = getCodeCount(code);
+            if (count == 0)
+                continue;
+            out.writeUTF(code.name());
+            out.writeLong(count);
+            for (int line : getSampleLines(code))
+                out.writeInt(line);
+        }
+        valueProfile.writeSnapshot(out);
+    }
+
+    // Adds a summary to this context's counters. Shards share one line numbering, so the merged
+    // samples are again the first SAMPLE_LINES lines of each code.
+    public void mergeSummary(DataInput in) throws IOException {
+        totalRecords.add(in.readLong());
+        validRecords.add(in.readLong());
+        invalidRecords.add(in.readLong());
+        int severities = in.readInt();
+        for (int i = 0; i < severities; i++) {
+            String name = in.readUTF();
+            severityCounts.addAndGet(valueOf(ValidationError.Severity.class, name).ordinal(), in.readLong());
+        }
+        int categories = in.readInt();
+        for (int i = 0; i < categories; i++) {
+            String name = in.readUTF();
+            categoryCounts.addAndGet(valueOf(ValidationError.Category.class, name).ordinal(), in.readLong());
+        }
+        int codes = in.readInt();
+        for (int i = 0; i < codes; i++) {
+            ErrorCode code = valueOf(ErrorCode.class, in.readUTF());
+            long count = in.readLong();
+            int[] lines = new int[(int) Math.min(SAMPLE_LINES, count)];
+            for (int j = 0; j < lines.length; j++)
+                lines[j] = in.readInt();
+            int[] merged = new int[getSampleLines(code).length + lines.length];
+            System.arraycopy(getSampleLines(code), 0, merged, 0, merged.length - lines.length);
+            System.arraycopy(lines, 0, merged, merged.length - lines.length, lines.length);
+            Arrays.sort(merged);
+            System.arraycopy(merged, 0, sampleLines[code.ordinal()], 0, Math.min(SAMPLE_LINES, merged.length));
+            codeCounts.addAndGet(code.ordinal(), count);
+        }
+        valueProfile.readSnapshot(in);
+    }
+
+    private static <E extends Enum<E>> E valueOf(Class<E> type, String name) throws IOException {
+        try {
+            return Enum.valueOf(type, name);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Summary contains unknown " + type.getSimpleName() + " " + name);
+        }
+    }
+
+    // null when errors are only counted
+    public ErrorLog getErrorLog() {
+        return errorLog;
     }
 }
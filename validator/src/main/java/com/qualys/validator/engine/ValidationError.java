@@ -1,5 +1,8 @@
 package com.qualys.validator.engine;
 
+import java.util.Arrays;
+
+// A rendered error: the code from the catalog plus the arguments it was reported with
 public class ValidationError {
     public enum Severity {
         LOW, MEDIUM, HIGH
@@ -9,30 +12,36 @@ public class ValidationError {
         MANDATORY, SCHEMA, FINANCIAL, BUSINESS, SECURITY
     }
 
-    private final String message;
-    private final Severity severity;
-    private final Category category;
+    private final ErrorCode code;
+    private final Object[] args;
+
+    public ValidationError(ErrorCode code, Object... args) {
+        this.code = code;
+        this.args = args;
+    }
+
+    public ErrorCode getCode() {
+        return code;
+    }
 
-    public ValidationError(String message, Severity severity, Category category) {
-        this.message = message;
-        this.severity = severity;
-        this.category = category;
+    public Object[] getArgs() {
+        return Arrays.copyOf(args, args.length);
     }
 
     public String getMessage() {
-        return message;
+        return code.format(args);
     }
 
     public Severity getSeverity() {
-        return severity;
+        return code.getSeverity();
     }
 
     public Category getCategory() {
-        return category;
+        return code.getCategory();
     }
 
     @Override
     public String toString() {
-        return String.format("[%s] [%s] %s", category, severity, message);
+        return String.format("[%s] [%s] %s", getCategory(), getSeverity(), getMessage());
     }
 }
@@ -1,26 +1,115 @@
 package com.qualys.validator.engine;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 
+// Errors found for one record, stored as parallel code/argument arrays.
+// Instances are reused (see reset) so a record without errors allocates nothing.
 public class ValidationResult {
-    private final List<ValidationError> errors = new ArrayList<>();
-    private final int lineNumber;
+    private static final Object[] NO_ARGS = new Object[0];
+
+    private ErrorCode[] codes;
+    private Object[] args;
+    private int size;
+    private int lineNumber;
+
+    public ValidationResult() {
+        this(0);
+    }
 
     public ValidationResult(int lineNumber) {
+        this(lineNumber, 4);
+    }
+
+    private ValidationResult(int lineNumber, int capacity) {
+        this.lineNumber = lineNumber;
+        this.codes = new ErrorCode[capacity];
+        this.args = new Object[capacity * ErrorCode.MAX_ARGS];
+    }
+
+    public void reset(int lineNumber) {
+        Arrays.fill(args, 0, size * ErrorCode.MAX_ARGS, null);
+        this.size = 0;
         this.lineNumber = lineNumber;
     }
 
-    public void addError(ValidationError error) {
-        this.errors.add(error);
+    public void addError(ErrorCode code) {
+        add(code, null, null);
+    }
+
+    public void addError(ErrorCode code, Object arg) {
+        add(code, arg, null);
+    }
+
+    public void addError(ErrorCode code, Object arg0, Object arg1) {
+        add(code, arg0, arg1);
+    }
+
+    private void add(ErrorCode code, Object arg0, Object arg1) {
+        if (size == codes.length) {
+            codes = Arrays.copyOf(codes, size << 1);
+            args = Arrays.copyOf(args, (size << 1) * ErrorCode.MAX_ARGS);
+        }
+        codes[size] = code;
+        args[size * ErrorCode.MAX_ARGS] = arg0;
+        args[size * ErrorCode.MAX_ARGS + 1] = arg1;
+        size++;
     }
 
-    public List<ValidationError> getErrors() {
-        return errors;
+    public void addAll(ValidationResult other) {
+        for (int i = 0; i < other.size; i++) {
+            add(other.codes[i], other.args[i * ErrorCode.MAX_ARGS], other.args[i * ErrorCode.MAX_ARGS + 1]);
+        }
+    }
+
+    // Detached copy sized to fit, for handing errors across threads
+    public ValidationResult copy() {
+        ValidationResult copy = new ValidationResult(lineNumber, Math.max(1, size));
+        copy.addAll(this);
+        return copy;
+    }
+
+    public int errorCount() {
+        return size;
+    }
+
+    public ErrorCode getCode(int index) {
+        return codes[index];
+    }
+
+    public Object getArg(int index, int arg) {
+        return args[index * ErrorCode.MAX_ARGS + arg];
+    }
+
+    // Materializes one error for rendering
+    public ValidationError getError(int index) {
+        Object arg0 = getArg(index, 0);
+        Object arg1 = getArg(index, 1);
+        if (arg0 == null)
+            return new ValidationError(codes[index]);
+        if (arg1 == null)
+            return new ValidationError(codes[index], arg0);
+        return new ValidationError(codes[index], arg0, arg1);
     }
 
     public boolean hasErrors() {
-        return !errors.isEmpty();
+        return size > 0;
+    }
+
+    // Whether any error at index `from` or later has the given severity
+    public boolean hasSeverity(ValidationError.Severity severity, int from) {
+        for (int i = from; i < size; i++) {
+            if (codes[i].getSeverity() == severity)
+                return true;
+        }
+        return false;
+    }
+
+    // Drops every error from index `size` on
+    public void truncate(int size) {
+        if (size >= this.size)
+            return;
+        Arrays.fill(args, size * ErrorCode.MAX_ARGS, this.size * ErrorCode.MAX_ARGS, null);
+        this.size = size;
     }
 
     public int getLineNumber() {
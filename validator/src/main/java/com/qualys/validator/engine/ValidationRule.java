@@ -1,7 +1,44 @@
 package com.qualys.validator.engine;
 
+import com.qualys.validator.io.LeanRecordScanner;
 import com.qualys.validator.model.Record;
 
+import java.util.List;
+import java.util.Set;
+
 public interface ValidationRule {
+
+    // Rough per-record cost; orders fail-fast runs until real costs have been measured
+    enum Cost {
+        CHEAP, MODERATE, EXPENSIVE
+    }
+
     void validate(Record record, ValidationContext context, ValidationResult result);
+
+    // Lean mode: the record was read straight off the token stream, so only its scalar fields,
+    // metadata and unknown field names are set; items and discounts exist only as the scanner's
+    // running totals. Rules that look past the scalars must override this.
+    default void validate(Record scalars, LeanRecordScanner scanned, ValidationContext context,
+            ValidationResult result) {
+        validate(scalars, context, result);
+    }
+
+    // Rules whose outcome depends on previously seen records (e.g. duplicate detection)
+    // are run by the in-order committer so parallel runs report the same record as the first.
+    default boolean requiresInputOrder() {
+        return false;
+    }
+
+    default Cost getCost() {
+        return Cost.MODERATE;
+    }
+
+    // Categories of the errors this rule reports
+    Set<ValidationError.Category> getCategories();
+
+    // Rules that must run before this one, e.g. because it relies on what they already reported.
+    // Reordering never moves a rule ahead of its dependencies.
+    default List<Class<? extends ValidationRule>> getDependencies() {
+        return List.of();
+    }
 }
@@ -0,0 +1,211 @@
+package com.qualys.validator.engine;
+
+import com.qualys.validator.util.Cents;
+import com.qualys.validator.util.HyperLogLog;
+import com.qualys.validator.util.QuantileSketch;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Distributions of the input, for OutlierRule and the dashboard. Only touched by the in-order
+// committer.
+// Item price, item qty and total_amount are kept as QuantileSketches per segment (currency and
+// channel), so a price is judged against orders in the same currency; distinct users and SKUs are
+// counted with HyperLogLogs. Segments beyond MAX_SEGMENTS share one OTHER segment, so memory is
+// fixed whatever the input: at most MAX_SEGMENTS + 1 segments of three sketches.
+public class ValueProfile {
+
+    public enum Metric {
+        PRICE, QTY, TOTAL
+    }
+
+    public static final double DEFAULT_QUANTILE = 0;
+    public static final long DEFAULT_MIN_SAMPLES = 1000;
+    public static final int MAX_SEGMENTS = 64;
+    public static final String OTHER = "*";
+
+    // A segment's thresholds are recomputed once its sample has grown by this fraction
+    private static final int REFRESH_DIVISOR = 64;
+    private static final int MIN_REFRESH = 16;
+    private static final int MAX_CACHED = 4 * MAX_SEGMENTS;
+
+    private final double quantile;
+    private final long minSamples;
+    private final HyperLogLog users = new HyperLogLog();
+    private final HyperLogLog skus = new HyperLogLog();
+    private final Map<String, Segment> segments = new LinkedHashMap<>();
+    // currency -> channel -> segment, so a lookup builds no key (both may be null); bounded like
+    // the segments, pairs past MAX_CACHED build their key every time
+    private final Map<String, Map<String, Segment>> byCurrency = new HashMap<>();
+    private int cached;
+
+    public ValueProfile() {
+        this(DEFAULT_QUANTILE, DEFAULT_MIN_SAMPLES);
+    }
+
+    // quantile 0 only profiles; otherwise values above that quantile of their segment are outliers
+    // once the segment has minSamples values
+    public ValueProfile(double quantile, long minSamples) {
+        if (quantile != 0 && (quantile < 0.5 || quantile >= 1))
+            throw new IllegalArgumentException("Outlier quantile must be at least 0.5 and below 1");
+        if (minSamples < 1)
+            throw new IllegalArgumentException("Outlier sample minimum must be positive");
+        this.quantile = quantile;
+        this.minSamples = minSamples;
+    }
+
+    public double getQuantile() {
+        return quantile;
+    }
+
+    public boolean flagsOutliers() {
+        return quantile > 0;
+    }
+
+    public void addUser(long hash) {
+        users.add(hash);
+    }
+
+    public void addSku(long hash) {
+        skus.add(hash);
+    }
+
+    public long distinctUsers() {
+        return users.estimate();
+    }
+
+    public long distinctSkus() {
+        return skus.estimate();
+    }
+
+    public Segment segment(String currency, String channel) {
+        Map<String, Segment> byChannel = byCurrency.get(currency);
+        Segment segment = byChannel != null ? byChannel.get(channel) : null;
+        if (segment == null) {
+            segment = segment((currency != null ? currency : "-") + "/" + (channel != null ? channel : "-"));
+            if (cached < MAX_CACHED) {
+                byCurrency.computeIfAbsent(currency, any -> new HashMap<>()).put(channel, segment);
+                cached++;
+            }
+        }
+        return segment;
+    }
+
+    private Segment segment(String key) {
+        Segment segment = segments.get(key);
+        if (segment == null)
+            segment = segments.computeIfAbsent(segments.size() >= MAX_SEGMENTS ? OTHER : key, Segment::new);
+        return segment;
+    }
+
+    // Largest first
+    public List<Segment> segments() {
+        List<Segment> sorted = new ArrayList<>(segments.values());
+        sorted.sort(Comparator.comparingLong((Segment segment) -> segment.get(Metric.TOTAL).count()).reversed());
+        return sorted;
+    }
+
+    public long memoryBytes() {
+        return 2 * HyperLogLog.memoryBytes() + segments.size() * Metric.values().length * QuantileSketch.memoryBytes();
+    }
+
+    public String describe() {
+        return String.format("~%d users, ~%d SKUs, %d segments, ~%.1f MB", distinctUsers(), distinctSkus(),
+                segments.size(), memoryBytes() / (1024.0 * 1024.0));
+    }
+
+    // Cached thresholds go along, so a resumed run flags exactly what an uninterrupted one would
+    public void writeSnapshot(DataOutput out) throws IOException {
+        users.writeSnapshot(out);
+        skus.writeSnapshot(out);
+        out.writeInt(segments.size());
+        for (Segment segment : segments.values()) {
+            out.writeUTF(segment.key);
+            for (int m = 0; m < segment.sketches.length; m++) {
+                segment.sketches[m].writeSnapshot(out);
+                out.writeLong(segment.thresholds[m]);
+                out.writeLong(segment.refreshAt[m]);
+            }
+        }
+    }
+
+    // Adds to what is there, so snapshots of several shards merge into one profile. A segment that
+    // was empty takes over the snapshot's cached thresholds; a merged one recomputes them.
+    public void readSnapshot(DataInput in) throws IOException {
+        users.readSnapshot(in);
+        skus.readSnapshot(in);
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            Segment segment = segment(in.readUTF());
+            for (int m = 0; m < segment.sketches.length; m++) {
+                boolean empty = segment.sketches[m].count() == 0;
+                segment.sketches[m].readSnapshot(in);
+                long threshold = in.readLong();
+                long refreshAt = in.readLong();
+                segment.thresholds[m] = empty ? threshold : 0;
+                segment.refreshAt[m] = empty ? refreshAt : 0;
+            }
+        }
+    }
+
+    public final class Segment {
+        private final String key;
+        private final QuantileSketch[] sketches = new QuantileSketch[Metric.values().length];
+        private final long[] thresholds = new long[Metric.values().length];
+        private final long[] refreshAt = new long[Metric.values().length];
+
+        Segment(String key) {
+            this.key = key;
+            for (int i = 0; i < sketches.length; i++)
+                sketches[i] = new QuantileSketch();
+        }
+
+        // "USD/web", or OTHER
+        public String getKey() {
+            return key;
+        }
+
+        public QuantileSketch get(Metric metric) {
+            return sketches[metric.ordinal()];
+        }
+
+        // The outlier threshold for a metric from the values recorded so far, or -1 while the
+        // segment has too few of them (or outliers are not flagged)
+        public long threshold(Metric metric) {
+            QuantileSketch sketch = sketches[metric.ordinal()];
+            if (quantile == 0 || sketch.count() < minSamples)
+                return -1;
+            int m = metric.ordinal();
+            if (sketch.count() >= refreshAt[m]) {
+                thresholds[m] = sketch.quantile(quantile);
+                refreshAt[m] = sketch.count() + Math.max(MIN_REFRESH, sketch.count() / REFRESH_DIVISOR);
+            }
+            return thresholds[m];
+        }
+
+        public void record(Metric metric, long value) {
+            sketches[metric.ordinal()].record(value);
+        }
+    }
+
+    // Quantities are kept as they are, money as cents
+    public static String format(Metric metric, long value) {
+        return metric == Metric.QTY ? String.valueOf(value) : Cents.toDecimal(value, 2).toPlainString();
+    }
+
+    // Cents of a positive amount with at most 2 decimals, otherwise -1
+    public static long cents(BigDecimal amount) {
+        if (amount == null || amount.signum() <= 0)
+            return -1;
+        long cents = Cents.fromDecimal(amount);
+        return cents == Cents.NONE ? -1 : cents;
+    }
+}
@@ -0,0 +1,196 @@
+package com.qualys.validator.engine;
+
+import com.qualys.validator.util.BloomFilter;
+import com.qualys.validator.util.FutureCutoff;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+// Order-id dedup over a sliding created_at window, for inputs too long to remember every id.
+// Ids live in time buckets of window/BUCKETS_PER_WINDOW seconds; once the newest created_at seen
+// moves a bucket out of the window the whole bucket is dropped at once. A duplicate is therefore
+// caught if it repeats within the window, and may still be caught up to one bucket beyond it.
+// With the optional Bloom tier, evicted ids are folded into two rotating filter generations and
+// later repeats are reported as possible duplicates; memory stays fixed at the filter size. The
+// filters are allocated at the first eviction, and buckets start small, so a detector that only
+// ever sees a few ids (e.g. one per server request) stays small.
+// A created_at past the CREATED_IN_FUTURE cutoff (now + 1 day) never moves the window: such a
+// record is filed like one without a timestamp, so one bad clock cannot evict every live bucket.
+public class WindowedDuplicateDetector implements DuplicateDetector {
+
+    private static final int BUCKETS_PER_WINDOW = 8;
+    private static final long BLOOM_GENERATION_IDS = 10_000_000L;
+    private static final double BLOOM_FALSE_POSITIVE_RATE = 0.01;
+    private static final int BUCKET_EXPECTED_IDS = 1024;
+
+    private final long windowSeconds;
+    private final long bucketSeconds;
+    private final OrderIdIndex[] buckets;
+    private final long[] bucketIds;
+    private final boolean bloomTier;
+    private long newestBucket = Long.MIN_VALUE;
+
+    private BloomFilter bloomCurrent;
+    private BloomFilter bloomPrevious;
+    private long evictedBuckets = 0;
+
+    private final FutureCutoff futureCutoff = new FutureCutoff();
+
+    public WindowedDuplicateDetector(long windowSeconds, boolean bloomTier) {
+        if (windowSeconds < 1)
+            throw new IllegalArgumentException("Dedup window must be at least one second");
+        this.windowSeconds = windowSeconds;
+        this.bucketSeconds = Math.max(1, windowSeconds / BUCKETS_PER_WINDOW);
+        int slots = (int) ((windowSeconds + bucketSeconds - 1) / bucketSeconds) + 1;
+        this.buckets = new OrderIdIndex[slots];
+        this.bucketIds = new long[slots];
+        this.bloomTier = bloomTier;
+    }
+
+    @Override
+    public synchronized Match check(String orderId, long createdAtEpochSecond) {
+        // Records without a usable created_at, or with one in the future, are filed under the newest bucket
+        long bucket = createdAtEpochSecond != NO_TIMESTAMP && !futureCutoff.isAfter(createdAtEpochSecond)
+                ? Math.floorDiv(createdAtEpochSecond, bucketSeconds)
+                : newestBucket != Long.MIN_VALUE ? newestBucket : 0;
+        if (bucket > newestBucket)
+            advanceTo(bucket);
+
+        for (int i = 0; i < buckets.length; i++) {
+            if (buckets[i] != null && buckets[i].contains(orderId))
+                return Match.DUPLICATE;
+        }
+
+        boolean possible = bloomCurrent != null && mightHaveSeen(OrderIdIndex.keyHash(orderId));
+
+        // Records older than the retained window are checked but not remembered
+        if (bucket > newestBucket - buckets.length)
+            bucketFor(bucket).add(orderId);
+        return possible ? Match.POSSIBLE_DUPLICATE : Match.NEW;
+    }
+
+    @Override
+    public boolean usesTimestamps() {
+        return true;
+    }
+
+    private OrderIdIndex bucketFor(long bucket) {
+        int slot = (int) Math.floorMod(bucket, (long) buckets.length);
+        if (buckets[slot] == null || bucketIds[slot] != bucket) {
+            buckets[slot] = new OrderIdIndex(BUCKET_EXPECTED_IDS);
+            bucketIds[slot] = bucket;
+        }
+        return buckets[slot];
+    }
+
+    private void advanceTo(long bucket) {
+        newestBucket = bucket;
+        long oldestLive = bucket - buckets.length + 1;
+        for (int i = 0; i < buckets.length; i++) {
+            if (buckets[i] != null && bucketIds[i] < oldestLive) {
+                evict(buckets[i]);
+                buckets[i] = null;
+            }
+        }
+    }
+
+    private void evict(OrderIdIndex bucket) {
+        evictedBuckets++;
+        if (!bloomTier)
+            return;
+        allocateBloom();
+        bucket.forEachKeyHash(hash -> {
+            if (bloomCurrent.isFull()) {
+                BloomFilter recycled = bloomPrevious;
+                recycled.clear();
+                bloomPrevious = bloomCurrent;
+                bloomCurrent = recycled;
+            }
+            bloomCurrent.put(hash);
+        });
+    }
+
+    private void allocateBloom() {
+        if (bloomCurrent != null)
+            return;
+        bloomCurrent = new BloomFilter(BLOOM_GENERATION_IDS, BLOOM_FALSE_POSITIVE_RATE);
+        bloomPrevious = new BloomFilter(BLOOM_GENERATION_IDS, BLOOM_FALSE_POSITIVE_RATE);
+    }
+
+    private boolean mightHaveSeen(long hash) {
+        return bloomCurrent.mightContain(hash) || bloomPrevious.mightContain(hash);
+    }
+
+    @Override
+    public synchronized void writeSnapshot(DataOutput out) throws IOException {
+        out.writeLong(windowSeconds);
+        out.writeBoolean(bloomTier);
+        out.writeLong(newestBucket);
+        out.writeLong(evictedBuckets);
+        for (int i = 0; i < buckets.length; i++) {
+            out.writeBoolean(buckets[i] != null);
+            if (buckets[i] != null) {
+                out.writeLong(bucketIds[i]);
+                buckets[i].writeSnapshot(out);
+            }
+        }
+        if (bloomTier) {
+            allocateBloom();
+            bloomCurrent.writeSnapshot(out);
+            bloomPrevious.writeSnapshot(out);
+        }
+    }
+
+    @Override
+    public synchronized void readSnapshot(DataInput in) throws IOException {
+        if (in.readLong() != windowSeconds || in.readBoolean() != bloomTier)
+            throw new IOException("Snapshot was taken with a different --dedup-window or --dedup-bloom setting");
+        newestBucket = in.readLong();
+        evictedBuckets = in.readLong();
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = null;
+            if (in.readBoolean()) {
+                bucketIds[i] = in.readLong();
+                buckets[i] = new OrderIdIndex(BUCKET_EXPECTED_IDS);
+                buckets[i].readSnapshot(in);
+            }
+        }
+        if (bloomTier) {
+            allocateBloom();
+            bloomCurrent.readSnapshot(in);
+            bloomPrevious.readSnapshot(in);
+        }
+    }
+
+    @Override
+    public synchronized long size() {
+        long size = 0;
+        for (OrderIdIndex bucket : buckets) {
+            if (bucket != null)
+                size += bucket.size();
+        }
+        return size;
+    }
+
+    @Override
+    public synchronized long memoryBytes() {
+        long bytes = 0;
+        for (OrderIdIndex bucket : buckets) {
+            if (bucket != null)
+                bytes += bucket.memoryBytes();
+        }
+        if (bloomCurrent != null)
+            bytes += bloomCurrent.memoryBytes() + bloomPrevious.memoryBytes();
+        return bytes;
+    }
+
+    @Override
+    public synchronized String describe() {
+        String bloom = !bloomTier ? "off"
+                : bloomCurrent == null ? "0 evicted ids"
+                : (bloomCurrent.inserted() + bloomPrevious.inserted()) + " evicted ids";
+        return String.format("%d ids in a %ds window (%ds buckets, %d evicted), bloom tier: %s, ~%.1f MB",
+                size(), windowSeconds, bucketSeconds, evictedBuckets, bloom, memoryBytes() / (1024.0 * 1024.0));
+    }
+}
@@ -0,0 +1,14 @@
+package com.qualys.validator.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+// One input file cut into chunks that end on a newline (except possibly the very last one)
+interface ChunkSource extends Closeable {
+
+    // The next chunk, or null once the input is exhausted
+    NdjsonChunker.Chunk next() throws IOException;
+
+    // Bytes of the file on disk consumed up to the end of the last chunk returned
+    long position();
+}
@@ -0,0 +1,117 @@
+package com.qualys.validator.io;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+
+// Decompresses a gzip file (one or more concatenated members) into newline-aligned chunks on
+// the heap. Decompression of one file is sequential, so the reader runs one per file and leaves
+// the parsing to the shared worker pool. Each chunk gets its own array; the partial line at the
+// end of a read is carried into the next one.
+public class GzipChunker implements ChunkSource {
+
+    private static final int INFLATE_BUFFER_BYTES = 1 << 16;
+
+    private final CountingInputStream compressed;
+    private final InputStream in;
+    private final int chunkBytes;
+    private byte[] buffer;
+    // Bytes of buffer already filled (the carried-over partial line first)
+    private int filled;
+    private boolean eof;
+    private int nextIndex;
+    private long decompressedOffset;
+
+    public GzipChunker(Path path, int chunkBytes) throws IOException {
+        this.compressed = new CountingInputStream(Files.newInputStream(path));
+        this.in = new GZIPInputStream(compressed, INFLATE_BUFFER_BYTES);
+        this.chunkBytes = chunkBytes;
+        this.buffer = new byte[chunkBytes];
+    }
+
+    @Override
+    public NdjsonChunker.Chunk next() throws IOException {
+        while (!eof) {
+            if (filled == buffer.length) {
+                int lastNewline = lastIndexOfNewline(buffer, filled);
+                if (lastNewline >= 0)
+                    return emit(lastNewline + 1);
+                // A single line longer than the buffer
+                byte[] larger = new byte[buffer.length * 2];
+                System.arraycopy(buffer, 0, larger, 0, filled);
+                buffer = larger;
+            }
+            int read = in.read(buffer, filled, buffer.length - filled);
+            if (read < 0)
+                eof = true;
+            else
+                filled += read;
+        }
+        return filled > 0 ? emit(filled) : null;
+    }
+
+    // Compressed bytes read so far; runs a little ahead of the chunks because of the inflater's buffer
+    @Override
+    public long position() {
+        return compressed.count;
+    }
+
+    private NdjsonChunker.Chunk emit(int length) {
+        byte[] data = buffer;
+        buffer = new byte[Math.max(chunkBytes, filled - length)];
+        System.arraycopy(data, length, buffer, 0, filled - length);
+        filled -= length;
+        NdjsonChunker.Chunk chunk = new NdjsonChunker.Chunk(nextIndex++, decompressedOffset,
+                ByteBuffer.wrap(data, 0, length).slice());
+        decompressedOffset += length;
+        return chunk;
+    }
+
+    private static int lastIndexOfNewline(byte[] data, int end) {
+        for (int i = end - 1; i >= 0; i--) {
+            if (data[i] == '\n')
+                return i;
+        }
+        return -1;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+        long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0)
+                count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0)
+                count += n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.qualys.validator.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.stream.Stream;
+
+// Expands the input arguments into the files to read, in the order they are validated:
+//   a file            -> itself
+//   a directory       -> its *.json, *.ndjson and *.jsonl files (optionally .gz), sorted by name
+//   a glob            -> every matching file, sorted by path, e.g. "feeds/2024-*/*.ndjson.gz"
+// A file listed twice (e.g. by two overlapping globs) is only read once.
+public final class InputFiles {
+
+    private static final List<String> EXTENSIONS = List.of(".json", ".ndjson", ".jsonl");
+    private static final String GLOB_CHARS = "*?[{";
+
+    private InputFiles() {
+    }
+
+    public static List<Path> resolve(List<String> arguments) throws IOException {
+        Set<Path> files = new LinkedHashSet<>();
+        for (String argument : arguments) {
+            List<Path> matched = isGlob(argument) ? glob(argument) : expand(Path.of(argument));
+            if (matched.isEmpty())
+                throw new IOException("No input files match " + argument);
+            files.addAll(matched);
+        }
+        return new ArrayList<>(files);
+    }
+
+    // Detected by the gzip magic number rather than the file name
+    public static boolean isGzip(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            return in.read() == 0x1f && in.read() == 0x8b;
+        }
+    }
+
+    private static List<Path> expand(Path path) throws IOException {
+        if (!Files.exists(path))
+            throw new IOException("File not found: " + path);
+        if (!Files.isDirectory(path))
+            return List.of(path.normalize());
+        try (Stream<Path> entries = Files.list(path)) {
+            return entries.filter(Files::isRegularFile).filter(InputFiles::hasRecordExtension).map(Path::normalize)
+                    .sorted().toList();
+        }
+    }
+
+    // The walk starts at the longest leading part of the pattern without glob characters
+    private static List<Path> glob(String pattern) throws IOException {
+        String normalized = pattern.replace('\\', '/');
+        int firstGlob = indexOfGlobChar(normalized);
+        int baseEnd = normalized.lastIndexOf('/', firstGlob);
+        Path base = baseEnd < 0 ? Path.of(".") : Path.of(baseEnd == 0 ? "/" : normalized.substring(0, baseEnd));
+        String relative = normalized.substring(baseEnd + 1);
+        if (!Files.isDirectory(base))
+            return List.of();
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + relative);
+        int depth = relative.contains("**") ? Integer.MAX_VALUE : relative.split("/").length;
+        try (Stream<Path> entries = Files.walk(base, depth)) {
+            return entries.filter(Files::isRegularFile)
+                    .filter(file -> matcher.matches(base.relativize(file)))
+                    .map(Path::normalize).sorted().toList();
+        }
+    }
+
+    // A name that exists as written is taken literally even if it contains glob characters
+    private static boolean isGlob(String argument) {
+        if (indexOfGlobChar(argument) < 0)
+            return false;
+        try {
+            return !Files.exists(Path.of(argument));
+        } catch (RuntimeException e) {
+            // Not a valid path on this platform (e.g. '*' on Windows)
+            return true;
+        }
+    }
+
+    private static int indexOfGlobChar(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (GLOB_CHARS.indexOf(value.charAt(i)) >= 0)
+                return i;
+        }
+        return -1;
+    }
+
+    private static boolean hasRecordExtension(Path file) {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        if (name.endsWith(".gz"))
+            name = name.substring(0, name.length() - 3);
+        for (String extension : EXTENSIONS) {
+            if (name.endsWith(extension))
+                return true;
+        }
+        return false;
+    }
+}
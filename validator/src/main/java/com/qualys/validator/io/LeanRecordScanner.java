@@ -0,0 +1,350 @@
+package com.qualys.validator.io;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.qualys.validator.engine.ValidationResult;
+import com.qualys.validator.model.Metadata;
+import com.qualys.validator.model.Record;
+import com.qualys.validator.rules.FinancialRule;
+import com.qualys.validator.util.AhoCorasick;
+import com.qualys.validator.util.Cents;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.HashSet;
+import java.util.Set;
+
+// Lean mode: reads one record straight off a JsonParser instead of databinding it.
+// Scalars, metadata and unknown field names go into a Record; items and discounts are never
+// materialised but folded into FinancialRule.Totals as they stream past, amounts with up to two
+// decimals as long cents read from the token text. Strings that are not kept (skus, discount types,
+// unknown field values and the names inside them) are run through SecurityRule's injection patterns
+// while still in the parser's buffer; so are unknown field names.
+// Anything the ObjectMapper would coerce or reject (numbers as strings, nested values in string
+// fields, unknown item properties, repeated lists, ...) makes scan() give up, so the caller can
+// databind that record instead and both paths report exactly the same errors.
+// Not thread-safe: one instance per worker.
+public class LeanRecordScanner {
+
+    private final AhoCorasick injectionPatterns;
+    private final FinancialRule.Totals totals = new FinancialRule.Totals();
+    private final ValidationResult itemErrors = new ValidationResult();
+    private final ValidationResult discountErrors = new ValidationResult();
+    private boolean hasItems;
+    private int itemCount;
+    private int skuInjections;
+    private int discountTypeInjections;
+    private final Set<String> injectedUnknownFields = new HashSet<>();
+
+    // Last amount read by readAmount()
+    private long amountCents;
+    private int amountScale;
+    private BigDecimal amountDecimal;
+
+    public LeanRecordScanner(AhoCorasick injectionPatterns) {
+        this.injectionPatterns = injectionPatterns;
+    }
+
+    // Parser must be on the record's START_OBJECT; on success it is left on the matching END_OBJECT.
+    // Returns false, with the parser somewhere inside the record, if the record needs databinding.
+    public boolean scan(JsonParser parser, Record into) throws IOException {
+        totals.reset();
+        itemErrors.reset(0);
+        discountErrors.reset(0);
+        hasItems = false;
+        itemCount = 0;
+        skuInjections = 0;
+        discountTypeInjections = 0;
+        injectedUnknownFields.clear();
+        boolean seenItems = false;
+        boolean seenDiscounts = false;
+        boolean seenMetadata = false;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            JsonToken value = parser.nextToken();
+            switch (name) {
+                case "order_id":
+                    if (!isText(value))
+                        return false;
+                    into.orderId = text(parser);
+                    break;
+                case "user_id":
+                    if (!isText(value))
+                        return false;
+                    into.userId = text(parser);
+                    break;
+                case "currency":
+                    if (!isText(value))
+                        return false;
+                    into.currency = text(parser);
+                    break;
+                case "created_at":
+                    if (!isText(value))
+                        return false;
+                    into.createdAt = text(parser);
+                    break;
+                case "updated_at":
+                    if (!isText(value))
+                        return false;
+                    into.updatedAt = text(parser);
+                    break;
+                case "total_amount":
+                    if (!isDecimal(value))
+                        return false;
+                    into.totalAmount = decimal(parser);
+                    break;
+                case "items":
+                    // A repeated list replaces the earlier one when bound, which running totals cannot undo
+                    if (seenItems)
+                        return false;
+                    seenItems = true;
+                    if (value == JsonToken.START_ARRAY) {
+                        hasItems = true;
+                        if (!scanItems(parser))
+                            return false;
+                    } else if (value != JsonToken.VALUE_NULL) {
+                        return false;
+                    }
+                    break;
+                case "discounts":
+                    if (seenDiscounts)
+                        return false;
+                    seenDiscounts = true;
+                    if (value == JsonToken.START_ARRAY) {
+                        if (!scanDiscounts(parser))
+                            return false;
+                    } else if (value != JsonToken.VALUE_NULL) {
+                        return false;
+                    }
+                    break;
+                case "metadata":
+                    if (seenMetadata)
+                        return false;
+                    seenMetadata = true;
+                    if (value == JsonToken.START_OBJECT) {
+                        into.metadata = new Metadata();
+                        if (!scanMetadata(parser, into.metadata))
+                            return false;
+                    } else if (value != JsonToken.VALUE_NULL) {
+                        return false;
+                    }
+                    break;
+                default:
+                    // Only the name is kept, plus whether it or its value carries an injection pattern
+                    into.unknownFields.put(name, null);
+                    if (skipValue(parser) || injectionPatterns.matches(name))
+                        injectedUnknownFields.add(name);
+                    else
+                        injectedUnknownFields.remove(name);
+                    break;
+            }
+        }
+        return true;
+    }
+
+    private boolean scanItems(JsonParser parser) throws IOException {
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (parser.currentToken() != JsonToken.START_OBJECT)
+                return false;
+            boolean skuInjected = false;
+            boolean hasQty = false;
+            int qty = 0;
+            boolean hasPrice = false;
+            long priceCents = 0;
+            int priceScale = 0;
+            BigDecimal price = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                JsonToken value = parser.nextToken();
+                switch (name) {
+                    case "sku":
+                        if (!isText(value))
+                            return false;
+                        skuInjected = skipValue(parser);
+                        break;
+                    case "qty":
+                        if (value == JsonToken.VALUE_NULL) {
+                            hasQty = false;
+                        } else if (value == JsonToken.VALUE_NUMBER_INT
+                                && parser.getNumberType() == JsonParser.NumberType.INT) {
+                            hasQty = true;
+                            qty = parser.getIntValue();
+                        } else {
+                            return false;
+                        }
+                        break;
+                    case "price":
+                        if (!isDecimal(value))
+                            return false;
+                        hasPrice = readAmount(parser);
+                        priceCents = amountCents;
+                        priceScale = amountScale;
+                        price = amountDecimal;
+                        break;
+                    default:
+                        return false;
+                }
+            }
+            itemCount++;
+            if (skuInjected)
+                skuInjections++;
+            if (!hasQty || !hasPrice)
+                continue;
+            if (price != null)
+                totals.addItem(qty, price, itemErrors);
+            else
+                totals.addItem(qty, priceCents, priceScale, itemErrors);
+        }
+        return true;
+    }
+
+    private boolean scanDiscounts(JsonParser parser) throws IOException {
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (parser.currentToken() != JsonToken.START_OBJECT)
+                return false;
+            boolean typeInjected = false;
+            boolean hasAmount = false;
+            long cents = 0;
+            int scale = 0;
+            BigDecimal amount = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                JsonToken value = parser.nextToken();
+                switch (name) {
+                    case "type":
+                        if (!isText(value))
+                            return false;
+                        typeInjected = skipValue(parser);
+                        break;
+                    case "amount":
+                        if (!isDecimal(value))
+                            return false;
+                        hasAmount = readAmount(parser);
+                        cents = amountCents;
+                        scale = amountScale;
+                        amount = amountDecimal;
+                        break;
+                    default:
+                        return false;
+                }
+            }
+            if (typeInjected)
+                discountTypeInjections++;
+            if (!hasAmount)
+                continue;
+            if (amount != null)
+                totals.addDiscount(amount, discountErrors);
+            else
+                totals.addDiscount(cents, scale, discountErrors);
+        }
+        return true;
+    }
+
+    private static boolean scanMetadata(JsonParser parser, Metadata into) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if (!name.equals("channel") || !isText(value))
+                return false;
+            into.channel = text(parser);
+        }
+        return true;
+    }
+
+    // Consumes the current value and tells whether any string or field name in it matches an injection
+    // pattern.
+    // Strings are decoded into the parser's own buffer rather than skipped, which also makes
+    // invalid escapes fail here just as they would when bound.
+    private boolean skipValue(JsonParser parser) throws IOException {
+        boolean injected = false;
+        int depth = 0;
+        JsonToken token = parser.currentToken();
+        while (true) {
+            if (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY) {
+                depth++;
+            } else if (token == JsonToken.END_OBJECT || token == JsonToken.END_ARRAY) {
+                depth--;
+            } else if (token == JsonToken.VALUE_STRING || token == JsonToken.FIELD_NAME) {
+                char[] text = parser.getTextCharacters();
+                int offset = parser.getTextOffset();
+                int length = parser.getTextLength();
+                if (!injected)
+                    injected = injectionPatterns.matches(text, offset, length);
+            }
+            if (depth == 0)
+                return injected;
+            token = parser.nextToken();
+        }
+    }
+
+    // Reads the current number (or null) into amountCents/amountScale, or into amountDecimal when it
+    // has more than 2 decimals. Returns false for null.
+    private boolean readAmount(JsonParser parser) throws IOException {
+        amountDecimal = null;
+        if (parser.currentToken() == JsonToken.VALUE_NULL)
+            return false;
+        char[] text = parser.getTextCharacters();
+        int offset = parser.getTextOffset();
+        int length = parser.getTextLength();
+        amountCents = Cents.parse(text, offset, length);
+        if (amountCents == Cents.NONE)
+            amountDecimal = parser.getDecimalValue();
+        else
+            amountScale = Cents.scale(text, offset, length);
+        return true;
+    }
+
+    private static boolean isText(JsonToken token) {
+        return token == JsonToken.VALUE_STRING || token == JsonToken.VALUE_NULL;
+    }
+
+    private static String text(JsonParser parser) throws IOException {
+        return parser.currentToken() == JsonToken.VALUE_NULL ? null : parser.getText();
+    }
+
+    private static boolean isDecimal(JsonToken token) {
+        return token == JsonToken.VALUE_NUMBER_INT || token == JsonToken.VALUE_NUMBER_FLOAT
+                || token == JsonToken.VALUE_NULL;
+    }
+
+    private static BigDecimal decimal(JsonParser parser) throws IOException {
+        return parser.currentToken() == JsonToken.VALUE_NULL ? null : parser.getDecimalValue();
+    }
+
+    public boolean hasItems() {
+        return hasItems;
+    }
+
+    public int getItemCount() {
+        return itemCount;
+    }
+
+    public int getSkuInjections() {
+        return skuInjections;
+    }
+
+    public int getDiscountTypeInjections() {
+        return discountTypeInjections;
+    }
+
+    public boolean hasUnknownFieldInjections() {
+        return !injectedUnknownFields.isEmpty();
+    }
+
+    public boolean isUnknownFieldInjected(String name) {
+        return injectedUnknownFields.contains(name);
+    }
+
+    public ValidationResult getItemErrors() {
+        return itemErrors;
+    }
+
+    public ValidationResult getDiscountErrors() {
+        return discountErrors;
+    }
+
+    public FinancialRule.Totals getTotals() {
+        return totals;
+    }
+}
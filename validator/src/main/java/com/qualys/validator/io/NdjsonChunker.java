@@ -0,0 +1,137 @@
+package com.qualys.validator.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Memory-maps an NDJSON file and cuts it into chunks that always end on a newline,
+// so each chunk can be handed to its own parser. Chunks are views of the mapping, not copies.
+public class NdjsonChunker implements ChunkSource {
+
+    public static final int DEFAULT_CHUNK_BYTES = 4 << 20;
+    // A single mapping is limited to Integer.MAX_VALUE bytes
+    private static final long MAX_REGION_BYTES = 1L << 30;
+
+    public static class Chunk {
+        public final int index;
+        public final long fileOffset;
+        public final ByteBuffer data;
+
+        Chunk(int index, long fileOffset, ByteBuffer data) {
+            this.index = index;
+            this.fileOffset = fileOffset;
+            this.data = data;
+        }
+    }
+
+    private final FileChannel channel;
+    private final long end;
+    private final int chunkBytes;
+    // For a file that is still being written: stop before a last line without its newline
+    private final boolean completeLinesOnly;
+
+    private MappedByteBuffer region;
+    private long regionOffset;
+    private int regionLimit;
+    private int position;
+    private int nextIndex = 0;
+    private long consumed;
+
+    public NdjsonChunker(Path path) throws IOException {
+        this(path, 0, DEFAULT_CHUNK_BYTES);
+    }
+
+    public NdjsonChunker(Path path, long start, int chunkBytes) throws IOException {
+        this(path, start, chunkBytes, false);
+    }
+
+    public NdjsonChunker(Path path, long start, int chunkBytes, boolean completeLinesOnly) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.end = channel.size();
+        this.chunkBytes = chunkBytes;
+        this.completeLinesOnly = completeLinesOnly;
+        this.regionOffset = start;
+        this.consumed = start;
+        if (start > end) {
+            channel.close();
+            throw new IOException(path + " is shorter than offset " + start + " (truncated or replaced?)");
+        }
+    }
+
+    // Returns the next chunk, or null once the file is exhausted
+    @Override
+    public Chunk next() throws IOException {
+        if (region == null || position >= regionLimit) {
+            if (!mapNextRegion())
+                return null;
+        }
+
+        int chunkEnd = regionLimit;
+        if (regionLimit - position > chunkBytes) {
+            int newline = indexOfNewline(region, position + chunkBytes - 1, regionLimit);
+            if (newline >= 0)
+                chunkEnd = newline + 1;
+        }
+
+        Chunk chunk = new Chunk(nextIndex++, regionOffset + position,
+                region.slice(position, chunkEnd - position));
+        position = chunkEnd;
+        consumed = regionOffset + chunkEnd;
+        return chunk;
+    }
+
+    @Override
+    public long position() {
+        return consumed;
+    }
+
+    private boolean mapNextRegion() throws IOException {
+        if (region != null)
+            regionOffset += regionLimit;
+        if (regionOffset >= end)
+            return false;
+
+        long size = Math.min(end - regionOffset, MAX_REGION_BYTES);
+        region = channel.map(FileChannel.MapMode.READ_ONLY, regionOffset, size);
+        regionLimit = (int) size;
+        position = 0;
+
+        // Pull the region end back to the last complete line; the remainder opens the next region
+        if (regionOffset + size < end || completeLinesOnly) {
+            int lastNewline = lastIndexOfNewline(region, regionLimit - 1);
+            if (lastNewline < 0) {
+                if (regionOffset + size < end)
+                    throw new IOException("Line at offset " + regionOffset + " exceeds " + MAX_REGION_BYTES + " bytes");
+                // Only an unterminated line is left
+                region = null;
+                return false;
+            }
+            regionLimit = lastNewline + 1;
+        }
+        return true;
+    }
+
+    private static int indexOfNewline(ByteBuffer buffer, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (buffer.get(i) == '\n')
+                return i;
+        }
+        return -1;
+    }
+
+    private static int lastIndexOfNewline(ByteBuffer buffer, int from) {
+        for (int i = from; i >= 0; i--) {
+            if (buffer.get(i) == '\n')
+                return i;
+        }
+        return -1;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
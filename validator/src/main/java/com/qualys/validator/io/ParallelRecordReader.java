@@ -0,0 +1,489 @@
+package com.qualys.validator.io;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+import com.qualys.validator.metrics.RunMetrics;
+import com.qualys.validator.model.Record;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.function.Predicate;
+
+// Splitter thread per input file -> work-stealing worker pool -> in-order sink.
+// Every chunk from NdjsonChunker (or GzipChunker for compressed input) is parsed by its own
+// JsonParser on a worker, which also runs the caller's per-record stage (e.g. record-local rules).
+// Records are read by RecordDecoder; only those it leaves to databinding go through the
+// ObjectMapper.
+// Results are delivered to the sink on the calling thread strictly in file order, with line
+// numbers assigned there.
+// A filter (e.g. one shard's slice of the order ids) drops records on the workers before the stage
+// runs; their lines are still counted.
+// With a LineCache, a record that ends its line is looked up by its bytes up to the line end (the
+// whole line when it is the only record there) and, if the cache has seen them, taken from the
+// cache instead of being parsed and processed.
+// Reading can start at a byte offset and line number (to resume a checkpointed run) and, in follow
+// mode, keeps polling the file for appended lines after reaching its end until stop() is called.
+public class ParallelRecordReader {
+
+    // Runs on a worker thread, once per parsed record
+    public interface WorkerStage<T> {
+        T process(Record record);
+    }
+
+    // Optional lean alternative to databinding: called on a worker with the parser on a record's
+    // START_OBJECT, it consumes the record, fills entry.record (as far as the sink needs it) and
+    // entry.workerResult, and returns true. Returning false or throwing makes the reader re-read
+    // the record from its first byte as without this stage and process() it instead, so bad input
+    // fails exactly as it does without this stage (positions in parse errors are then counted from
+    // the start of the record).
+    public interface TokenStage<T> extends WorkerStage<T> {
+        boolean scan(JsonParser parser, Entry<T> entry) throws IOException;
+    }
+
+    // Memo of what the workers made of a line, for re-reading input that mostly did not change.
+    // Called on a worker with the bytes data[from, to) from the start of a record to the end of
+    // its line, less trailing whitespace. lookup fills entry.record and entry.workerResult as they
+    // were when the same bytes were stored and returns true; store is called for every record
+    // that was parsed and processed and ends its line. Hits go through the filter like parsed
+    // records do.
+    public interface LineCache<T> {
+        boolean lookup(ByteBuffer data, int from, int to, Entry<T> entry);
+
+        void store(ByteBuffer data, int from, int to, Entry<T> entry);
+    }
+
+    // Runs on the calling thread, in input order
+    public interface Sink<T> {
+        void accept(int lineNumber, Record record, T workerResult);
+
+        void parseError(int lineNumber, String message);
+
+        // After the last record of every chunk, and once per poll while following an idle file:
+        // everything before inputOffset has been delivered, lineNumber being the last line. The
+        // offset counts bytes on disk across all files read so far (compressed bytes for gzip, so
+        // only approximate there); for a single uncompressed file it is the file offset.
+        default void progress(int lineNumber, long inputOffset) {
+        }
+
+        // Before the first record of every input file; firstLine is the number its first line gets
+        default void startFile(Path file, int firstLine) {
+        }
+    }
+
+    // Without one passed in, created for the first record RecordDecoder gives up on
+    private volatile ObjectMapper mapper;
+    private final JsonFactory jsonFactory;
+    private final int threads;
+    // 0 stops at the end of the file
+    private long followPollMillis = 0;
+    private volatile boolean stopped = false;
+    // null unless metrics are collected
+    private RunMetrics metrics;
+    // null keeps every record
+    private Predicate<Record> filter;
+    // null parses every line
+    private LineCache<?> lineCache;
+
+    public ParallelRecordReader(int threads) {
+        this.jsonFactory = new JsonFactory();
+        this.threads = threads;
+    }
+
+    public ParallelRecordReader(ObjectMapper mapper, int threads) {
+        this.mapper = mapper;
+        this.jsonFactory = mapper.getFactory();
+        this.threads = threads;
+    }
+
+    // Tail mode: once the end is reached, look for appended lines every pollMillis. A trailing
+    // line is only read once its newline has been written.
+    public void setFollow(long pollMillis) {
+        this.followPollMillis = pollMillis;
+    }
+
+    // Stops reading at the next chunk boundary; chunks already handed out are still delivered.
+    // Safe to call from any thread.
+    public void stop() {
+        stopped = true;
+    }
+
+    // Times databinding and counts what the splitter, the workers and the calling thread allocate
+    public void setMetrics(RunMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    // Records it rejects are neither processed nor delivered, though they keep their line numbers.
+    // Runs on the workers. Under a TokenStage it sees the record as scanned, after the stage.
+    public void setFilter(Predicate<Record> filter) {
+        this.filter = filter;
+    }
+
+    // Must be typed like the stage passed to read()
+    public void setLineCache(LineCache<?> lineCache) {
+        this.lineCache = lineCache;
+    }
+
+    public <T> void read(Path file, WorkerStage<T> stage, Sink<T> sink) throws IOException {
+        read(List.of(file), 0, 0, stage, sink);
+    }
+
+    // startOffset must be the start of a line; lines are numbered on from startLine
+    public <T> void read(Path file, long startOffset, int startLine, WorkerStage<T> stage, Sink<T> sink)
+            throws IOException {
+        read(List.of(file), startOffset, startLine, stage, sink);
+    }
+
+    // Several files are split and decompressed concurrently (one splitter per file, at most `threads`
+    // at a time) and all their chunks are parsed by one work-stealing pool, so a large file is spread
+    // over every worker instead of holding one up. They are still delivered one after another in
+    // list order, line numbers running on across files as if they were concatenated. Resuming at an
+    // offset and following need a single uncompressed file.
+    public <T> void read(List<Path> files, long startOffset, int startLine, WorkerStage<T> stage, Sink<T> sink)
+            throws IOException {
+        boolean[] gzip = new boolean[files.size()];
+        for (int i = 0; i < files.size(); i++)
+            gzip[i] = InputFiles.isGzip(files.get(i));
+        if ((startOffset > 0 || followPollMillis > 0) && (files.size() != 1 || gzip[0]))
+            throw new IOException("Resuming and following need a single uncompressed input file");
+
+        ForkJoinPool workers = new ForkJoinPool(threads, workerThreads(), null, false);
+        int splitterCount = Math.max(1, Math.min(files.size(), threads));
+        ExecutorService splitters = Executors.newFixedThreadPool(splitterCount, daemonThreads("validator-splitter"));
+        // Bounded so the splitters cannot map, inflate and parse arbitrarily far ahead of the sink
+        int capacity = Math.max(4, threads * 4 / splitterCount);
+        List<Split<T>> splits = new ArrayList<>();
+        for (int i = 0; i < files.size(); i++) {
+            Split<T> split = new Split<>(files.get(i), gzip[i], i == 0 ? startOffset : 0, capacity, stage, workers);
+            splits.add(split);
+            splitters.execute(split);
+        }
+
+        long allocated = metrics != null ? metrics.threadAllocatedBytes() : -1;
+        try {
+            int lineNumber = startLine;
+            // Bytes of the files already delivered, so progress offsets keep growing across files
+            long completed = 0;
+            for (Split<T> split : splits) {
+                sink.startFile(split.file, lineNumber + 1);
+                long endOffset = split.startOffset;
+                Batch<T> batch;
+                while ((batch = split.pending.take()) != split.endOfInput) {
+                    for (Entry<T> entry : batch.entries.get()) {
+                        lineNumber++;
+                        if (entry.skipped)
+                            continue;
+                        if (entry.record != null)
+                            sink.accept(lineNumber, entry.record, entry.workerResult);
+                        else
+                            sink.parseError(lineNumber, entry.parseError);
+                    }
+                    endOffset = batch.endOffset;
+                    sink.progress(lineNumber, completed + endOffset);
+                }
+                if (split.failure != null)
+                    throw split.failure;
+                completed += endOffset;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Reading interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Worker failed", e.getCause());
+        } finally {
+            splitters.shutdownNow();
+            workers.shutdownNow();
+            if (metrics != null)
+                metrics.addAllocatedSince(allocated);
+        }
+    }
+
+    // Cuts one file into chunks and queues their parsing, in order, for the sink
+    private final class Split<T> implements Runnable {
+        final Path file;
+        final boolean gzip;
+        final long startOffset;
+        final BlockingQueue<Batch<T>> pending;
+        final WorkerStage<T> stage;
+        final ExecutorService workers;
+        final Batch<T> endOfInput = new Batch<>(null, -1);
+        // Set before endOfInput is queued
+        IOException failure;
+
+        Split(Path file, boolean gzip, long startOffset, int capacity, WorkerStage<T> stage,
+                ExecutorService workers) {
+            this.file = file;
+            this.gzip = gzip;
+            this.startOffset = startOffset;
+            this.pending = new ArrayBlockingQueue<>(capacity);
+            this.stage = stage;
+            this.workers = workers;
+        }
+
+        @Override
+        public void run() {
+            long allocated = metrics != null ? metrics.threadAllocatedBytes() : -1;
+            try {
+                long offset = startOffset;
+                while (!stopped) {
+                    try (ChunkSource chunks = gzip ? new GzipChunker(file, NdjsonChunker.DEFAULT_CHUNK_BYTES)
+                            : new NdjsonChunker(file, offset, NdjsonChunker.DEFAULT_CHUNK_BYTES, followPollMillis > 0)) {
+                        NdjsonChunker.Chunk chunk;
+                        while (!stopped && (chunk = chunks.next()) != null) {
+                            ByteBuffer data = chunk.data;
+                            offset = chunks.position();
+                            pending.put(new Batch<>(workers.submit(() -> parseChunk(data, stage)), offset));
+                        }
+                    }
+                    if (followPollMillis == 0)
+                        break;
+                    // Lets the sink act on time (e.g. refresh a summary) while no data arrives
+                    pending.put(new Batch<>(CompletableFuture.completedFuture(List.of()), offset));
+                    Thread.sleep(followPollMillis);
+                }
+            } catch (IOException e) {
+                failure = e;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                if (metrics != null)
+                    metrics.addAllocatedSince(allocated);
+                try {
+                    pending.put(endOfInput);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    private <T> List<Entry<T>> parseChunk(ByteBuffer data, WorkerStage<T> stage) throws IOException {
+        long allocated = metrics != null ? metrics.threadAllocatedBytes() : -1;
+        List<Entry<T>> entries = new ArrayList<>();
+        TokenStage<T> tokenStage = stage instanceof TokenStage ? (TokenStage<T>) stage : null;
+        // setLineCache is documented to take a cache typed like the stage, which read() cannot check
+        @SuppressWarnings("unchecked")
+        LineCache<T> cache = (LineCache<T>) lineCache;
+        int base = 0;
+        JsonParser parser = openAt(data, base);
+        // After a cache hit the parser is behind: the next record starts at or after skipTo
+        int skipTo = -1;
+        try {
+            while (true) {
+                int recordStart = skipWhitespace(data,
+                        skipTo >= 0 ? skipTo : base + (int) parser.getCurrentLocation().getByteOffset());
+                if (recordStart >= data.limit())
+                    break;
+                Entry<T> entry = new Entry<>();
+                entries.add(entry);
+                int lineEnd = -1;
+                if (cache != null) {
+                    lineEnd = lineEnd(data, recordStart);
+                    if (cache.lookup(data, recordStart, lineEnd, entry)) {
+                        skipUnless(entry);
+                        skipTo = lineEnd;
+                        continue;
+                    }
+                    if (skipTo >= 0) {
+                        parser.close();
+                        base = recordStart;
+                        parser = openAt(data, base);
+                        skipTo = -1;
+                    }
+                }
+                try {
+                    JsonToken token = parser.nextToken();
+                    if (token == JsonToken.START_OBJECT) {
+                        // A scanned record comes with its result
+                        boolean scanned = tokenStage != null && scan(tokenStage, parser, entry);
+                        if (!scanned && (tokenStage != null || (entry.record = decode(parser)) == null)) {
+                            parser.close();
+                            base = recordStart;
+                            parser = openAt(data, base);
+                            parser.nextToken();
+                            entry.record = bind(parser);
+                        }
+                        if (!skipUnless(entry)) {
+                            if (!scanned)
+                                entry.workerResult = stage.process(entry.record);
+                            if (cache != null && base + parser.getCurrentLocation().getByteOffset() == lineEnd)
+                                cache.store(data, recordStart, lineEnd, entry);
+                        }
+                    } else {
+                        // As before the parallel reader: values that are not objects take a line
+                        // number but are otherwise ignored
+                        parser.skipChildren();
+                        entry.skipped = true;
+                    }
+                } catch (Exception e) {
+                    entry.record = null;
+                    entry.parseError = e.getMessage();
+
+                    // Resynchronise on the line after the broken record with a fresh parser
+                    int next = nextLineStart(data, recordStart);
+                    if (next >= data.limit())
+                        break;
+                    parser.close();
+                    base = next;
+                    parser = openAt(data, base);
+                }
+            }
+        } finally {
+            parser.close();
+            if (metrics != null)
+                metrics.addAllocatedSince(allocated);
+        }
+        return entries;
+    }
+
+    // Marks the entry skipped, dropping what it holds, when the filter rejects its record
+    private <T> boolean skipUnless(Entry<T> entry) {
+        if (filter == null || filter.test(entry.record))
+            return false;
+        entry.skipped = true;
+        entry.record = null;
+        entry.workerResult = null;
+        return true;
+    }
+
+    // null when the record needs databinding
+    private Record decode(JsonParser parser) {
+        boolean timed = metrics != null && RunMetrics.sample();
+        long start = timed ? System.nanoTime() : 0;
+        Record record = new Record();
+        try {
+            if (!RecordDecoder.read(parser, record))
+                return null;
+        } catch (Exception e) {
+            // Reproduced, with the ObjectMapper's own message, when the record is databound
+            return null;
+        }
+        if (timed)
+            metrics.record(RunMetrics.Stage.PARSE, System.nanoTime() - start);
+        return record;
+    }
+
+    private Record bind(JsonParser parser) throws IOException {
+        if (metrics == null || !RunMetrics.sample())
+            return mapper().readValue(parser, Record.class);
+        long start = System.nanoTime();
+        Record record = mapper().readValue(parser, Record.class);
+        metrics.record(RunMetrics.Stage.PARSE, System.nanoTime() - start);
+        return record;
+    }
+
+    private ObjectMapper mapper() {
+        ObjectMapper result = mapper;
+        if (result == null) {
+            synchronized (this) {
+                if (mapper == null)
+                    mapper = new ObjectMapper();
+                result = mapper;
+            }
+        }
+        return result;
+    }
+
+    private static <T> boolean scan(TokenStage<T> stage, JsonParser parser, Entry<T> entry) {
+        try {
+            if (stage.scan(parser, entry))
+                return true;
+        } catch (Exception e) {
+            // Reproduced, with the ObjectMapper's own message, when the record is databound
+        }
+        entry.record = null;
+        entry.workerResult = null;
+        return false;
+    }
+
+    private JsonParser openAt(ByteBuffer data, int offset) throws IOException {
+        return jsonFactory.createParser(new ByteBufferBackedInputStream(data.slice(offset, data.limit() - offset)));
+    }
+
+    private static int skipWhitespace(ByteBuffer data, int from) {
+        int i = from;
+        while (i < data.limit()) {
+            byte b = data.get(i);
+            if (b != ' ' && b != '\n' && b != '\r' && b != '\t')
+                break;
+            i++;
+        }
+        return i;
+    }
+
+    // Just past the last non-whitespace byte of the line holding `from`. Looks for the newline
+    // eight bytes at a time: read little-endian, the lowest flagged byte is the first newline.
+    private static int lineEnd(ByteBuffer data, int from) {
+        boolean swap = data.order() == ByteOrder.BIG_ENDIAN;
+        int end = from;
+        while (end + Long.BYTES <= data.limit()) {
+            long word = data.getLong(end);
+            word = (swap ? Long.reverseBytes(word) : word) ^ 0x0a0a0a0a0a0a0a0aL;
+            long newlines = (word - 0x0101010101010101L) & ~word & 0x8080808080808080L;
+            if (newlines != 0) {
+                end += Long.numberOfTrailingZeros(newlines) >>> 3;
+                break;
+            }
+            end += Long.BYTES;
+        }
+        while (end < data.limit() && data.get(end) != '\n')
+            end++;
+        while (end > from) {
+            byte b = data.get(end - 1);
+            if (b != ' ' && b != '\n' && b != '\r' && b != '\t')
+                break;
+            end--;
+        }
+        return end;
+    }
+
+    private static int nextLineStart(ByteBuffer data, int from) {
+        for (int i = from; i < data.limit(); i++) {
+            if (data.get(i) == '\n')
+                return i + 1;
+        }
+        return data.limit();
+    }
+
+    private static ForkJoinPool.ForkJoinWorkerThreadFactory workerThreads() {
+        return pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("validator-worker-" + thread.getPoolIndex());
+            return thread;
+        };
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static final class Batch<T> {
+        final Future<List<Entry<T>>> entries;
+        // File offset just past the chunk
+        final long endOffset;
+
+        Batch(Future<List<Entry<T>>> entries, long endOffset) {
+            this.entries = entries;
+            this.endOffset = endOffset;
+        }
+    }
+
+    public static class Entry<T> {
+        public Record record;
+        public T workerResult;
+        String parseError;
+        // Rejected by the filter, or not a JSON object
+        boolean skipped;
+    }
+}
@@ -0,0 +1,216 @@
+package com.qualys.validator.io;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.qualys.validator.model.Discount;
+import com.qualys.validator.model.Item;
+import com.qualys.validator.model.Metadata;
+import com.qualys.validator.model.Record;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+// Reads a whole Record (items, discounts and metadata included) straight off a JsonParser, so
+// well-formed input never needs the ObjectMapper: building it and introspecting Record for
+// databinding cost several hundred ms of class loading and reflection before the first record,
+// which dominates a run over a small file.
+// Like LeanRecordScanner it only takes the input as it comes: anything the ObjectMapper would
+// coerce or reject (numbers as strings, nested values in string fields, unknown item properties,
+// nested unknown field values, ...) makes read() give up, so the caller can databind that record
+// instead and both paths give the same Record or the same error. Stateless.
+public final class RecordDecoder {
+
+    private RecordDecoder() {
+    }
+
+    // Parser must be on the record's START_OBJECT; on success it is left on the matching END_OBJECT.
+    // Returns false, with the parser somewhere inside the record, if the record needs databinding.
+    public static boolean read(JsonParser parser, Record into) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            JsonToken value = parser.nextToken();
+            switch (name) {
+                case "order_id":
+                    if (!isText(value))
+                        return false;
+                    into.orderId = text(parser);
+                    break;
+                case "user_id":
+                    if (!isText(value))
+                        return false;
+                    into.userId = text(parser);
+                    break;
+                case "currency":
+                    if (!isText(value))
+                        return false;
+                    into.currency = text(parser);
+                    break;
+                case "created_at":
+                    if (!isText(value))
+                        return false;
+                    into.createdAt = text(parser);
+                    break;
+                case "updated_at":
+                    if (!isText(value))
+                        return false;
+                    into.updatedAt = text(parser);
+                    break;
+                case "total_amount":
+                    if (!isDecimal(value))
+                        return false;
+                    into.totalAmount = decimal(parser);
+                    break;
+                case "items":
+                    // A repeated list replaces the earlier one, as when bound
+                    if (value == JsonToken.VALUE_NULL) {
+                        into.items = null;
+                    } else if (value != JsonToken.START_ARRAY || (into.items = readItems(parser)) == null) {
+                        return false;
+                    }
+                    break;
+                case "discounts":
+                    if (value == JsonToken.VALUE_NULL) {
+                        into.discounts = null;
+                    } else if (value != JsonToken.START_ARRAY || (into.discounts = readDiscounts(parser)) == null) {
+                        return false;
+                    }
+                    break;
+                case "metadata":
+                    if (value == JsonToken.VALUE_NULL) {
+                        into.metadata = null;
+                    } else if (value != JsonToken.START_OBJECT || (into.metadata = readMetadata(parser)) == null) {
+                        return false;
+                    }
+                    break;
+                case "unknownFields":
+                    // Record's any-setter field, which databinding may treat as a property of its own
+                    return false;
+                default:
+                    // Bound as plain JSON values; only scalars are taken here
+                    if (value == JsonToken.START_OBJECT || value == JsonToken.START_ARRAY)
+                        return false;
+                    into.unknownFields.put(name, scalar(parser, value));
+                    break;
+            }
+        }
+        return true;
+    }
+
+    private static List<Item> readItems(JsonParser parser) throws IOException {
+        List<Item> items = new ArrayList<>();
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (parser.currentToken() != JsonToken.START_OBJECT)
+                return null;
+            Item item = new Item();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                JsonToken value = parser.nextToken();
+                switch (name) {
+                    case "sku":
+                        if (!isText(value))
+                            return null;
+                        item.sku = text(parser);
+                        break;
+                    case "qty":
+                        if (value == JsonToken.VALUE_NULL) {
+                            item.qty = null;
+                        } else if (value == JsonToken.VALUE_NUMBER_INT
+                                && parser.getNumberType() == JsonParser.NumberType.INT) {
+                            item.qty = parser.getIntValue();
+                        } else {
+                            return null;
+                        }
+                        break;
+                    case "price":
+                        if (!isDecimal(value))
+                            return null;
+                        item.price = decimal(parser);
+                        break;
+                    default:
+                        return null;
+                }
+            }
+            items.add(item);
+        }
+        return items;
+    }
+
+    private static List<Discount> readDiscounts(JsonParser parser) throws IOException {
+        List<Discount> discounts = new ArrayList<>();
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (parser.currentToken() != JsonToken.START_OBJECT)
+                return null;
+            Discount discount = new Discount();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                JsonToken value = parser.nextToken();
+                switch (name) {
+                    case "type":
+                        if (!isText(value))
+                            return null;
+                        discount.type = text(parser);
+                        break;
+                    case "amount":
+                        if (!isDecimal(value))
+                            return null;
+                        discount.amount = decimal(parser);
+                        break;
+                    default:
+                        return null;
+                }
+            }
+            discounts.add(discount);
+        }
+        return discounts;
+    }
+
+    private static Metadata readMetadata(JsonParser parser) throws IOException {
+        Metadata metadata = new Metadata();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if (!name.equals("channel") || !isText(value))
+                return null;
+            metadata.channel = text(parser);
+        }
+        return metadata;
+    }
+
+    // What databinding makes of a scalar bound to Object: String, Integer/Long/BigInteger, Double,
+    // Boolean or null
+    private static Object scalar(JsonParser parser, JsonToken value) throws IOException {
+        switch (value) {
+            case VALUE_STRING:
+                return parser.getText();
+            case VALUE_NUMBER_INT:
+                return parser.getNumberValue();
+            case VALUE_NUMBER_FLOAT:
+                return parser.getDoubleValue();
+            case VALUE_TRUE:
+                return Boolean.TRUE;
+            case VALUE_FALSE:
+                return Boolean.FALSE;
+            default:
+                return null;
+        }
+    }
+
+    private static boolean isText(JsonToken token) {
+        return token == JsonToken.VALUE_STRING || token == JsonToken.VALUE_NULL;
+    }
+
+    private static String text(JsonParser parser) throws IOException {
+        return parser.currentToken() == JsonToken.VALUE_NULL ? null : parser.getText();
+    }
+
+    private static boolean isDecimal(JsonToken token) {
+        return token == JsonToken.VALUE_NUMBER_INT || token == JsonToken.VALUE_NUMBER_FLOAT
+                || token == JsonToken.VALUE_NULL;
+    }
+
+    private static BigDecimal decimal(JsonParser parser) throws IOException {
+        return parser.currentToken() == JsonToken.VALUE_NULL ? null : parser.getDecimalValue();
+    }
+}
@@ -0,0 +1,59 @@
+package com.qualys.validator.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+// Progress lines for long runs, e.g.
+//   Progress: 4,194,304 records, 1.5 GB of 3.7 GB (40.5%), 412,000 records/s, 148.2 MB/s, ETA 0:00:15
+// Rates are measured over the last interval; the ETA assumes the rest of the input reads at the same
+// rate. Fed from the committer's progress callback, so it costs nothing between updates.
+public class ProgressMeter {
+
+    private static final double MB = 1024.0 * 1024.0;
+
+    private final long intervalNanos;
+    // 0 when the input keeps growing and there is no end to estimate
+    private final long totalBytes;
+    private long lastNanos;
+    private long lastRecords;
+    private long lastOffset;
+    private long nextNanos;
+
+    public ProgressMeter(long intervalSeconds, long totalBytes, int startLine, long startOffset) {
+        this.intervalNanos = TimeUnit.SECONDS.toNanos(intervalSeconds);
+        this.totalBytes = totalBytes;
+        this.lastNanos = System.nanoTime();
+        this.lastRecords = startLine;
+        this.lastOffset = startOffset;
+        this.nextNanos = lastNanos + intervalNanos;
+    }
+
+    // Returns a progress line once per interval, otherwise null
+    public String update(int lineNumber, long inputOffset) {
+        long now = System.nanoTime();
+        if (now - nextNanos < 0)
+            return null;
+        double seconds = (now - lastNanos) / 1e9;
+        double recordsPerSecond = (lineNumber - lastRecords) / seconds;
+        double bytesPerSecond = (inputOffset - lastOffset) / seconds;
+        lastNanos = now;
+        lastRecords = lineNumber;
+        lastOffset = inputOffset;
+        nextNanos = now + intervalNanos;
+
+        StringBuilder line = new StringBuilder(String.format("Progress: %,d records, %s", lineNumber,
+                size(inputOffset)));
+        if (totalBytes > 0) {
+            line.append(String.format(" of %s (%.1f%%)", size(totalBytes), 100.0 * inputOffset / totalBytes));
+        }
+        line.append(String.format(", %,.0f records/s, %.1f MB/s", recordsPerSecond, bytesPerSecond / MB));
+        if (totalBytes > 0 && bytesPerSecond > 0) {
+            long eta = (long) ((totalBytes - inputOffset) / bytesPerSecond);
+            line.append(String.format(", ETA %d:%02d:%02d", eta / 3600, eta / 60 % 60, eta % 60));
+        }
+        return line.toString();
+    }
+
+    private static String size(long bytes) {
+        return bytes >= 1024 * MB ? String.format("%.1f GB", bytes / (1024 * MB)) : String.format("%.1f MB", bytes / MB);
+    }
+}
@@ -0,0 +1,219 @@
+package com.qualys.validator.metrics;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+// Latency, throughput and allocation figures for one run. Stages and rules are timed on one call
+// in SAMPLE_EVERY, picked at random, into a histogram per timer and per thread, so the hot path
+// pays for the clock only on sampled calls and never contends; the histograms are merged when the
+// figures are written. Components hold a null RunMetrics when metrics are off.
+public class RunMetrics {
+
+    public enum Stage {
+        PARSE, COMMIT, EXPORT
+    }
+
+    public static final int SAMPLE_EVERY = 16;
+
+    private static final double[] QUANTILES = { 0.5, 0.9, 0.99, 0.999 };
+    private static final String[] QUANTILE_FIELDS = { "p50", "p90", "p99", "p999" };
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    // Stage timers come first, in Stage order, then one per rule
+    private final List<String> timerNames = new ArrayList<>();
+    private final List<Recorder> recorders = Collections.synchronizedList(new ArrayList<>());
+    private final ThreadLocal<Recorder> recorder = ThreadLocal.withInitial(this::newRecorder);
+    private final LongAdder allocatedBytes = new LongAdder();
+    private final long startNanos = System.nanoTime();
+    private final boolean allocationSupported;
+    private double timeToFirstRecordSeconds = -1;
+
+    public RunMetrics() {
+        for (Stage stage : Stage.values())
+            timerNames.add(stage.name().toLowerCase(Locale.ROOT));
+        boolean supported = false;
+        if (THREADS instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) THREADS;
+            supported = threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled();
+        }
+        this.allocationSupported = supported;
+    }
+
+    // Must be called before anything is recorded
+    public synchronized int ruleTimer(String ruleName) {
+        timerNames.add(ruleName);
+        return timerNames.size() - 1;
+    }
+
+    public static boolean sample() {
+        return ThreadLocalRandom.current().nextInt(SAMPLE_EVERY) == 0;
+    }
+
+    public void record(Stage stage, long nanos) {
+        record(stage.ordinal(), nanos);
+    }
+
+    public void record(int timer, long nanos) {
+        recorder.get().histograms[timer].record(nanos);
+    }
+
+    // Bytes allocated so far by the calling thread, or -1 if the JVM cannot tell
+    public long threadAllocatedBytes() {
+        if (!allocationSupported)
+            return -1;
+        return ((com.sun.management.ThreadMXBean) THREADS).getCurrentThreadAllocatedBytes();
+    }
+
+    // Adds what the calling thread allocated since `since` (a threadAllocatedBytes() value)
+    public void addAllocatedSince(long since) {
+        if (since >= 0)
+            allocatedBytes.add(threadAllocatedBytes() - since);
+    }
+
+    // From JVM start to the first committed record
+    public void setTimeToFirstRecord(double seconds) {
+        this.timeToFirstRecordSeconds = seconds;
+    }
+
+    // Writes <prefix>.json and <prefix>.prom (Prometheus text format); call once reading has finished
+    public void write(String prefix, long records, long invalidRecords, long bytes) throws IOException {
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        List<LatencyHistogram> merged = merge();
+        writeJson(Path.of(prefix + ".json"), merged, records, invalidRecords, bytes, seconds);
+        writePrometheus(Path.of(prefix + ".prom"), merged, records, invalidRecords, bytes, seconds);
+    }
+
+    private Recorder newRecorder() {
+        Recorder created = new Recorder(timerNames.size());
+        recorders.add(created);
+        return created;
+    }
+
+    private List<LatencyHistogram> merge() {
+        List<LatencyHistogram> merged = new ArrayList<>();
+        for (int i = 0; i < timerNames.size(); i++)
+            merged.add(new LatencyHistogram());
+        synchronized (recorders) {
+            for (Recorder each : recorders) {
+                for (int i = 0; i < each.histograms.length; i++)
+                    merged.get(i).add(each.histograms[i]);
+            }
+        }
+        return merged;
+    }
+
+    private void writeJson(Path path, List<LatencyHistogram> merged, long records, long invalidRecords, long bytes,
+            double seconds) throws IOException {
+        try (JsonGenerator json = new JsonFactory().createGenerator(Files.newOutputStream(path), JsonEncoding.UTF8)) {
+            json.useDefaultPrettyPrinter();
+            json.writeStartObject();
+            json.writeNumberField("records", records);
+            json.writeNumberField("invalidRecords", invalidRecords);
+            json.writeNumberField("bytes", bytes);
+            json.writeNumberField("elapsedSeconds", seconds);
+            json.writeNumberField("recordsPerSecond", records / seconds);
+            json.writeNumberField("bytesPerSecond", bytes / seconds);
+            if (timeToFirstRecordSeconds >= 0)
+                json.writeNumberField("timeToFirstRecordSeconds", timeToFirstRecordSeconds);
+            if (allocationSupported) {
+                json.writeNumberField("allocatedBytes", allocatedBytes.sum());
+                json.writeNumberField("allocatedBytesPerRecord", (double) allocatedBytes.sum() / Math.max(1, records));
+            }
+            json.writeNumberField("sampleEvery", SAMPLE_EVERY);
+            json.writeObjectFieldStart("latencyNanos");
+            for (int i = 0; i < merged.size(); i++) {
+                LatencyHistogram histogram = merged.get(i);
+                json.writeObjectFieldStart(timerNames.get(i));
+                json.writeStringField("kind", kind(i));
+                json.writeNumberField("samples", histogram.count());
+                json.writeNumberField("mean", histogram.mean());
+                for (int q = 0; q < QUANTILES.length; q++)
+                    json.writeNumberField(QUANTILE_FIELDS[q], histogram.quantile(QUANTILES[q]));
+                json.writeNumberField("max", histogram.max());
+                json.writeEndObject();
+            }
+            json.writeEndObject();
+            json.writeEndObject();
+        }
+    }
+
+    private void writePrometheus(Path path, List<LatencyHistogram> merged, long records, long invalidRecords,
+            long bytes, double seconds) throws IOException {
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(path))) {
+            gauge(out, "validator_records_total", "counter", "Records read", records);
+            gauge(out, "validator_invalid_records_total", "counter", "Records with at least one error", invalidRecords);
+            gauge(out, "validator_input_bytes_total", "counter", "Input bytes read", bytes);
+            gauge(out, "validator_elapsed_seconds", "gauge", "Wall-clock time of the run", seconds);
+            gauge(out, "validator_records_per_second", "gauge", "Records per second over the run", records / seconds);
+            gauge(out, "validator_bytes_per_second", "gauge", "Input bytes per second over the run", bytes / seconds);
+            if (timeToFirstRecordSeconds >= 0)
+                gauge(out, "validator_time_to_first_record_seconds", "gauge", "JVM start to the first committed record",
+                        timeToFirstRecordSeconds);
+            if (allocationSupported) {
+                gauge(out, "validator_allocated_bytes_total", "counter", "Bytes allocated by reader, worker and"
+                        + " committer threads", allocatedBytes.sum());
+                gauge(out, "validator_allocated_bytes_per_record", "gauge", "Allocated bytes per record",
+                        (double) allocatedBytes.sum() / Math.max(1, records));
+            }
+            summary(out, "validator_stage_latency_seconds", "stage", "Sampled latency per record of each stage",
+                    merged, true);
+            summary(out, "validator_rule_latency_seconds", "rule", "Sampled latency per record of each rule",
+                    merged, false);
+        }
+    }
+
+    private static void gauge(PrintWriter out, String name, String type, String help, double value) {
+        out.println("# HELP " + name + " " + help);
+        out.println("# TYPE " + name + " " + type);
+        out.println(name + " " + number(value));
+    }
+
+    private void summary(PrintWriter out, String name, String label, String help, List<LatencyHistogram> merged,
+            boolean stages) {
+        out.println("# HELP " + name + " " + help + " (one call in " + SAMPLE_EVERY + ")");
+        out.println("# TYPE " + name + " summary");
+        for (int i = 0; i < merged.size(); i++) {
+            if ((i < Stage.values().length) != stages)
+                continue;
+            LatencyHistogram histogram = merged.get(i);
+            String labels = label + "=\"" + timerNames.get(i) + "\"";
+            for (double q : QUANTILES)
+                out.println(name + "{" + labels + ",quantile=\"" + q + "\"} " + number(histogram.quantile(q) / 1e9));
+            out.println(name + "_sum{" + labels + "} " + number(histogram.sum() / 1e9));
+            out.println(name + "_count{" + labels + "} " + histogram.count());
+        }
+    }
+
+    private String kind(int timer) {
+        return timer < Stage.values().length ? "stage" : "rule";
+    }
+
+    private static String number(double value) {
+        return value == Math.rint(value) && Math.abs(value) < 1e15 ? String.valueOf((long) value)
+                : String.valueOf(value);
+    }
+
+    private static final class Recorder {
+        final LatencyHistogram[] histograms;
+
+        Recorder(int timers) {
+            histograms = new LatencyHistogram[timers];
+            for (int i = 0; i < timers; i++)
+                histograms[i] = new LatencyHistogram();
+        }
+    }
+}
@@ -0,0 +1,383 @@
+package com.qualys.validator.report;
+
+import com.qualys.validator.engine.ErrorCode;
+import com.qualys.validator.engine.ErrorLog;
+import com.qualys.validator.engine.ErrorLogReader;
+import com.qualys.validator.engine.ValidationContext;
+import com.qualys.validator.engine.ValidationError;
+import com.qualys.validator.engine.ValueProfile;
+import com.qualys.validator.util.QuantileSketch;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+// Streams the dashboard and its per-category detail pages straight to disk.
+// The dashboard holds KPIs, charts and per-code counts with sample lines; the full error list is split
+// into <report>_files/<CATEGORY>-<n>.html pages of PAGE_SIZE rows read back from the ErrorLog, so
+// memory is bounded by one page and generation time by MAX_PAGES_PER_CATEGORY, not the error count.
+public class HtmlReportWriter {
+
+    // Matches the ErrorLog index stride, so every page starts exactly at an indexed offset
+    public static final int PAGE_SIZE = ErrorLog.INDEX_STRIDE;
+    public static final int MAX_PAGES_PER_CATEGORY = 200;
+    private static final String STYLESHEET = "report.css";
+
+    private final ValidationContext context;
+
+    public HtmlReportWriter(ValidationContext context) {
+        this.context = context;
+    }
+
+    public void write(Path reportPath) throws IOException {
+        String baseName = reportPath.getFileName().toString().replaceFirst("\\.html?$", "");
+        Path pagesDir = reportPath.resolveSibling(baseName + "_files");
+        Files.createDirectories(pagesDir);
+
+        try (Writer out = open(pagesDir.resolve(STYLESHEET))) {
+            writeStylesheet(out);
+        }
+
+        ErrorLogReader log = context.getErrorLog() != null ? new ErrorLogReader(context.getErrorLog().getPath()) : null;
+        String pagesLink = pagesDir.getFileName().toString();
+        try (Writer out = open(reportPath)) {
+            writeDashboard(out, pagesLink, log != null);
+        }
+
+        if (log != null) {
+            for (ValidationError.Category cat : ValidationError.Category.values()) {
+                int pages = pageCount(context.getCategoryCount(cat));
+                for (int page = 1; page <= pages; page++) {
+                    try (Writer out = open(pagesDir.resolve(pageFile(cat, page)))) {
+                        writeDetailPage(out, log, cat, page, pages, "../" + reportPath.getFileName());
+                    }
+                }
+            }
+        }
+    }
+
+    private static Writer open(Path path) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(path.toFile()), StandardCharsets.UTF_8),
+                1 << 16);
+    }
+
+    private static int pageCount(long errors) {
+        return (int) Math.min(MAX_PAGES_PER_CATEGORY, (errors + PAGE_SIZE - 1) / PAGE_SIZE);
+    }
+
+    private static String pageFile(ValidationError.Category category, int page) {
+        return category.name() + "-" + page + ".html";
+    }
+
+    private void writeHead(Writer out, String title, String stylesheet) throws IOException {
+        out.write("<!DOCTYPE html><html lang='en'><head><meta charset='UTF-8'>");
+        out.write(
+                "<meta http-equiv=\"Content-Security-Policy\" content=\"script-src 'unsafe-inline' https://cdn.jsdelivr.net;\">");
+        out.write("<title>" + title + "</title>");
+        out.write("<link rel='stylesheet' href='" + stylesheet + "'>");
+    }
+
+    private void writeStylesheet(Writer out) throws IOException {
+        out.write(
+                ":root { --primary: #2c3e50; --secondary: #34495e; --accent: #3498db; --bg: #f4f6f9; --card-bg: #ffffff; --text: #333; --border: #e0e0e0; }");
+        out.write(
+                "body { font-family: 'Segoe UI', Roboto, Helvetica, Arial, sans-serif; background: var(--bg); color: var(--text); margin: 0; padding: 0; line-height: 1.6; }");
+        out.write(".container { max-width: 1400px; margin: 0 auto; padding: 20px; }");
+        out.write(
+                "header { background: var(--primary); color: white; padding: 1rem 0; box-shadow: 0 2px 5px rgba(0,0,0,0.1); margin-bottom: 2rem; }");
+        out.write(
+                "header .container { display: flex; justify-content: space-between; align-items: center; padding: 0 20px; }");
+        out.write("h1 { margin: 0; font-size: 1.5rem; }");
+        out.write(".timestamp { font-size: 0.9rem; opacity: 0.8; }");
+
+        // KPI Cards
+        out.write(
+                ".kpi-grid { display: grid; grid-template-columns: repeat(auto-fit, minmax(200px, 1fr)); gap: 15px; margin-bottom: 2rem; }");
+        out.write(
+                ".card { background: var(--card-bg); border-radius: 8px; padding: 20px; box-shadow: 0 2px 4px rgba(0,0,0,0.05); border-left: 4px solid var(--accent); }");
+        out.write(
+                ".card h3 { margin: 0 0 10px 0; font-size: 0.85rem; color: #7f8c8d; text-transform: uppercase; letter-spacing: 0.5px; }");
+        out.write(".card .value { font-size: 1.8rem; font-weight: 700; color: var(--primary); }");
+        out.write(
+                ".card.danger { border-left-color: #e74c3c; } .card.success { border-left-color: #27ae60; } .card.warning { border-left-color: #f39c12; }");
+
+        // Charts Section
+        out.write(
+                ".charts-row { display: grid; grid-template-columns: repeat(auto-fit, minmax(400px, 1fr)); gap: 20px; margin-bottom: 2rem; }");
+        out.write(
+                ".chart-container { background: var(--card-bg); padding: 20px; border-radius: 8px; box-shadow: 0 2px 4px rgba(0,0,0,0.05); position: relative; height: 300px; }");
+        out.write(
+                ".chart-container h3 { margin-top: 0; margin-bottom: 15px; font-size: 1rem; border-bottom: 1px solid var(--border); padding-bottom: 10px; }");
+
+        // Risk Insights
+        out.write(
+                ".insights { background: #fff3cd; border: 1px solid #ffeeba; color: #856404; padding: 15px; border-radius: 8px; margin-bottom: 2rem; }");
+        out.write(
+                ".insights h3 { margin-top: 0; font-size: 1.1rem; display: flex; align-items: center; gap: 10px; }");
+        out.write(".insights ul { margin: 10px 0 0 0; padding-left: 20px; }");
+
+        // Detailed Sections
+        out.write(
+                "details { background: var(--card-bg); margin-bottom: 15px; border-radius: 8px; box-shadow: 0 1px 3px rgba(0,0,0,0.1); overflow: hidden; }");
+        out.write(
+                "summary { padding: 15px 20px; cursor: pointer; font-weight: 600; display: flex; justify-content: space-between; align-items: center; background: #f8f9fa; transition: background 0.2s; }");
+        out.write("summary:hover { background: #e9ecef; }");
+        out.write("summary::-webkit-details-marker { display: none; }");
+        out.write(
+                ".badge { padding: 4px 10px; border-radius: 20px; font-size: 0.75rem; color: white; min-width: 25px; text-align: center; }");
+        out.write(
+                ".badge.high { background: #e74c3c; } .badge.medium { background: #f39c12; } .badge.low { background: #3498db; }");
+
+        // Tables
+        out.write(".table-wrapper { overflow-x: auto; padding: 0; }");
+        out.write("table { width: 100%; border-collapse: collapse; font-size: 0.9rem; }");
+        out.write("th, td { padding: 12px 20px; text-align: left; border-bottom: 1px solid var(--border); }");
+        out.write("th { background: #f8f9fa; color: #495057; font-weight: 600; position: sticky; top: 0; }");
+        out.write("tr:last-child td { border-bottom: none; }");
+        out.write("tr:hover { background-color: #f8f9fa; }");
+
+        out.write(
+                "footer { text-align: center; padding: 2rem; color: #7f8c8d; font-size: 0.85rem; margin-top: 2rem; border-top: 1px solid var(--border); }");
+        out.write(".pager { padding: 15px 20px; display: flex; flex-wrap: wrap; gap: 6px; align-items: center; }");
+        out.write(".pager a { padding: 2px 8px; border: 1px solid var(--border); border-radius: 4px; text-decoration: none; color: var(--accent); }");
+        out.write(".pager .current { font-weight: 700; }");
+    }
+
+    private void writeDashboard(Writer out, String pagesLink, boolean paged) throws IOException {
+        writeHead(out, "Validation Report Dashboard", pagesLink + "/" + STYLESHEET);
+        out.write("<script src=\"https://cdn.jsdelivr.net/npm/chart.js\"></script>");
+        out.write("</head><body>");
+
+        // Header
+        out.write("<header><div class='container'><h1>Validation Dashboard</h1><span class='timestamp'>Generated: "
+                + java.time.LocalDateTime.now() + "</span></div></header>");
+
+        out.write("<div class='container'>");
+
+        // Calculate Scores
+        long total = context.getTotalRecords();
+        long valid = context.getValidRecords();
+        long invalid = context.getInvalidRecords();
+        double qualityScore = total > 0 ? (double) valid / total * 100 : 0;
+
+        long high = context.getSeverityCount(ValidationError.Severity.HIGH);
+        long medium = context.getSeverityCount(ValidationError.Severity.MEDIUM);
+        long low = context.getSeverityCount(ValidationError.Severity.LOW);
+
+        // Heuristic Security Score (100 - weighted penalty)
+        double penalty = (high * 5.0 + medium * 2.0 + low) / (total > 0 ? total : 1) * 10;
+        double securityScore = Math.max(0, 100 - penalty);
+
+        // Executive Summary (KPIs)
+        out.write("<div class='kpi-grid'>");
+        out.write(kpiCard("Total Records", String.valueOf(total), ""));
+        out.write(kpiCard("Valid Records", String.valueOf(valid), "success"));
+        out.write(kpiCard("Invalid Records", String.valueOf(invalid), invalid > 0 ? "danger" : "success"));
+        out.write(kpiCard("Quality Score", String.format("%.1f%%", qualityScore),
+                qualityScore > 90 ? "success" : (qualityScore > 70 ? "warning" : "danger")));
+        out.write(kpiCard("Security Score", String.format("%.1f", securityScore),
+                securityScore > 90 ? "success" : "warning"));
+        ValueProfile profile = context.getValueProfile();
+        // HyperLogLog estimates, about 2% off
+        out.write(kpiCard("Distinct Users", "~" + profile.distinctUsers(), ""));
+        out.write(kpiCard("Distinct SKUs", "~" + profile.distinctSkus(), ""));
+        out.write("</div>");
+
+        // Risk Insights
+        out.write(generateInsights(context, qualityScore, securityScore));
+
+        // Charts Row
+        out.write("<div class='charts-row'>");
+        out.write("<div class='chart-container'><h3>Category Distribution</h3><canvas id='catChart'></canvas></div>");
+        out.write("<div class='chart-container'><h3>Severity Breakdown</h3><canvas id='sevChart'></canvas></div>");
+        out.write("</div>");
+
+        // Detailed Breakdown
+        out.write("<h2>Detailed Diagnostics</h2>");
+        for (ValidationError.Category cat : ValidationError.Category.values()) {
+            long count = context.getCategoryCount(cat);
+
+            out.write("<details " + (count > 0 ? "open" : "") + ">");
+            out.write("<summary>" + cat + " Issues");
+            out.write("<span class='badge " + (count > 0 ? "high" : "low") + "'>" + count + "</span>");
+            out.write("</summary>");
+
+            if (count > 0) {
+                out.write("<div class='table-wrapper'><table><thead><tr><th>Code</th><th>Severity</th><th>Issue</th>"
+                        + "<th>Count</th><th>Sample Lines</th></tr></thead><tbody>");
+                for (ErrorCode code : ErrorCode.values()) {
+                    long codeCount = context.getCodeCount(code);
+                    if (code.getCategory() != cat || codeCount == 0)
+                        continue;
+                    out.write("<tr><td>" + code + "</td><td>" + code.getSeverity() + "</td><td>"
+                            + escapeHtml(code.getDescription()) + "</td><td>" + codeCount + "</td><td>");
+                    int[] lines = context.getSampleLines(code);
+                    for (int i = 0; i < lines.length; i++) {
+                        out.write((i > 0 ? ", " : "") + lines[i]);
+                    }
+                    if (codeCount > lines.length)
+                        out.write(", &hellip;");
+                    out.write("</td></tr>");
+                }
+                out.write("</tbody></table></div>");
+                if (paged)
+                    writePageLinks(out, cat, count, pagesLink + "/");
+            } else {
+                out.write("<div style='padding:20px;color:#7f8c8d;'>No issues detected in this category.</div>");
+            }
+            out.write("</details>");
+        }
+
+        writeDistributions(out, profile);
+
+        out.write("<footer>Qualys Validator 2.0 &bull; Confidential &bull; Generated Automatically</footer>");
+
+        // JS for Charts
+        out.write("<script>");
+        out.write("const ctxCat = document.getElementById('catChart').getContext('2d');");
+        out.write("new Chart(ctxCat, { type: 'doughnut', data: { labels: [");
+        for (ValidationError.Category c : ValidationError.Category.values())
+            out.write("'" + c + "',");
+        out.write("], datasets: [{ data: [");
+        for (ValidationError.Category c : ValidationError.Category.values())
+            out.write(context.getCategoryCount(c) + ",");
+        out.write(
+                "], backgroundColor: ['#3498db', '#e74c3c', '#f1c40f', '#9b59b6', '#2ecc71'] }] }, options: { maintainAspectRatio: false } });");
+
+        out.write("const ctxSev = document.getElementById('sevChart').getContext('2d');");
+        out.write(
+                "new Chart(ctxSev, { type: 'bar', data: { labels: ['High', 'Medium', 'Low'], datasets: [{ label: 'Count', data: [");
+        out.write(high + "," + medium + "," + low);
+        out.write(
+                "], backgroundColor: ['#e74c3c', '#f39c12', '#3498db'] }] }, options: { maintainAspectRatio: false, scales: { y: { beginAtZero: true } } } });");
+        out.write("</script>");
+
+        out.write("</div></body></html>");
+        out.write(System.lineSeparator());
+    }
+
+    private void writePageLinks(Writer out, ValidationError.Category cat, long count, String prefix)
+            throws IOException {
+        int pages = pageCount(count);
+        out.write("<div class='pager'>All " + count + " issues, " + PAGE_SIZE + " per page:");
+        for (int page = 1; page <= pages; page++) {
+            out.write(" <a href='" + prefix + pageFile(cat, page) + "'>" + page + "</a>");
+        }
+        long shown = (long) pages * PAGE_SIZE;
+        if (count > shown) {
+            out.write(" <i>(" + (count - shown) + " more in "
+                    + escapeHtml(context.getErrorLog().getPath().getFileName().toString()) + ")</i>");
+        }
+        out.write("</div>");
+    }
+
+    private void writeDetailPage(Writer out, ErrorLogReader log, ValidationError.Category cat, int page, int pages,
+            String dashboard) throws IOException {
+        writeHead(out, cat + " Issues - Page " + page, STYLESHEET);
+        out.write("</head><body>");
+        out.write("<header><div class='container'><h1>" + cat + " Issues</h1><span class='timestamp'>Page " + page
+                + " of " + pages + "</span></div></header>");
+        out.write("<div class='container'>");
+        writePager(out, cat, page, pages, dashboard);
+
+        out.write("<div class='table-wrapper'><table><thead><tr><th>Line</th><th>Severity</th><th>Message</th></tr>"
+                + "</thead><tbody>");
+        log.read(cat, (long) (page - 1) * PAGE_SIZE, PAGE_SIZE, entry -> out.write("<tr><td>" + entry.lineNumber
+                + "</td><td>" + entry.error.getSeverity() + "</td><td>" + escapeHtml(entry.error.getMessage())
+                + "</td></tr>"));
+        out.write("</tbody></table></div>");
+
+        writePager(out, cat, page, pages, dashboard);
+        out.write("</div></body></html>");
+        out.write(System.lineSeparator());
+    }
+
+    private void writePager(Writer out, ValidationError.Category cat, int page, int pages, String dashboard)
+            throws IOException {
+        out.write("<div class='pager'><a href='" + dashboard + "'>Dashboard</a>");
+        if (page > 1)
+            out.write("<a href='" + pageFile(cat, page - 1) + "'>&laquo; Prev</a>");
+        out.write("<span class='current'>" + page + " / " + pages + "</span>");
+        if (page < pages)
+            out.write("<a href='" + pageFile(cat, page + 1) + "'>Next &raquo;</a>");
+        out.write("</div>");
+    }
+
+    // Median and tail of each metric per currency and channel, from the profile's sketches
+    private void writeDistributions(Writer out, ValueProfile profile) throws IOException {
+        List<ValueProfile.Segment> segments = profile.segments();
+        if (segments.isEmpty())
+            return;
+        String quantile = profile.flagsOutliers()
+                ? "p" + BigDecimal.valueOf(profile.getQuantile()).movePointRight(2).stripTrailingZeros().toPlainString()
+                : null;
+        out.write("<h2>Value Distributions</h2>");
+        out.write("<details open><summary>Per currency / channel");
+        out.write("<span class='badge low'>" + segments.size() + "</span></summary>");
+        out.write("<div class='table-wrapper'><table><thead><tr><th>Segment</th><th>Orders</th>");
+        for (ValueProfile.Metric metric : ValueProfile.Metric.values()) {
+            String name = metric.name().toLowerCase();
+            out.write("<th>" + name + " p50</th><th>" + name + " p99</th>");
+            if (quantile != null)
+                out.write("<th>" + name + " " + quantile + "</th>");
+        }
+        out.write("</tr></thead><tbody>");
+        for (ValueProfile.Segment segment : segments) {
+            out.write("<tr><td>" + escapeHtml(segment.getKey()) + "</td><td>"
+                    + segment.get(ValueProfile.Metric.TOTAL).count() + "</td>");
+            for (ValueProfile.Metric metric : ValueProfile.Metric.values()) {
+                QuantileSketch sketch = segment.get(metric);
+                out.write(quantileCell(metric, sketch, 0.5) + quantileCell(metric, sketch, 0.99));
+                if (quantile != null)
+                    out.write(quantileCell(metric, sketch, profile.getQuantile()));
+            }
+            out.write("</tr>");
+        }
+        out.write("</tbody></table></div></details>");
+    }
+
+    private static String quantileCell(ValueProfile.Metric metric, QuantileSketch sketch, double q) {
+        return "<td>" + (sketch.count() > 0 ? ValueProfile.format(metric, sketch.quantile(q)) : "&ndash;") + "</td>";
+    }
+
+    private String kpiCard(String title, String value, String cls) {
+        return "<div class='card " + cls + "'><h3>" + title + "</h3><div class='value'>" + value + "</div></div>";
+    }
+
+    private String generateInsights(ValidationContext ctx, double qualScore, double secScore) {
+        if (qualScore > 99 && secScore > 90)
+            return "";
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("<div class='insights'><h3>&#9888; Automated Risk Insights</h3><ul>");
+
+        if (qualScore < 80)
+            sb.append(
+                    "<li><b>High Failure Rate:</b> More than 20% of records failed validation. Investigate data ingestion source.</li>");
+        if (secScore < 70)
+            sb.append(
+                    "<li><b>Security Alert:</b> Significant security risks detected. Check for injection patterns or high-risk currencies.</li>");
+
+        long finErr = ctx.getCategoryCount(ValidationError.Category.FINANCIAL);
+        if (finErr > 10)
+            sb.append("<li><b>Financial Integrity:</b> ").append(finErr)
+                    .append(" financial discrepancies detected. Review calculation logic.</li>");
+
+        long schemaErr = ctx.getCategoryCount(ValidationError.Category.SCHEMA);
+        if (schemaErr > 0)
+            sb.append("<li><b>Schema Drift:</b> Unexpected fields or missing mandatory data detected.</li>");
+
+        sb.append("</ul></div>");
+        return sb.toString();
+    }
+
+    private String escapeHtml(String s) {
+        if (s == null)
+            return "";
+        return s.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;").replace("'",
+                "&#39;");
+    }
+}
@@ -2,16 +2,41 @@ package com.qualys.validator.rules;
 
 import com.qualys.validator.engine.*;
 import com.qualys.validator.model.Record;
+import com.qualys.validator.util.Iso8601;
+
+import java.util.EnumSet;
+import java.util.Set;
 
 public class CrossRecordRule implements ValidationRule {
 
     @Override
     public void validate(Record record, ValidationContext context, ValidationResult result) {
         if (record.orderId != null) {
-            if (!context.getSeenOrderIds().add(record.orderId)) {
-                result.addError(new ValidationError("Duplicate Order ID detected: " + record.orderId,
-                        ValidationError.Severity.HIGH, ValidationError.Category.BUSINESS));
+            DuplicateDetector detector = context.getDuplicateDetector();
+            long createdAt = detector.usesTimestamps() && record.createdAt != null
+                    ? Iso8601.epochSecond(record.createdAt)
+                    : DuplicateDetector.NO_TIMESTAMP;
+
+            switch (detector.check(record.orderId, createdAt)) {
+                case DUPLICATE:
+                    result.addError(ErrorCode.DUPLICATE_ORDER_ID, record.orderId);
+                    break;
+                case POSSIBLE_DUPLICATE:
+                    result.addError(ErrorCode.POSSIBLE_DUPLICATE_ORDER_ID, record.orderId);
+                    break;
+                default:
+                    break;
             }
         }
     }
+
+    @Override
+    public boolean requiresInputOrder() {
+        return true;
+    }
+
+    @Override
+    public Set<ValidationError.Category> getCategories() {
+        return EnumSet.of(ValidationError.Category.BUSINESS);
+    }
 }
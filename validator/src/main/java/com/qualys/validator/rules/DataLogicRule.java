@@ -2,52 +2,56 @@ package com.qualys.validator.rules;
 
 import com.qualys.validator.engine.*;
 import com.qualys.validator.model.Record;
+import com.qualys.validator.util.FutureCutoff;
+import com.qualys.validator.util.IdScanner;
+import com.qualys.validator.util.Iso8601;
 
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
-import java.time.format.DateTimeParseException;
+import java.util.EnumSet;
 import java.util.Set;
 
 public class DataLogicRule implements ValidationRule {
 
     private static final Set<String> ALLOWED_CURRENCIES = Set.of("USD", "EUR", "INR");
+    private final FutureCutoff futureCutoff = new FutureCutoff();
 
     @Override
     public void validate(Record record, ValidationContext context, ValidationResult result) {
         // IDs
-        if (record.orderId != null && !record.orderId.matches("O-\\d+")) {
-            addError(result, "Invalid order_id format", ValidationError.Category.SCHEMA);
+        if (record.orderId != null && !IdScanner.matches(record.orderId, 'O')) {
+            result.addError(ErrorCode.INVALID_ORDER_ID_FORMAT);
         }
-        if (record.userId != null && !record.userId.matches("U-\\d+")) {
-            addError(result, "Invalid user_id format", ValidationError.Category.SCHEMA);
+        if (record.userId != null && !IdScanner.matches(record.userId, 'U')) {
+            result.addError(ErrorCode.INVALID_USER_ID_FORMAT);
         }
 
         // Currency
         if (record.currency != null) {
             if (!ALLOWED_CURRENCIES.contains(record.currency)) {
-                addError(result, "Invalid currency: " + record.currency, ValidationError.Category.BUSINESS);
+                result.addError(ErrorCode.INVALID_CURRENCY, record.currency);
             }
         }
 
         // Timestamps
         if (record.createdAt != null && record.updatedAt != null) {
-            try {
-                LocalDateTime created = LocalDateTime.parse(record.createdAt, DateTimeFormatter.ISO_DATE_TIME);
-                LocalDateTime updated = LocalDateTime.parse(record.updatedAt, DateTimeFormatter.ISO_DATE_TIME);
-
-                if (updated.isBefore(created)) {
-                    addError(result, "updated_at before created_at", ValidationError.Category.BUSINESS);
-                }
-                if (created.isAfter(LocalDateTime.now().plusDays(1))) {
-                    addError(result, "created_at in future", ValidationError.Category.BUSINESS);
-                }
-            } catch (DateTimeParseException e) {
-                addError(result, "Malformed timestamp format", ValidationError.Category.SCHEMA);
+            long created = Iso8601.epochSecond(record.createdAt);
+            long updated = Iso8601.epochSecond(record.updatedAt);
+
+            if (created == Iso8601.INVALID || updated == Iso8601.INVALID) {
+                result.addError(ErrorCode.MALFORMED_TIMESTAMP);
+                return;
+            }
+            if (updated < created || (updated == created
+                    && Iso8601.nanoOfSecond(record.updatedAt) < Iso8601.nanoOfSecond(record.createdAt))) {
+                result.addError(ErrorCode.UPDATED_BEFORE_CREATED);
+            }
+            if (futureCutoff.isAfter(created, record.createdAt)) {
+                result.addError(ErrorCode.CREATED_IN_FUTURE);
             }
         }
     }
 
-    private void addError(ValidationResult result, String msg, ValidationError.Category category) {
-        result.addError(new ValidationError(msg, ValidationError.Severity.MEDIUM, category));
+    @Override
+    public Set<ValidationError.Category> getCategories() {
+        return EnumSet.of(ValidationError.Category.SCHEMA, ValidationError.Category.BUSINESS);
     }
 }
@@ -1,68 +1,213 @@
 package com.qualys.validator.rules;
 
 import com.qualys.validator.engine.*;
+import com.qualys.validator.io.LeanRecordScanner;
 import com.qualys.validator.model.Discount;
 import com.qualys.validator.model.Item;
 import com.qualys.validator.model.Record;
+import com.qualys.validator.util.Cents;
 
 import java.math.BigDecimal;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
 
 public class FinancialRule implements ValidationRule {
 
+    private static final BigDecimal PRICE_OUTLIER = new BigDecimal("10000000");
+    private static final BigDecimal TOTAL_TOLERANCE = new BigDecimal("0.01");
+
+    private final ThreadLocal<Totals> workerTotals = ThreadLocal.withInitial(Totals::new);
+
     @Override
     public void validate(Record record, ValidationContext context, ValidationResult result) {
         if (record.items == null)
             return; // Handled by SchemaRule
 
-        BigDecimal itemsTotal = BigDecimal.ZERO;
+        Totals totals = workerTotals.get();
+        totals.reset();
         for (Item item : record.items) {
-            if (item.price == null || item.qty == null)
+            if (item == null || item.price == null || item.qty == null)
                 continue;
+            totals.addItem(item.qty, item.price, result);
+        }
+
+        if (record.discounts != null) {
+            for (Discount discount : record.discounts) {
+                if (discount == null || discount.amount == null)
+                    continue;
+                totals.addDiscount(discount.amount, result);
+            }
+        }
 
+        totals.finish(record.totalAmount, result);
+    }
+
+    @Override
+    public void validate(Record scalars, LeanRecordScanner scanned, ValidationContext context,
+            ValidationResult result) {
+        if (!scanned.hasItems())
+            return;
+        // Items and discounts can arrive in either order on the wire; their errors were kept apart
+        result.addAll(scanned.getItemErrors());
+        result.addAll(scanned.getDiscountErrors());
+        scanned.getTotals().finish(scalars.totalAmount, result);
+    }
+
+    @Override
+    public Set<ValidationError.Category> getCategories() {
+        return EnumSet.of(ValidationError.Category.FINANCIAL);
+    }
+
+    @Override
+    public List<Class<? extends ValidationRule>> getDependencies() {
+        // Needs items present, which SchemaRule reports when they are not
+        return List.of(SchemaRule.class);
+    }
+
+    // Running totals over a record's items and discounts, fed from the bound lists above or, in lean
+    // mode, by LeanRecordScanner as the tokens stream past.
+    // Sums are kept as long cents while every amount has at most 2 decimals and nothing overflows;
+    // the largest scale seen is tracked so the calculated total renders exactly like the BigDecimal
+    // sum would. Otherwise the totals switch to BigDecimal for the rest of the record.
+    public static final class Totals {
+        private static final long PRICE_OUTLIER_CENTS = 1_000_000_000L;
+
+        private boolean inCents = true;
+        private long itemsCents;
+        private long discountsCents;
+        private int itemsScale;
+        private int discountsScale;
+        private BigDecimal itemsTotal;
+        private BigDecimal discountsTotal;
+
+        public void reset() {
+            inCents = true;
+            itemsCents = 0;
+            discountsCents = 0;
+            itemsScale = 0;
+            discountsScale = 0;
+            itemsTotal = null;
+            discountsTotal = null;
+        }
+
+        public void addItem(int qty, BigDecimal price, ValidationResult errors) {
+            long cents = Cents.fromDecimal(price);
+            if (cents != Cents.NONE) {
+                addItem(qty, cents, price.scale(), errors);
+                return;
+            }
+            checkItem(qty, price.signum() < 0, price.compareTo(PRICE_OUTLIER) > 0, errors);
+            switchToDecimal();
+            itemsTotal = itemsTotal.add(price.multiply(BigDecimal.valueOf(qty)));
+        }
+
+        public void addItem(int qty, long priceCents, int priceScale, ValidationResult errors) {
+            checkItem(qty, priceCents < 0, priceCents > PRICE_OUTLIER_CENTS, errors);
+            long lineCents = priceCents * qty;
+            if (inCents && !Cents.multiplyOverflows(priceCents, qty) && !Cents.addOverflows(itemsCents, lineCents)) {
+                itemsCents += lineCents;
+                itemsScale = Math.max(itemsScale, priceScale);
+                return;
+            }
+            switchToDecimal();
+            itemsTotal = itemsTotal.add(Cents.toDecimal(priceCents, priceScale).multiply(BigDecimal.valueOf(qty)));
+        }
+
+        private static void checkItem(int qty, boolean negativePrice, boolean outlierPrice, ValidationResult errors) {
             // Negativity check
-            if (item.qty <= 0)
-                addError(result, "Item qty <= 0", ValidationError.Severity.HIGH);
-            if (item.price.compareTo(BigDecimal.ZERO) < 0)
-                addError(result, "Item price < 0", ValidationError.Severity.HIGH);
+            if (qty <= 0)
+                errors.addError(ErrorCode.ITEM_QTY_NOT_POSITIVE);
+            if (negativePrice)
+                errors.addError(ErrorCode.ITEM_PRICE_NEGATIVE);
 
             // Outlier check
-            if (item.qty > 10000)
-                addError(result, "Qty outlier > 10,000", ValidationError.Severity.MEDIUM);
-            if (item.price.compareTo(new BigDecimal("10000000")) > 0)
-                addError(result, "Price outlier > 10,000,000", ValidationError.Severity.MEDIUM);
+            if (qty > 10000)
+                errors.addError(ErrorCode.QTY_OUTLIER);
+            if (outlierPrice)
+                errors.addError(ErrorCode.PRICE_OUTLIER);
+        }
 
-            itemsTotal = itemsTotal.add(item.price.multiply(BigDecimal.valueOf(item.qty)));
+        public void addDiscount(BigDecimal amount, ValidationResult errors) {
+            long cents = Cents.fromDecimal(amount);
+            if (cents != Cents.NONE) {
+                addDiscount(cents, amount.scale(), errors);
+                return;
+            }
+            if (amount.signum() < 0)
+                errors.addError(ErrorCode.DISCOUNT_NEGATIVE);
+            switchToDecimal();
+            discountsTotal = discountsTotal.add(amount);
         }
 
-        BigDecimal discountsTotal = BigDecimal.ZERO;
-        if (record.discounts != null) {
-            for (Discount discount : record.discounts) {
-                if (discount.amount == null)
-                    continue;
-                if (discount.amount.compareTo(BigDecimal.ZERO) < 0)
-                    addError(result, "Discount amount < 0", ValidationError.Severity.HIGH);
-                discountsTotal = discountsTotal.add(discount.amount);
+        public void addDiscount(long amountCents, int amountScale, ValidationResult errors) {
+            if (amountCents < 0)
+                errors.addError(ErrorCode.DISCOUNT_NEGATIVE);
+            if (inCents && !Cents.addOverflows(discountsCents, amountCents)) {
+                discountsCents += amountCents;
+                discountsScale = Math.max(discountsScale, amountScale);
+                return;
             }
+            switchToDecimal();
+            discountsTotal = discountsTotal.add(Cents.toDecimal(amountCents, amountScale));
         }
 
-        // Integrity Check
-        BigDecimal calculatedTotal = itemsTotal.subtract(discountsTotal);
-        if (record.totalAmount != null) {
-            if (calculatedTotal.subtract(record.totalAmount).abs().compareTo(new BigDecimal("0.01")) > 0) {
-                addError(result, "Calculated " + calculatedTotal + " != Declared " + record.totalAmount,
-                        ValidationError.Severity.HIGH);
+        public void finish(BigDecimal totalAmount, ValidationResult result) {
+            if (inCents && Cents.subtractOverflows(itemsCents, discountsCents))
+                switchToDecimal();
+            if (!inCents) {
+                finishDecimal(totalAmount, result);
+                return;
+            }
+
+            // Integrity Check
+            long calculatedCents = itemsCents - discountsCents;
+            if (totalAmount != null) {
+                long totalCents = Cents.fromDecimal(totalAmount);
+                boolean mismatch;
+                if (totalCents == Cents.NONE || Cents.subtractOverflows(calculatedCents, totalCents))
+                    mismatch = calculatedTotal().subtract(totalAmount).abs().compareTo(TOTAL_TOLERANCE) > 0;
+                else
+                    mismatch = calculatedCents - totalCents > 1 || calculatedCents - totalCents < -1;
+                if (mismatch) {
+                    result.addError(ErrorCode.TOTAL_MISMATCH, calculatedTotal(), totalAmount);
+                }
+                if (totalAmount.signum() < 0) {
+                    result.addError(ErrorCode.NEGATIVE_TOTAL);
+                }
             }
-            if (record.totalAmount.compareTo(BigDecimal.ZERO) < 0) {
-                addError(result, "Negative Total Amount", ValidationError.Severity.HIGH);
+
+            if (discountsCents > itemsCents) {
+                result.addError(ErrorCode.DISCOUNT_EXCEEDS_GROSS);
             }
         }
 
-        if (discountsTotal.compareTo(itemsTotal) > 0) {
-            addError(result, "Discount > Gross Amount", ValidationError.Severity.HIGH);
+        private void finishDecimal(BigDecimal totalAmount, ValidationResult result) {
+            BigDecimal calculatedTotal = itemsTotal.subtract(discountsTotal);
+            if (totalAmount != null) {
+                if (calculatedTotal.subtract(totalAmount).abs().compareTo(TOTAL_TOLERANCE) > 0) {
+                    result.addError(ErrorCode.TOTAL_MISMATCH, calculatedTotal, totalAmount);
+                }
+                if (totalAmount.signum() < 0) {
+                    result.addError(ErrorCode.NEGATIVE_TOTAL);
+                }
+            }
+
+            if (discountsTotal.compareTo(itemsTotal) > 0) {
+                result.addError(ErrorCode.DISCOUNT_EXCEEDS_GROSS);
+            }
         }
-    }
 
-    private void addError(ValidationResult result, String msg, ValidationError.Severity severity) {
-        result.addError(new ValidationError(msg, severity, ValidationError.Category.FINANCIAL));
+        private BigDecimal calculatedTotal() {
+            return Cents.toDecimal(itemsCents - discountsCents, Math.max(itemsScale, discountsScale));
+        }
+
+        private void switchToDecimal() {
+            if (!inCents)
+                return;
+            itemsTotal = Cents.toDecimal(itemsCents, itemsScale);
+            discountsTotal = Cents.toDecimal(discountsCents, discountsScale);
+            inCents = false;
+        }
     }
 }
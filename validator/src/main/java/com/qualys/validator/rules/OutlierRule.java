@@ -0,0 +1,69 @@
+package com.qualys.validator.rules;
+
+import com.qualys.validator.engine.*;
+import com.qualys.validator.model.Item;
+import com.qualys.validator.model.Record;
+import com.qualys.validator.util.Hashing;
+
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+// Feeds the ValueProfile and, when an outlier quantile is set, flags an item price, item qty or
+// total_amount above that quantile of what its currency and channel have seen so far. Unlike
+// FinancialRule's fixed limits this judges a value against its own segment; the first
+// minSamples values of a segment are only learned from. Values are checked before they are
+// recorded, in input order, so results do not depend on the thread count.
+// In lean mode records carry no items, so only total_amount and users are profiled there.
+public class OutlierRule implements ValidationRule {
+
+    @Override
+    public void validate(Record record, ValidationContext context, ValidationResult result) {
+        ValueProfile profile = context.getValueProfile();
+        if (record.userId != null)
+            profile.addUser(Hashing.hash64(record.userId));
+        ValueProfile.Segment segment = profile.segment(record.currency,
+                record.metadata != null ? record.metadata.channel : null);
+
+        if (record.items != null) {
+            for (Item item : record.items) {
+                if (item == null)
+                    continue;
+                if (item.sku != null)
+                    profile.addSku(Hashing.hash64(item.sku));
+                long price = ValueProfile.cents(item.price);
+                if (price > 0)
+                    check(segment, ValueProfile.Metric.PRICE, price, ErrorCode.PRICE_QUANTILE_OUTLIER, result);
+                if (item.qty != null && item.qty > 0)
+                    check(segment, ValueProfile.Metric.QTY, item.qty, ErrorCode.QTY_QUANTILE_OUTLIER, result);
+            }
+        }
+        long total = ValueProfile.cents(record.totalAmount);
+        if (total > 0)
+            check(segment, ValueProfile.Metric.TOTAL, total, ErrorCode.TOTAL_QUANTILE_OUTLIER, result);
+    }
+
+    private static void check(ValueProfile.Segment segment, ValueProfile.Metric metric, long value, ErrorCode code,
+            ValidationResult result) {
+        long threshold = segment.threshold(metric);
+        if (threshold >= 0 && value > threshold)
+            result.addError(code, ValueProfile.format(metric, value), ValueProfile.format(metric, threshold));
+        segment.record(metric, value);
+    }
+
+    @Override
+    public boolean requiresInputOrder() {
+        return true;
+    }
+
+    @Override
+    public Set<ValidationError.Category> getCategories() {
+        return EnumSet.of(ValidationError.Category.FINANCIAL);
+    }
+
+    @Override
+    public List<Class<? extends ValidationRule>> getDependencies() {
+        // Negative and malformed amounts are reported by FinancialRule and not profiled here
+        return List.of(FinancialRule.class);
+    }
+}
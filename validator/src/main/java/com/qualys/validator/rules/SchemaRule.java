@@ -1,41 +1,59 @@
 package com.qualys.validator.rules;
 
 import com.qualys.validator.engine.*;
+import com.qualys.validator.io.LeanRecordScanner;
 import com.qualys.validator.model.Record;
 
-import java.util.Map;
+import java.util.EnumSet;
+import java.util.Set;
 
 public class SchemaRule implements ValidationRule {
 
     @Override
     public void validate(Record record, ValidationContext context, ValidationResult result) {
+        validate(record, record.items != null && !record.items.isEmpty(), result);
+    }
+
+    @Override
+    public void validate(Record scalars, LeanRecordScanner scanned, ValidationContext context,
+            ValidationResult result) {
+        validate(scalars, scanned.getItemCount() > 0, result);
+    }
+
+    private void validate(Record record, boolean hasItems, ValidationResult result) {
         // 1. Mandatory Fields
         if (record.orderId == null)
-            addError(result, "Missing order_id", ValidationError.Severity.HIGH);
+            result.addError(ErrorCode.MISSING_ORDER_ID);
         if (record.userId == null)
-            addError(result, "Missing user_id", ValidationError.Severity.HIGH);
+            result.addError(ErrorCode.MISSING_USER_ID);
         if (record.currency == null)
-            addError(result, "Missing currency", ValidationError.Severity.HIGH);
-        if (record.items == null || record.items.isEmpty())
-            addError(result, "Items missing or empty", ValidationError.Severity.HIGH);
+            result.addError(ErrorCode.MISSING_CURRENCY);
+        if (!hasItems)
+            result.addError(ErrorCode.MISSING_ITEMS);
         if (record.totalAmount == null)
-            addError(result, "Missing total_amount", ValidationError.Severity.HIGH);
+            result.addError(ErrorCode.MISSING_TOTAL_AMOUNT);
         if (record.createdAt == null)
-            addError(result, "Missing created_at", ValidationError.Severity.HIGH);
+            result.addError(ErrorCode.MISSING_CREATED_AT);
         if (record.updatedAt == null)
-            addError(result, "Missing updated_at", ValidationError.Severity.HIGH);
+            result.addError(ErrorCode.MISSING_UPDATED_AT);
         if (record.metadata == null || record.metadata.channel == null)
-            addError(result, "Missing metadata.channel", ValidationError.Severity.MEDIUM);
+            result.addError(ErrorCode.MISSING_CHANNEL);
 
         // 2. Schema Drift / Unknown Fields
         if (record.unknownFields != null && !record.unknownFields.isEmpty()) {
             for (String key : record.unknownFields.keySet()) {
-                addError(result, "Unknown field detected: " + key, ValidationError.Severity.MEDIUM);
+                result.addError(ErrorCode.UNKNOWN_FIELD, key);
             }
         }
     }
 
-    private void addError(ValidationResult result, String msg, ValidationError.Severity severity) {
-        result.addError(new ValidationError(msg, severity, ValidationError.Category.SCHEMA));
+    @Override
+    public Cost getCost() {
+        return Cost.CHEAP;
+    }
+
+    @Override
+    public Set<ValidationError.Category> getCategories() {
+        return EnumSet.of(ValidationError.Category.SCHEMA);
     }
 }
@@ -1,37 +1,146 @@
 package com.qualys.validator.rules;
 
 import com.qualys.validator.engine.*;
+import com.qualys.validator.io.LeanRecordScanner;
+import com.qualys.validator.model.Discount;
+import com.qualys.validator.model.Item;
 import com.qualys.validator.model.Record;
+import com.qualys.validator.util.AhoCorasick;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class SecurityRule implements ValidationRule {
 
     private static final List<String> HIGH_RISK_CURRENCIES = List.of("BTC", "XXX", "AUD", "XMR");
 
+    // Simplified XSS / SQL injection signatures, matched anywhere in a value, ignoring ASCII case
+    public static final List<String> DEFAULT_INJECTION_PATTERNS = List.of("<script>", "javascript:", "DROP TABLE",
+            "UNION SELECT");
+
+    private final AhoCorasick injectionPatterns;
+
+    public SecurityRule() {
+        this(DEFAULT_INJECTION_PATTERNS);
+    }
+
+    public SecurityRule(List<String> injectionPatterns) {
+        this.injectionPatterns = new AhoCorasick(injectionPatterns);
+    }
+
+    // One pattern per line; blank lines and lines starting with '#' are ignored
+    public static List<String> loadInjectionPatterns(Path file) throws IOException {
+        List<String> patterns = new ArrayList<>();
+        for (String line : Files.readAllLines(file)) {
+            String pattern = line.strip();
+            if (!pattern.isEmpty() && !pattern.startsWith("#"))
+                patterns.add(pattern);
+        }
+        if (patterns.isEmpty())
+            throw new IOException("No patterns in " + file);
+        new AhoCorasick(patterns); // rejects non-ASCII patterns before any record is read
+        return patterns;
+    }
+
+    public AhoCorasick getInjectionPatterns() {
+        return injectionPatterns;
+    }
+
     @Override
     public void validate(Record record, ValidationContext context, ValidationResult result) {
-        // High Risk Currency
-        if (record.currency != null && HIGH_RISK_CURRENCIES.contains(record.currency)) {
-            addError(result, "High Risk Currency detected: " + record.currency, ValidationError.Severity.HIGH);
+        validateScalars(record, result);
+
+        if (record.items != null) {
+            for (Item item : record.items) {
+                if (item != null && injectionPatterns.matches(item.sku))
+                    result.addError(ErrorCode.INJECTION_SKU);
+            }
+        }
+        if (record.discounts != null) {
+            for (Discount discount : record.discounts) {
+                if (discount != null && injectionPatterns.matches(discount.type))
+                    result.addError(ErrorCode.INJECTION_DISCOUNT_TYPE);
+            }
         }
+        if (record.unknownFields != null) {
+            for (Map.Entry<String, Object> field : record.unknownFields.entrySet()) {
+                if (injectionPatterns.matches(field.getKey()) || hasInjection(field.getValue()))
+                    result.addError(ErrorCode.INJECTION_UNKNOWN_FIELD, field.getKey());
+            }
+        }
+    }
+
+    @Override
+    public void validate(Record scalars, LeanRecordScanner scanned, ValidationContext context,
+            ValidationResult result) {
+        validateScalars(scalars, result);
+
+        // The scanner ran the same patterns over the strings it did not keep, and over unknown field names
+        for (int i = 0; i < scanned.getSkuInjections(); i++)
+            result.addError(ErrorCode.INJECTION_SKU);
+        for (int i = 0; i < scanned.getDiscountTypeInjections(); i++)
+            result.addError(ErrorCode.INJECTION_DISCOUNT_TYPE);
+        if (scanned.hasUnknownFieldInjections()) {
+            for (String key : scalars.unknownFields.keySet()) {
+                if (scanned.isUnknownFieldInjected(key))
+                    result.addError(ErrorCode.INJECTION_UNKNOWN_FIELD, key);
+            }
+        }
+    }
+
+    @Override
+    public Cost getCost() {
+        return Cost.EXPENSIVE;
+    }
 
-        // Injection checks on strings (Simplified XSS detection)
-        if (hasInjection(record.orderId))
-            addError(result, "Potential Injection in order_id", ValidationError.Severity.HIGH);
-        if (hasInjection(record.userId))
-            addError(result, "Potential Injection in user_id", ValidationError.Severity.HIGH);
-        if (record.metadata != null && hasInjection(record.metadata.channel))
-            addError(result, "Potential Injection in metadata", ValidationError.Severity.HIGH);
+    @Override
+    public Set<ValidationError.Category> getCategories() {
+        return EnumSet.of(ValidationError.Category.SECURITY);
     }
 
-    private boolean hasInjection(String value) {
-        if (value == null)
-            return false;
-        return value.contains("<script>") || value.contains("javascript:") || value.contains("DROP TABLE")
-                || value.contains("UNION SELECT");
+    private void validateScalars(Record record, ValidationResult result) {
+        // High Risk Currency
+        if (record.currency != null && HIGH_RISK_CURRENCIES.contains(record.currency)) {
+            result.addError(ErrorCode.HIGH_RISK_CURRENCY, record.currency);
+        }
+
+        // Injection checks on strings
+        if (injectionPatterns.matches(record.orderId))
+            result.addError(ErrorCode.INJECTION_ORDER_ID);
+        if (injectionPatterns.matches(record.userId))
+            result.addError(ErrorCode.INJECTION_USER_ID);
+        if (injectionPatterns.matches(record.currency))
+            result.addError(ErrorCode.INJECTION_CURRENCY);
+        if (injectionPatterns.matches(record.createdAt))
+            result.addError(ErrorCode.INJECTION_CREATED_AT);
+        if (injectionPatterns.matches(record.updatedAt))
+            result.addError(ErrorCode.INJECTION_UPDATED_AT);
+        if (record.metadata != null && injectionPatterns.matches(record.metadata.channel))
+            result.addError(ErrorCode.INJECTION_METADATA);
     }
 
-    private void addError(ValidationResult result, String msg, ValidationError.Severity severity) {
-        result.addError(new ValidationError(msg, severity, ValidationError.Category.SECURITY));
+    // Unknown fields are bound as plain JSON values: strings, numbers, booleans, maps and lists.
+    // Names inside nested objects are checked like the strings.
+    private boolean hasInjection(Object value) {
+        if (value instanceof String)
+            return injectionPatterns.matches((String) value);
+        if (value instanceof Map) {
+            for (Map.Entry<?, ?> nested : ((Map<?, ?>) value).entrySet()) {
+                if (injectionPatterns.matches((String) nested.getKey()) || hasInjection(nested.getValue()))
+                    return true;
+            }
+        } else if (value instanceof List) {
+            for (Object nested : (List<?>) value) {
+                if (hasInjection(nested))
+                    return true;
+            }
+        }
+        return false;
     }
 }
@@ -0,0 +1,43 @@
+package com.qualys.validator.rules;
+
+import com.qualys.validator.engine.*;
+import com.qualys.validator.model.Record;
+import com.qualys.validator.util.Iso8601;
+
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+// Flags a user's order once they have placed more than the configured number of orders within the
+// velocity window (see UserVelocityIndex), measured on created_at.
+public class VelocityRule implements ValidationRule {
+
+    @Override
+    public void validate(Record record, ValidationContext context, ValidationResult result) {
+        if (record.userId == null || record.createdAt == null)
+            return;
+        long createdAt = Iso8601.epochSecond(record.createdAt);
+        if (createdAt == Iso8601.INVALID)
+            return; // Reported by DataLogicRule
+
+        UserVelocityIndex velocity = context.getUserVelocity();
+        if (velocity.record(record.userId, createdAt))
+            result.addError(ErrorCode.USER_VELOCITY_EXCEEDED, record.userId, velocity.getLimit());
+    }
+
+    @Override
+    public boolean requiresInputOrder() {
+        return true;
+    }
+
+    @Override
+    public Set<ValidationError.Category> getCategories() {
+        return EnumSet.of(ValidationError.Category.BUSINESS);
+    }
+
+    @Override
+    public List<Class<? extends ValidationRule>> getDependencies() {
+        // Unparseable timestamps are reported by DataLogicRule
+        return List.of(DataLogicRule.class);
+    }
+}
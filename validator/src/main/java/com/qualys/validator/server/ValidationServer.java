@@ -0,0 +1,342 @@
+package com.qualys.validator.server;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.qualys.validator.CliOptions;
+import com.qualys.validator.Validator;
+import com.qualys.validator.engine.DuplicateDetector;
+import com.qualys.validator.engine.ErrorCode;
+import com.qualys.validator.engine.OrderIdIndex;
+import com.qualys.validator.engine.UserVelocityIndex;
+import com.qualys.validator.engine.ValidationContext;
+import com.qualys.validator.engine.ValidationResult;
+import com.qualys.validator.engine.ValueProfile;
+import com.qualys.validator.engine.WindowedDuplicateDetector;
+import com.qualys.validator.model.Record;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Long-running validation service on the JDK's HttpServer, so small batches skip JVM startup and
+// run on warm rules and a warm ObjectMapper:
+//   POST /validate[?dedup=request|global]  NDJSON records in, one NDJSON result per record out
+//   GET  /health                           "ok"
+//   GET  /stats                            request and record counts since start
+// Records are read, validated and answered as they stream in. Each request runs on its own
+// (virtual, where the JVM has them) thread; record-local rules run on it directly, and duplicate
+// and velocity checks run against a context of the request's own or, with dedup=global, one
+// shared by all requests, whose commits are serialized. A request's own context starts with its
+// indexes at their smallest and lets them grow with the batch. The global commit lock is a
+// ReentrantLock rather than a monitor, which would pin a virtual thread to its carrier.
+public class ValidationServer {
+
+    private static final int BACKLOG = 256;
+    // Request threads when virtual threads are not available
+    private static final int PLATFORM_THREADS = 256;
+    private static final int STOP_DELAY_SECONDS = 1;
+    // Starting size of a request context's order-id and user indexes
+    private static final int REQUEST_EXPECTED_IDS = 64;
+    private static final int REQUEST_VELOCITY_SLOTS = 64;
+
+    private final CliOptions options;
+    private final Validator validator;
+    private final ValidationContext globalContext;
+    private final ReentrantLock globalLock = new ReentrantLock();
+    private final ObjectReader recordReader = new ObjectMapper().readerFor(Record.class);
+    private final JsonFactory jsonFactory = new JsonFactory();
+    private final long startNanos = System.nanoTime();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder records = new LongAdder();
+    private final LongAdder invalidRecords = new LongAdder();
+    private HttpServer server;
+
+    public ValidationServer(CliOptions options, List<String> injectionPatterns) {
+        this.options = options;
+        this.globalContext = newContext(true);
+        this.validator = new Validator(globalContext, injectionPatterns);
+        validator.setFailFast(options.failFast);
+        validator.setAdaptiveOrder(options.adaptiveOrder);
+    }
+
+    // Serves until the JVM is stopped or stop() is called
+    public void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(options.servePort), BACKLOG);
+        server.createContext("/validate", handler(this::validate));
+        server.createContext("/health", handler(exchange -> sendText(exchange, 200, "ok\n")));
+        server.createContext("/stats", handler(this::stats));
+        String threads = useVirtualThreads(server) ? "virtual threads"
+                : PLATFORM_THREADS + " platform threads (virtual threads need Java 21)";
+        server.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> server.stop(STOP_DELAY_SECONDS)));
+        System.out.println("Serving on port " + getPort() + " with " + threads
+                + ", dedup per " + (options.globalDedup ? "service" : "request"));
+    }
+
+    // The bound port, which differs from options.servePort when that is 0
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public void stop() {
+        server.stop(0);
+    }
+
+    // Java 21's Executors.newVirtualThreadPerTaskExecutor(), looked up reflectively since the build
+    // targets Java 17
+    private static boolean useVirtualThreads(HttpServer server) {
+        try {
+            server.setExecutor((ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor")
+                    .invoke(null));
+            return true;
+        } catch (ReflectiveOperationException e) {
+            server.setExecutor(Executors.newFixedThreadPool(PLATFORM_THREADS, runnable -> {
+                Thread thread = new Thread(runnable, "request");
+                thread.setDaemon(true);
+                return thread;
+            }));
+            return false;
+        }
+    }
+
+    private ValidationContext newContext(boolean global) {
+        DuplicateDetector duplicateDetector = options.dedupWindowSeconds > 0
+                ? new WindowedDuplicateDetector(options.dedupWindowSeconds, options.dedupBloom)
+                : global ? new OrderIdIndex() : new OrderIdIndex(REQUEST_EXPECTED_IDS);
+        UserVelocityIndex userVelocity = global
+                ? new UserVelocityIndex(options.velocityLimit, options.velocityWindowSeconds,
+                        UserVelocityIndex.DEFAULT_MAX_USERS)
+                : new UserVelocityIndex(options.velocityLimit, options.velocityWindowSeconds,
+                        UserVelocityIndex.DEFAULT_MAX_USERS, REQUEST_VELOCITY_SLOTS);
+        return new ValidationContext(duplicateDetector, null, userVelocity,
+                new ValueProfile(options.outlierQuantile, options.outlierMinSamples));
+    }
+
+    private void validate(HttpExchange exchange) throws IOException {
+        if (!exchange.getRequestMethod().equals("POST")) {
+            sendText(exchange, 405, "POST NDJSON records to /validate\n");
+            return;
+        }
+        boolean global = options.globalDedup;
+        String scope = queryParameter(exchange, "dedup");
+        if (scope != null) {
+            try {
+                global = CliOptions.parseDedupScope(scope);
+            } catch (IllegalArgumentException e) {
+                sendText(exchange, 400, "dedup must be request or global\n");
+                return;
+            }
+        }
+        requests.increment();
+        ValidationContext context = global ? globalContext : newContext(false);
+        ValidationResult result = new ValidationResult();
+        long invalid = 0;
+        long parseErrors = 0;
+
+        exchange.getResponseHeaders().set("Content-Type", "application/x-ndjson");
+        exchange.sendResponseHeaders(200, 0);
+        try (InputStream body = exchange.getRequestBody();
+                JsonGenerator out = jsonFactory.createGenerator(exchange.getResponseBody(), JsonEncoding.UTF8)) {
+            out.setRootValueSeparator(null);
+            LineReader lines = new LineReader(body);
+            int lineNumber = 0;
+            int length;
+            while ((length = lines.next()) >= 0) {
+                if (isBlank(lines.line, length))
+                    continue;
+                lineNumber++;
+                Record record;
+                try {
+                    record = recordReader.readValue(lines.line, 0, length);
+                } catch (JsonProcessingException e) {
+                    parseErrors++;
+                    writeParseError(out, lineNumber, e.getOriginalMessage());
+                    continue;
+                }
+                // As in file mode, a record the rules fail on is reported like one that does not parse
+                try {
+                    ValidationResult localErrors = validator.evaluate(record);
+                    if (global) {
+                        globalLock.lock();
+                        try {
+                            validator.commit(globalContext, record, lineNumber, localErrors, result);
+                        } finally {
+                            globalLock.unlock();
+                        }
+                    } else {
+                        validator.commit(context, record, lineNumber, localErrors, result);
+                    }
+                } catch (RuntimeException e) {
+                    parseErrors++;
+                    writeParseError(out, lineNumber, e.getMessage());
+                    continue;
+                }
+                if (result.hasErrors())
+                    invalid++;
+                writeResult(out, record, result);
+            }
+            records.add(lineNumber - parseErrors);
+            invalidRecords.add(invalid);
+            out.writeStartObject();
+            out.writeObjectFieldStart("summary");
+            out.writeNumberField("records", lineNumber - parseErrors);
+            out.writeNumberField("invalid", invalid);
+            out.writeNumberField("parseErrors", parseErrors);
+            out.writeEndObject();
+            out.writeEndObject();
+            out.writeRaw('\n');
+        }
+    }
+
+    private static void writeParseError(JsonGenerator out, int lineNumber, String message) throws IOException {
+        out.writeStartObject();
+        out.writeNumberField("line", lineNumber);
+        out.writeStringField("parseError", message);
+        out.writeEndObject();
+        out.writeRaw('\n');
+    }
+
+    // {"line":3,"order_id":"O-3","valid":false,"errors":[{"code":"TOTAL_MISMATCH","severity":"HIGH",
+    //  "message":"Calculated 10.00 != Declared 12.00"}]}
+    private static void writeResult(JsonGenerator out, Record record, ValidationResult result) throws IOException {
+        out.writeStartObject();
+        out.writeNumberField("line", result.getLineNumber());
+        if (record.orderId != null)
+            out.writeStringField("order_id", record.orderId);
+        out.writeBooleanField("valid", !result.hasErrors());
+        if (result.hasErrors()) {
+            out.writeArrayFieldStart("errors");
+            for (int i = 0; i < result.errorCount(); i++) {
+                ErrorCode code = result.getCode(i);
+                out.writeStartObject();
+                out.writeStringField("code", code.name());
+                out.writeStringField("severity", code.getSeverity().name());
+                out.writeStringField("message", result.getError(i).getMessage());
+                out.writeEndObject();
+            }
+            out.writeEndArray();
+        }
+        out.writeEndObject();
+        out.writeRaw('\n');
+    }
+
+    private void stats(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, 0);
+        try (JsonGenerator out = jsonFactory.createGenerator(exchange.getResponseBody(), JsonEncoding.UTF8)) {
+            out.writeStartObject();
+            out.writeNumberField("uptimeSeconds", (System.nanoTime() - startNanos) / 1_000_000_000L);
+            out.writeNumberField("requests", requests.sum());
+            out.writeNumberField("records", records.sum());
+            out.writeNumberField("invalidRecords", invalidRecords.sum());
+            out.writeStringField("globalOrderIds", globalContext.getDuplicateDetector().describe());
+            out.writeEndObject();
+        }
+    }
+
+    private interface Exchange {
+        void handle(HttpExchange exchange) throws IOException;
+    }
+
+    // Closes every exchange. Records are answered one by one, so what is left to fail here is the
+    // connection itself (e.g. a client that went away), and the response is just cut short.
+    private static HttpHandler handler(Exchange exchange) {
+        return http -> {
+            try {
+                exchange.handle(http);
+            } catch (IOException | RuntimeException e) {
+                // Nothing more can be sent
+            } finally {
+                http.close();
+            }
+        };
+    }
+
+    private static void sendText(HttpExchange exchange, int status, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static boolean isBlank(byte[] line, int length) {
+        for (int i = 0; i < length; i++) {
+            if (line[i] != ' ' && line[i] != '\t' && line[i] != '\r')
+                return false;
+        }
+        return true;
+    }
+
+    private static String queryParameter(HttpExchange exchange, String name) {
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null)
+            return null;
+        for (String pair : query.split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals > 0 && pair.substring(0, equals).equals(name))
+                return pair.substring(equals + 1);
+        }
+        return null;
+    }
+
+    // Lines of a stream as byte ranges, without decoding them to Strings; a trailing '\r' is dropped
+    private static final class LineReader {
+        private final InputStream in;
+        private final byte[] buffer = new byte[1 << 16];
+        private int position;
+        private int limit;
+        byte[] line = new byte[1 << 12];
+
+        LineReader(InputStream in) {
+            this.in = in;
+        }
+
+        // Length of the next line in `line`, or -1 at the end of the stream
+        int next() throws IOException {
+            int length = 0;
+            while (true) {
+                if (position == limit) {
+                    limit = in.read(buffer);
+                    position = 0;
+                    if (limit <= 0) {
+                        limit = 0;
+                        return length > 0 ? trim(length) : -1;
+                    }
+                }
+                int start = position;
+                while (position < limit && buffer[position] != '\n')
+                    position++;
+                int chunk = position - start;
+                if (length + chunk > line.length)
+                    line = Arrays.copyOf(line, Math.max(line.length * 2, length + chunk));
+                System.arraycopy(buffer, start, line, length, chunk);
+                length += chunk;
+                if (position < limit) {
+                    position++;
+                    return trim(length);
+                }
+            }
+        }
+
+        private int trim(int length) {
+            return length > 0 && line[length - 1] == '\r' ? length - 1 : length;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.qualys.validator.snapshot;
+
+// The columns of a snapshot row group, in the order they are stored. Record columns hold one value
+// per record, item columns one per item; a record's items are [itemStart(r), itemEnd(r)).
+public enum Column {
+    LINE(Type.INT, false),
+    ORDER_ID(Type.STRING, false),
+    USER_ID(Type.STRING, false),
+    CURRENCY(Type.INT, false),
+    CHANNEL(Type.INT, false),
+    TOTAL_AMOUNT(Type.LONG, false),
+    TOTAL_DISCOUNTS(Type.LONG, false),
+    CREATED_AT(Type.LONG, false),
+    UPDATED_AT(Type.LONG, false),
+    ERRORS(Type.LONG, false),
+    ITEM_END(Type.INT, false),
+    ITEM_SKU(Type.INT, true),
+    ITEM_QTY(Type.INT, true),
+    ITEM_PRICE(Type.LONG, true);
+
+    // STRING: an int end offset per value (high bit set for null), then the UTF-8 bytes
+    enum Type {
+        INT, LONG, STRING
+    }
+
+    final Type type;
+    final boolean item;
+
+    Column(Type type, boolean item) {
+        this.type = type;
+        this.item = item;
+    }
+}
@@ -0,0 +1,35 @@
+package com.qualys.validator.snapshot;
+
+import java.nio.ByteOrder;
+
+// Layout shared by SnapshotWriter and SnapshotReader (all numbers little-endian):
+//
+//   header     int MAGIC, int VERSION
+//   row group  int records, int items, int texts, int textsOffset, int[Column count] column offsets,
+//              the columns (each 8-byte aligned), then the text values: int column, int row,
+//              int length, UTF-8 bytes
+//   ...
+//   footer     int groups, then per group long offset, int length, int records, int items;
+//              the currency, channel and sku dictionaries and the error code names (int count,
+//              then int length + UTF-8 bytes each)
+//   trailer    long footer offset, int MAGIC
+//
+// Offsets inside a row group are relative to its start.
+final class SnapshotFormat {
+
+    static final int MAGIC = 0x51565353;
+    static final int VERSION = 1;
+    static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+    static final int HEADER_BYTES = 8;
+    static final int TRAILER_BYTES = 12;
+    static final int GROUP_HEADER_BYTES = 16 + 4 * Column.values().length;
+    // High bit of a STRING column's end offset
+    static final int NULL_STRING = 0x80000000;
+
+    private SnapshotFormat() {
+    }
+
+    static int align(int offset) {
+        return (offset + 7) & ~7;
+    }
+}
@@ -0,0 +1,313 @@
+package com.qualys.validator.snapshot;
+
+import com.qualys.validator.engine.ErrorCode;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Memory-maps a snapshot written by SnapshotWriter. Every row group is one mapping and every
+// accessor reads its value in place, so a scan touches only the pages of the columns it reads, e.g.
+//
+//   for (SnapshotReader.RowGroup group : reader.groups())
+//       for (int r = 0; r < group.records(); r++)
+//           if (group.isValid(r)) revenueCents += group.totalCents(r);
+//
+// Rows are indexed within their group; items by group.itemStart(r) to group.itemEnd(r). Immutable
+// once opened, so groups can be scanned from several threads.
+public class SnapshotReader implements Closeable {
+
+    // Long columns: no value, and a value kept as text (see RowGroup.text)
+    public static final long NULL = Long.MIN_VALUE;
+    public static final long AS_TEXT = Long.MIN_VALUE + 1;
+    // ITEM_QTY: no value
+    public static final int NULL_INT = Integer.MIN_VALUE;
+
+    private final FileChannel channel;
+    private final List<RowGroup> groups = new ArrayList<>();
+    private final long records;
+    private final List<String> currencies;
+    private final List<String> channels;
+    private final List<String> skus;
+    // Error mask bit -> code, null for codes this build does not know
+    private final ErrorCode[] codes;
+
+    public SnapshotReader(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if (size < SnapshotFormat.HEADER_BYTES + SnapshotFormat.TRAILER_BYTES)
+                throw new IOException("Not a snapshot: " + path);
+            ByteBuffer header = map(0, SnapshotFormat.HEADER_BYTES);
+            if (header.getInt(0) != SnapshotFormat.MAGIC)
+                throw new IOException("Not a snapshot: " + path);
+            if (header.getInt(4) != SnapshotFormat.VERSION)
+                throw new IOException("Unsupported snapshot version " + header.getInt(4) + ": " + path);
+            ByteBuffer trailer = map(size - SnapshotFormat.TRAILER_BYTES, SnapshotFormat.TRAILER_BYTES);
+            if (trailer.getInt(8) != SnapshotFormat.MAGIC)
+                throw new IOException("Snapshot is incomplete (the run did not finish): " + path);
+            long footerOffset = trailer.getLong(0);
+            ByteBuffer footer = map(footerOffset, size - SnapshotFormat.TRAILER_BYTES - footerOffset);
+
+            long total = 0;
+            int groupCount = footer.getInt();
+            for (int i = 0; i < groupCount; i++) {
+                long offset = footer.getLong();
+                int length = footer.getInt();
+                int groupRecords = footer.getInt();
+                footer.getInt();
+                groups.add(new RowGroup(map(offset, length), total));
+                total += groupRecords;
+            }
+            records = total;
+            currencies = readStrings(footer);
+            channels = readStrings(footer);
+            skus = readStrings(footer);
+            List<String> names = readStrings(footer);
+            codes = new ErrorCode[names.size()];
+            for (int i = 0; i < names.size(); i++) {
+                try {
+                    codes[i] = ErrorCode.valueOf(names.get(i));
+                } catch (IllegalArgumentException e) {
+                    // Written by a build with a code this one does not have
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public long records() {
+        return records;
+    }
+
+    public List<RowGroup> groups() {
+        return Collections.unmodifiableList(groups);
+    }
+
+    // Dictionaries for the CURRENCY, CHANNEL and ITEM_SKU codes
+    public List<String> currencies() {
+        return currencies;
+    }
+
+    public List<String> channels() {
+        return channels;
+    }
+
+    public List<String> skus() {
+        return skus;
+    }
+
+    // The codes in an ERRORS mask
+    public Set<ErrorCode> errorCodes(long mask) {
+        Set<ErrorCode> result = EnumSet.noneOf(ErrorCode.class);
+        for (int bit = 0; bit < codes.length; bit++) {
+            if ((mask & (1L << bit)) != 0 && codes[bit] != null)
+                result.add(codes[bit]);
+        }
+        return result;
+    }
+
+    // The ERRORS bit of a code, for scans that filter on it
+    public long errorBit(ErrorCode code) {
+        for (int bit = 0; bit < codes.length; bit++) {
+            if (codes[bit] == code)
+                return 1L << bit;
+        }
+        return 0;
+    }
+
+    // Mappings stay valid until they are garbage collected; this only releases the file handle
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private ByteBuffer map(long offset, long length) throws IOException {
+        MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+        return mapped.order(SnapshotFormat.ORDER);
+    }
+
+    private static List<String> readStrings(ByteBuffer in) {
+        int count = in.getInt();
+        List<String> values = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            byte[] bytes = new byte[in.getInt()];
+            in.get(bytes);
+            values.add(new String(bytes, StandardCharsets.UTF_8));
+        }
+        return Collections.unmodifiableList(values);
+    }
+
+    public static final class RowGroup {
+        private final ByteBuffer buffer;
+        private final long firstRecord;
+        private final int records;
+        private final int items;
+        private final int[] offsets = new int[Column.values().length];
+        // (column << 32 | row) -> text, for values stored as AS_TEXT
+        private final Map<Long, String> texts = new HashMap<>();
+
+        RowGroup(ByteBuffer buffer, long firstRecord) {
+            this.buffer = buffer;
+            this.firstRecord = firstRecord;
+            this.records = buffer.getInt(0);
+            this.items = buffer.getInt(4);
+            int textCount = buffer.getInt(8);
+            int position = buffer.getInt(12);
+            for (int i = 0; i < offsets.length; i++)
+                offsets[i] = buffer.getInt(16 + i * 4);
+            for (int i = 0; i < textCount; i++) {
+                long column = buffer.getInt(position);
+                int row = buffer.getInt(position + 4);
+                byte[] bytes = new byte[buffer.getInt(position + 8)];
+                buffer.get(position + 12, bytes);
+                texts.put(column << 32 | row, new String(bytes, StandardCharsets.UTF_8));
+                position += 12 + bytes.length;
+            }
+        }
+
+        // Index of this group's first record in the whole snapshot
+        public long firstRecord() {
+            return firstRecord;
+        }
+
+        public int records() {
+            return records;
+        }
+
+        public int items() {
+            return items;
+        }
+
+        public int line(int row) {
+            return intAt(Column.LINE, row);
+        }
+
+        public String orderId(int row) {
+            return string(Column.ORDER_ID, row);
+        }
+
+        public String userId(int row) {
+            return string(Column.USER_ID, row);
+        }
+
+        // Index into SnapshotReader.currencies(), -1 for none
+        public int currency(int row) {
+            return intAt(Column.CURRENCY, row);
+        }
+
+        // Index into SnapshotReader.channels(), -1 for none
+        public int channel(int row) {
+            return intAt(Column.CHANNEL, row);
+        }
+
+        // Cents, NULL or AS_TEXT
+        public long totalCents(int row) {
+            return longAt(Column.TOTAL_AMOUNT, row);
+        }
+
+        public long discountCents(int row) {
+            return longAt(Column.TOTAL_DISCOUNTS, row);
+        }
+
+        public BigDecimal totalAmount(int row) {
+            return decimal(Column.TOTAL_AMOUNT, row);
+        }
+
+        public BigDecimal totalDiscounts(int row) {
+            return decimal(Column.TOTAL_DISCOUNTS, row);
+        }
+
+        // Epoch seconds, NULL or AS_TEXT
+        public long createdAt(int row) {
+            return longAt(Column.CREATED_AT, row);
+        }
+
+        public long updatedAt(int row) {
+            return longAt(Column.UPDATED_AT, row);
+        }
+
+        // Bit mask of the record's error codes (see SnapshotReader.errorCodes), 0 when valid
+        public long errors(int row) {
+            return longAt(Column.ERRORS, row);
+        }
+
+        public boolean isValid(int row) {
+            return errors(row) == 0;
+        }
+
+        public int itemStart(int row) {
+            return row == 0 ? 0 : intAt(Column.ITEM_END, row - 1);
+        }
+
+        public int itemEnd(int row) {
+            return intAt(Column.ITEM_END, row);
+        }
+
+        // Index into SnapshotReader.skus(), -1 for none
+        public int sku(int item) {
+            return intAt(Column.ITEM_SKU, item);
+        }
+
+        // NULL_INT for none
+        public int quantity(int item) {
+            return intAt(Column.ITEM_QTY, item);
+        }
+
+        public long priceCents(int item) {
+            return longAt(Column.ITEM_PRICE, item);
+        }
+
+        public BigDecimal price(int item) {
+            return decimal(Column.ITEM_PRICE, item);
+        }
+
+        // Original text of a value stored as AS_TEXT, otherwise null
+        public String text(Column column, int row) {
+            return texts.get((long) column.ordinal() << 32 | row);
+        }
+
+        private int intAt(Column column, int row) {
+            return buffer.getInt(offsets[column.ordinal()] + row * 4);
+        }
+
+        private long longAt(Column column, int row) {
+            return buffer.getLong(offsets[column.ordinal()] + row * 8);
+        }
+
+        private BigDecimal decimal(Column column, int row) {
+            long cents = longAt(column, row);
+            if (cents == NULL)
+                return null;
+            if (cents == AS_TEXT)
+                return new BigDecimal(text(column, row));
+            return BigDecimal.valueOf(cents, 2);
+        }
+
+        private String string(Column column, int row) {
+            int offset = offsets[column.ordinal()];
+            int end = buffer.getInt(offset + row * 4);
+            if ((end & SnapshotFormat.NULL_STRING) != 0)
+                return null;
+            int start = row == 0 ? 0 : buffer.getInt(offset + (row - 1) * 4) & ~SnapshotFormat.NULL_STRING;
+            byte[] bytes = new byte[end - start];
+            buffer.get(offset + records * 4 + start, bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+}
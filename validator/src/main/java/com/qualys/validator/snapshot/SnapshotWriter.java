@@ -0,0 +1,369 @@
+package com.qualys.validator.snapshot;
+
+import com.qualys.validator.engine.ErrorCode;
+import com.qualys.validator.engine.ValidationResult;
+import com.qualys.validator.model.Discount;
+import com.qualys.validator.model.Item;
+import com.qualys.validator.model.Record;
+import com.qualys.validator.util.Cents;
+import com.qualys.validator.util.Iso8601;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Writes validated records to a columnar snapshot (see SnapshotFormat) that SnapshotReader maps back
+// without parsing: currency, channel and sku are dictionary-encoded, amounts are cents (util.Cents),
+// timestamps are epoch seconds as util.Iso8601 reads them (fractions of a second are dropped), and
+// every record carries a bit mask of its error codes. Amounts with more than 2 decimals and
+// timestamps that do not parse are stored as SnapshotReader.AS_TEXT plus their original text.
+// Records are buffered into row groups of up to GROUP_RECORDS; call from one thread, in input order.
+public class SnapshotWriter implements Closeable {
+
+    public static final int GROUP_RECORDS = 1 << 16;
+
+    // A group is also closed early once its strings and items approach this size
+    private static final long MAX_GROUP_BYTES = 1 << 28;
+    private static final int COLUMNS = Column.values().length;
+
+    private final FileChannel channel;
+    private long position;
+    private boolean closed;
+
+    private final Dictionary currencies = new Dictionary();
+    private final Dictionary channels = new Dictionary();
+    private final Dictionary skus = new Dictionary();
+    private final List<long[]> groups = new ArrayList<>();
+
+    // The row group being filled
+    private int records;
+    private int items;
+    private final int[] lines = new int[GROUP_RECORDS];
+    private final StringColumn orderIds = new StringColumn();
+    private final StringColumn userIds = new StringColumn();
+    private final int[] currencyCodes = new int[GROUP_RECORDS];
+    private final int[] channelCodes = new int[GROUP_RECORDS];
+    private final long[] totals = new long[GROUP_RECORDS];
+    private final long[] discounts = new long[GROUP_RECORDS];
+    private final long[] created = new long[GROUP_RECORDS];
+    private final long[] updated = new long[GROUP_RECORDS];
+    private final long[] errors = new long[GROUP_RECORDS];
+    private final int[] itemEnds = new int[GROUP_RECORDS];
+    private int[] skuCodes = new int[GROUP_RECORDS];
+    private int[] quantities = new int[GROUP_RECORDS];
+    private long[] prices = new long[GROUP_RECORDS];
+    private final List<Text> texts = new ArrayList<>();
+    private ByteBuffer buffer = ByteBuffer.allocate(1 << 20).order(SnapshotFormat.ORDER);
+
+    public SnapshotWriter(Path path) throws IOException {
+        if (ErrorCode.values().length > Long.SIZE)
+            throw new IllegalStateException("Too many error codes for the snapshot's error mask");
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        ByteBuffer header = ByteBuffer.allocate(SnapshotFormat.HEADER_BYTES).order(SnapshotFormat.ORDER);
+        header.putInt(SnapshotFormat.MAGIC).putInt(SnapshotFormat.VERSION).flip();
+        writeFully(header);
+    }
+
+    public void write(Record record, int lineNumber, ValidationResult result) {
+        int r = records;
+        lines[r] = lineNumber;
+        orderIds.add(record.orderId);
+        userIds.add(record.userId);
+        currencyCodes[r] = currencies.code(record.currency);
+        channelCodes[r] = channels.code(record.metadata != null ? record.metadata.channel : null);
+        totals[r] = cents(Column.TOTAL_AMOUNT, r, record.totalAmount);
+        discounts[r] = totalDiscounts(r, record.discounts);
+        created[r] = timestamp(Column.CREATED_AT, r, record.createdAt);
+        updated[r] = timestamp(Column.UPDATED_AT, r, record.updatedAt);
+        long mask = 0;
+        if (result != null) {
+            for (int i = 0; i < result.errorCount(); i++)
+                mask |= 1L << result.getCode(i).ordinal();
+        }
+        errors[r] = mask;
+        if (record.items != null) {
+            for (Item item : record.items) {
+                if (items == skuCodes.length) {
+                    skuCodes = Arrays.copyOf(skuCodes, items * 2);
+                    quantities = Arrays.copyOf(quantities, items * 2);
+                    prices = Arrays.copyOf(prices, items * 2);
+                }
+                skuCodes[items] = skus.code(item.sku);
+                quantities[items] = item.qty != null ? item.qty : SnapshotReader.NULL_INT;
+                prices[items] = cents(Column.ITEM_PRICE, items, item.price);
+                items++;
+            }
+        }
+        itemEnds[r] = items;
+        records++;
+        if (records == GROUP_RECORDS || orderIds.length + userIds.length + items * 16L > MAX_GROUP_BYTES)
+            flushGroup();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed)
+            return;
+        closed = true;
+        try {
+            if (records > 0)
+                flushGroup();
+            writeFooter();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private long cents(Column column, int row, BigDecimal amount) {
+        if (amount == null)
+            return SnapshotReader.NULL;
+        long cents = Cents.fromDecimal(amount);
+        if (cents == Cents.NONE || cents == SnapshotReader.AS_TEXT) {
+            texts.add(new Text(column, row, amount.toString()));
+            return SnapshotReader.AS_TEXT;
+        }
+        return cents;
+    }
+
+    // Sum of the discount amounts, like the CSV export's total_discounts
+    private long totalDiscounts(int row, List<Discount> list) {
+        if (list == null)
+            return 0;
+        long sum = 0;
+        for (Discount discount : list) {
+            if (discount.amount == null)
+                continue;
+            long cents = Cents.fromDecimal(discount.amount);
+            if (cents == Cents.NONE || Cents.addOverflows(sum, cents))
+                return cents(Column.TOTAL_DISCOUNTS, row, exactSum(list));
+            sum += cents;
+        }
+        if (sum == SnapshotReader.NULL || sum == SnapshotReader.AS_TEXT)
+            return cents(Column.TOTAL_DISCOUNTS, row, exactSum(list));
+        return sum;
+    }
+
+    private static BigDecimal exactSum(List<Discount> list) {
+        BigDecimal sum = BigDecimal.ZERO;
+        for (Discount discount : list) {
+            if (discount.amount != null)
+                sum = sum.add(discount.amount);
+        }
+        return sum;
+    }
+
+    private long timestamp(Column column, int row, String text) {
+        if (text == null)
+            return SnapshotReader.NULL;
+        long seconds = Iso8601.epochSecond(text);
+        if (seconds == Iso8601.INVALID || seconds == SnapshotReader.AS_TEXT) {
+            texts.add(new Text(column, row, text));
+            return SnapshotReader.AS_TEXT;
+        }
+        return seconds;
+    }
+
+    private void flushGroup() {
+        byte[][] textBytes = new byte[texts.size()][];
+        int textsLength = 0;
+        for (int i = 0; i < textBytes.length; i++) {
+            textBytes[i] = texts.get(i).value.getBytes(StandardCharsets.UTF_8);
+            textsLength += 12 + textBytes[i].length;
+        }
+        int[] offsets = new int[COLUMNS];
+        int offset = SnapshotFormat.align(SnapshotFormat.GROUP_HEADER_BYTES);
+        for (Column column : Column.values()) {
+            offsets[column.ordinal()] = offset;
+            int values = column.item ? items : records;
+            int size = column.type == Column.Type.LONG ? values * 8 : values * 4;
+            if (column == Column.ORDER_ID)
+                size += orderIds.length;
+            else if (column == Column.USER_ID)
+                size += userIds.length;
+            offset = SnapshotFormat.align(offset + size);
+        }
+        int textsOffset = offset;
+        int length = textsOffset + textsLength;
+        if (buffer.capacity() < length)
+            buffer = ByteBuffer.allocate(Math.max(length, buffer.capacity() * 2)).order(SnapshotFormat.ORDER);
+        ByteBuffer out = buffer;
+        out.clear();
+        out.putInt(records).putInt(items).putInt(texts.size()).putInt(textsOffset);
+        for (int columnOffset : offsets)
+            out.putInt(columnOffset);
+
+        putInts(out, offsets[Column.LINE.ordinal()], lines, records);
+        orderIds.put(out, offsets[Column.ORDER_ID.ordinal()], records);
+        userIds.put(out, offsets[Column.USER_ID.ordinal()], records);
+        putInts(out, offsets[Column.CURRENCY.ordinal()], currencyCodes, records);
+        putInts(out, offsets[Column.CHANNEL.ordinal()], channelCodes, records);
+        putLongs(out, offsets[Column.TOTAL_AMOUNT.ordinal()], totals, records);
+        putLongs(out, offsets[Column.TOTAL_DISCOUNTS.ordinal()], discounts, records);
+        putLongs(out, offsets[Column.CREATED_AT.ordinal()], created, records);
+        putLongs(out, offsets[Column.UPDATED_AT.ordinal()], updated, records);
+        putLongs(out, offsets[Column.ERRORS.ordinal()], errors, records);
+        putInts(out, offsets[Column.ITEM_END.ordinal()], itemEnds, records);
+        putInts(out, offsets[Column.ITEM_SKU.ordinal()], skuCodes, items);
+        putInts(out, offsets[Column.ITEM_QTY.ordinal()], quantities, items);
+        putLongs(out, offsets[Column.ITEM_PRICE.ordinal()], prices, items);
+        out.position(textsOffset);
+        for (int i = 0; i < textBytes.length; i++) {
+            Text text = texts.get(i);
+            out.putInt(text.column.ordinal()).putInt(text.row).putInt(textBytes[i].length).put(textBytes[i]);
+        }
+        out.flip();
+
+        groups.add(new long[] { position, length, records, items });
+        writeFully(out);
+        records = 0;
+        items = 0;
+        orderIds.clear();
+        userIds.clear();
+        texts.clear();
+    }
+
+    private void writeFooter() {
+        ByteBuffer footer = ByteBuffer.allocate(4 + groups.size() * 20 + (1 << 16)).order(SnapshotFormat.ORDER);
+        footer.putInt(groups.size());
+        for (long[] group : groups)
+            footer.putLong(group[0]).putInt((int) group[1]).putInt((int) group[2]).putInt((int) group[3]);
+        for (Dictionary dictionary : List.of(currencies, channels, skus))
+            footer = putStrings(footer, dictionary.values);
+        List<String> codes = new ArrayList<>();
+        for (ErrorCode code : ErrorCode.values())
+            codes.add(code.name());
+        footer = putStrings(footer, codes);
+        footer = ensure(footer, SnapshotFormat.TRAILER_BYTES);
+        footer.putLong(position).putInt(SnapshotFormat.MAGIC);
+        footer.flip();
+        writeFully(footer);
+    }
+
+    private static ByteBuffer putStrings(ByteBuffer out, List<String> values) {
+        out = ensure(out, 4);
+        out.putInt(values.size());
+        for (String value : values) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out = ensure(out, 4 + bytes.length);
+            out.putInt(bytes.length).put(bytes);
+        }
+        return out;
+    }
+
+    private static ByteBuffer ensure(ByteBuffer out, int bytes) {
+        if (out.remaining() >= bytes)
+            return out;
+        ByteBuffer larger = ByteBuffer.allocate(Math.max(out.capacity() * 2, out.position() + bytes))
+                .order(SnapshotFormat.ORDER);
+        out.flip();
+        return larger.put(out);
+    }
+
+    private static void putInts(ByteBuffer out, int offset, int[] values, int count) {
+        out.position(offset);
+        out.asIntBuffer().put(values, 0, count);
+    }
+
+    private static void putLongs(ByteBuffer out, int offset, long[] values, int count) {
+        out.position(offset);
+        out.asLongBuffer().put(values, 0, count);
+    }
+
+    private void writeFully(ByteBuffer bytes) {
+        try {
+            while (bytes.hasRemaining())
+                position += channel.write(bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write snapshot", e);
+        }
+    }
+
+    // A value kept as text because its column's encoding cannot hold it exactly
+    private static final class Text {
+        final Column column;
+        final int row;
+        final String value;
+
+        Text(Column column, int row, String value) {
+            this.column = column;
+            this.row = row;
+            this.value = value;
+        }
+    }
+
+    // Codes in order of first appearance; null is -1
+    private static final class Dictionary {
+        final Map<String, Integer> codes = new HashMap<>();
+        final List<String> values = new ArrayList<>();
+
+        int code(String value) {
+            if (value == null)
+                return -1;
+            Integer code = codes.get(value);
+            if (code == null) {
+                code = values.size();
+                codes.put(value, code);
+                values.add(value);
+            }
+            return code;
+        }
+    }
+
+    private static final class StringColumn {
+        final int[] ends = new int[GROUP_RECORDS];
+        byte[] bytes = new byte[GROUP_RECORDS * 8];
+        int length;
+        int count;
+
+        void add(String value) {
+            if (value == null) {
+                ends[count++] = length | SnapshotFormat.NULL_STRING;
+                return;
+            }
+            int chars = value.length();
+            if (length + chars * 3 > bytes.length)
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + chars * 3));
+            int start = length;
+            for (int i = 0; i < chars; i++) {
+                char c = value.charAt(i);
+                if (c >= 0x80) {
+                    // Rare: encode the whole value the slow way
+                    byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+                    if (start + utf8.length > bytes.length)
+                        bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, start + utf8.length));
+                    System.arraycopy(utf8, 0, bytes, start, utf8.length);
+                    length = start + utf8.length;
+                    ends[count++] = length;
+                    return;
+                }
+                bytes[length++] = (byte) c;
+            }
+            ends[count++] = length;
+        }
+
+        void put(ByteBuffer out, int offset, int records) {
+            putInts(out, offset, ends, records);
+            out.position(offset + records * 4);
+            out.put(bytes, 0, length);
+        }
+
+        void clear() {
+            length = 0;
+            count = 0;
+        }
+    }
+}
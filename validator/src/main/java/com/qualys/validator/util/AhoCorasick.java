@@ -0,0 +1,121 @@
+package com.qualys.validator.util;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
+
+// Tells whether a text contains any of a fixed set of ASCII patterns, ignoring ASCII case.
+// The Aho-Corasick trie is compiled into a dense DFA over the characters that occur in the
+// patterns (everything else shares one class), so a scan is one table lookup per character
+// regardless of how many patterns there are. Immutable and thread-safe once built.
+public final class AhoCorasick {
+
+    private final int[] charClass = new int[128];
+    private final int classes;
+    // transitions[state * classes + class]; a negative entry marks a state that completes a pattern
+    private final int[] transitions;
+
+    public AhoCorasick(Collection<String> patterns) {
+        int classCount = 1;
+        for (String pattern : patterns) {
+            if (pattern.isEmpty())
+                throw new IllegalArgumentException("Empty pattern");
+            for (int i = 0; i < pattern.length(); i++) {
+                char c = pattern.charAt(i);
+                if (c >= 128)
+                    throw new IllegalArgumentException("Pattern is not ASCII: " + pattern);
+                int folded = fold(c);
+                if (charClass[folded] == 0)
+                    charClass[folded] = classCount++;
+            }
+        }
+        for (char c = 'A'; c <= 'Z'; c++)
+            charClass[c] = charClass[fold(c)];
+        this.classes = classCount;
+
+        // Trie
+        int maxStates = 1;
+        for (String pattern : patterns)
+            maxStates += pattern.length();
+        int[] trie = new int[maxStates * classes];
+        Arrays.fill(trie, -1);
+        boolean[] terminal = new boolean[maxStates];
+        int states = 1;
+        for (String pattern : patterns) {
+            int state = 0;
+            for (int i = 0; i < pattern.length(); i++) {
+                int slot = state * classes + charClass[pattern.charAt(i)];
+                if (trie[slot] < 0)
+                    trie[slot] = states++;
+                state = trie[slot];
+            }
+            terminal[state] = true;
+        }
+
+        // Breadth-first failure links, folded straight into the DFA; a state that is reached
+        // through a match stays terminal so the scan can stop there
+        int[] dfa = new int[states * classes];
+        int[] failure = new int[states];
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int c = 0; c < classes; c++) {
+            int next = trie[c];
+            if (next < 0) {
+                dfa[c] = 0;
+            } else {
+                dfa[c] = next;
+                failure[next] = 0;
+                queue.add(next);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            terminal[state] |= terminal[failure[state]];
+            for (int c = 0; c < classes; c++) {
+                int next = trie[state * classes + c];
+                if (next < 0) {
+                    dfa[state * classes + c] = dfa[failure[state] * classes + c];
+                } else {
+                    dfa[state * classes + c] = next;
+                    failure[next] = dfa[failure[state] * classes + c];
+                    queue.add(next);
+                }
+            }
+        }
+        for (int i = 0; i < dfa.length; i++) {
+            if (terminal[dfa[i]])
+                dfa[i] = ~dfa[i];
+        }
+        this.transitions = dfa;
+    }
+
+    public boolean matches(CharSequence text) {
+        if (text == null)
+            return false;
+        int state = 0;
+        for (int i = 0; i < text.length(); i++) {
+            state = transitions[state * classes + classOf(text.charAt(i))];
+            if (state < 0)
+                return true;
+        }
+        return false;
+    }
+
+    // For text still in a parser buffer, e.g. JsonParser.getTextCharacters()
+    public boolean matches(char[] text, int offset, int length) {
+        int state = 0;
+        for (int i = offset; i < offset + length; i++) {
+            state = transitions[state * classes + classOf(text[i])];
+            if (state < 0)
+                return true;
+        }
+        return false;
+    }
+
+    private int classOf(char c) {
+        return c < 128 ? charClass[c] : 0;
+    }
+
+    private static int fold(char c) {
+        return c >= 'A' && c <= 'Z' ? c + ('a' - 'A') : c;
+    }
+}
@@ -0,0 +1,79 @@
+package com.qualys.validator.util;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+// Fixed-size Bloom filter over pre-hashed 64-bit keys (Kirsch-Mitzenmacher double hashing).
+// Not thread-safe.
+public class BloomFilter {
+
+    private final long[] bits;
+    private final long bitCount;
+    private final int hashCount;
+    private final long capacity;
+    private long inserted;
+
+    public BloomFilter(long expectedInsertions, double falsePositiveRate) {
+        long m = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        m = Math.max(64, (m + 63) & ~63L);
+        this.bits = new long[(int) Math.min(Integer.MAX_VALUE - 8, m >>> 6)];
+        this.bitCount = (long) bits.length << 6;
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / expectedInsertions * Math.log(2)));
+        this.capacity = expectedInsertions;
+    }
+
+    public void put(long hash) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= hashCount; i++) {
+            long bit = ((h1 + (long) i * h2) & Long.MAX_VALUE) % bitCount;
+            bits[(int) (bit >>> 6)] |= 1L << bit;
+        }
+        inserted++;
+    }
+
+    public boolean mightContain(long hash) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= hashCount; i++) {
+            long bit = ((h1 + (long) i * h2) & Long.MAX_VALUE) % bitCount;
+            if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0)
+                return false;
+        }
+        return true;
+    }
+
+    public boolean isFull() {
+        return inserted >= capacity;
+    }
+
+    public long inserted() {
+        return inserted;
+    }
+
+    public void clear() {
+        java.util.Arrays.fill(bits, 0L);
+        inserted = 0;
+    }
+
+    public long memoryBytes() {
+        return (long) bits.length * Long.BYTES;
+    }
+
+    public void writeSnapshot(DataOutput out) throws IOException {
+        out.writeInt(bits.length);
+        out.writeLong(inserted);
+        for (long word : bits)
+            out.writeLong(word);
+    }
+
+    // Only into a filter created with the same size parameters
+    public void readSnapshot(DataInput in) throws IOException {
+        if (in.readInt() != bits.length)
+            throw new IOException("Bloom filter size does not match the snapshot");
+        inserted = in.readLong();
+        for (int i = 0; i < bits.length; i++)
+            bits[i] = in.readLong();
+    }
+}
@@ -0,0 +1,98 @@
+package com.qualys.validator.util;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+// Money as a long count of hundredths. Only amounts with 0, 1 or 2 decimals are converted; the
+// caller keeps such an amount's scale next to it so results can be turned back into exactly the
+// BigDecimal that BigDecimal arithmetic would have produced.
+public final class Cents {
+
+    // Returned when an amount has more than 2 decimals, an exponent or does not fit
+    public static final long NONE = Long.MIN_VALUE;
+
+    private static final long[] SCALE_FACTOR = { 100, 10, 1 };
+    // 16 digits can never overflow once multiplied by 100
+    private static final int MAX_DIGITS = 16;
+
+    private Cents() {
+    }
+
+    public static long fromDecimal(BigDecimal value) {
+        int scale = value.scale();
+        if (scale < 0 || scale > 2)
+            return NONE;
+        long units;
+        if (value.precision() <= 18) {
+            // Fits a long, so skip the BigInteger that unscaledValue() would build
+            units = value.movePointRight(scale).longValueExact();
+        } else {
+            BigInteger unscaled = value.unscaledValue();
+            if (unscaled.bitLength() > 63)
+                return NONE;
+            units = unscaled.longValue();
+        }
+        long limit = Long.MAX_VALUE / SCALE_FACTOR[scale];
+        if (units > limit || units < -limit)
+            return NONE;
+        return units * SCALE_FACTOR[scale];
+    }
+
+    // Parses a JSON number's text, e.g. from JsonParser.getTextCharacters()
+    public static long parse(char[] text, int offset, int length) {
+        int end = offset + length;
+        int i = offset;
+        boolean negative = i < end && text[i] == '-';
+        if (negative)
+            i++;
+        long units = 0;
+        int digits = 0;
+        int decimals = -1;
+        for (; i < end; i++) {
+            char c = text[i];
+            if (c >= '0' && c <= '9') {
+                if (++digits > MAX_DIGITS)
+                    return NONE;
+                units = units * 10 + (c - '0');
+                if (decimals >= 0)
+                    decimals++;
+            } else if (c == '.' && decimals < 0) {
+                decimals = 0;
+            } else {
+                return NONE;
+            }
+        }
+        if (digits == 0 || decimals > 2)
+            return NONE;
+        long cents = units * SCALE_FACTOR[Math.max(decimals, 0)];
+        return negative ? -cents : cents;
+    }
+
+    // Number of decimals in a JSON number's text that parse() accepted
+    public static int scale(char[] text, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            if (text[i] == '.')
+                return offset + length - i - 1;
+        }
+        return 0;
+    }
+
+    // Exact inverse of fromDecimal for an amount with the given scale
+    public static BigDecimal toDecimal(long cents, int scale) {
+        return BigDecimal.valueOf(cents / SCALE_FACTOR[scale], scale);
+    }
+
+    public static boolean addOverflows(long a, long b) {
+        long sum = a + b;
+        return ((a ^ sum) & (b ^ sum)) < 0;
+    }
+
+    public static boolean subtractOverflows(long a, long b) {
+        long difference = a - b;
+        return ((a ^ b) & (a ^ difference)) < 0;
+    }
+
+    public static boolean multiplyOverflows(long a, long b) {
+        return Math.multiplyHigh(a, b) != ((a * b) >> 63);
+    }
+}
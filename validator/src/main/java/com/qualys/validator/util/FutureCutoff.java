@@ -0,0 +1,39 @@
+package com.qualys.validator.util;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+// The CREATED_IN_FUTURE cutoff, "now + 1 day" in local time read as UTC the way Iso8601 reads a
+// timestamp. Refreshed at most once a second rather than per call; safe to share between threads.
+public final class FutureCutoff {
+
+    private static final long REFRESH_MILLIS = 1000;
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    // Seconds and nanos in one long, so a reader never sees half of a refresh
+    private volatile long cutoffNanos;
+    private volatile long refreshAt = Long.MIN_VALUE;
+
+    public boolean isAfter(long epochSecond) {
+        return epochSecond > Math.floorDiv(current(), NANOS_PER_SECOND);
+    }
+
+    // timestamp is the text epochSecond was read from; its fraction is only parsed when the
+    // seconds tie with the cutoff's
+    public boolean isAfter(long epochSecond, CharSequence timestamp) {
+        long cutoff = current();
+        long second = Math.floorDiv(cutoff, NANOS_PER_SECOND);
+        return epochSecond > second || (epochSecond == second
+                && Iso8601.nanoOfSecond(timestamp) > Math.floorMod(cutoff, NANOS_PER_SECOND));
+    }
+
+    private long current() {
+        long nowMillis = System.currentTimeMillis();
+        if (nowMillis >= refreshAt) {
+            LocalDateTime cutoff = LocalDateTime.now().plusDays(1);
+            cutoffNanos = cutoff.toEpochSecond(ZoneOffset.UTC) * NANOS_PER_SECOND + cutoff.getNano();
+            refreshAt = nowMillis + REFRESH_MILLIS;
+        }
+        return cutoffNanos;
+    }
+}
@@ -0,0 +1,56 @@
+package com.qualys.validator.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+public final class Hashing {
+
+    private Hashing() {
+    }
+
+    // 64-bit finalizer from MurmurHash3
+    public static long mix64(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+
+    // FNV-1a over UTF-16 code units, finalized for better high-bit spread
+    public static long hash64(CharSequence value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return mix64(hash);
+    }
+
+    // Two unrelated 64-bit hashes of the bytes data[from, to), together a 128-bit key, into hash[0]
+    // and hash[1]. One pass, eight bytes at a time with xxHash64-style rounds, independent of the
+    // buffer's byte order.
+    public static void hash128(ByteBuffer data, int from, int to, long seed, long[] hash) {
+        boolean swap = data.order() != ByteOrder.BIG_ENDIAN;
+        long hash0 = seed + (to - from) * 0x9e3779b97f4a7c15L;
+        long hash1 = ~seed - (to - from) * 0xc2b2ae3d27d4eb4fL;
+        int i = from;
+        for (; i + Long.BYTES <= to; i += Long.BYTES) {
+            long word = data.getLong(i);
+            if (swap)
+                word = Long.reverseBytes(word);
+            hash0 = Long.rotateLeft(hash0 + word * 0xc2b2ae3d27d4eb4fL, 31) * 0x9e3779b185ebca87L;
+            hash1 = Long.rotateLeft(hash1 + word * 0x85ebca77c2b2ae63L, 27) * 0x165667b19e3779f9L;
+        }
+        if (i < to) {
+            long tail = 0;
+            for (; i < to; i++)
+                tail = tail << 8 | (data.get(i) & 0xff);
+            hash0 = Long.rotateLeft(hash0 + tail * 0xc2b2ae3d27d4eb4fL, 31) * 0x9e3779b185ebca87L;
+            hash1 = Long.rotateLeft(hash1 + tail * 0x85ebca77c2b2ae63L, 27) * 0x165667b19e3779f9L;
+        }
+        hash[0] = mix64(hash0);
+        hash[1] = mix64(hash1);
+    }
+}
@@ -0,0 +1,42 @@
+package com.qualys.validator.util;
+
+// Hand-written matchers for "<prefix>-<digits>" ids, replacing String.matches on the hot path
+public final class IdScanner {
+
+    // Longest digit run that always fits in a long
+    private static final int MAX_NUMERIC_DIGITS = 18;
+
+    private IdScanner() {
+    }
+
+    // Same result as id.matches(prefix + "-\\d+")
+    public static boolean matches(String id, char prefix) {
+        int length = id.length();
+        if (length < 3 || id.charAt(0) != prefix || id.charAt(1) != '-')
+            return false;
+        for (int i = 2; i < length; i++) {
+            char c = id.charAt(i);
+            if (c < '0' || c > '9')
+                return false;
+        }
+        return true;
+    }
+
+    // "O-123" -> 123; -1 when the id is not in canonical form (wrong prefix, leading zeros,
+    // more than 18 digits), so distinct strings such as "O-7" and "O-007" never share a key
+    public static long parseNumeric(String id, char prefix) {
+        int length = id.length();
+        if (length < 3 || length > 2 + MAX_NUMERIC_DIGITS || id.charAt(0) != prefix || id.charAt(1) != '-')
+            return -1;
+        if (id.charAt(2) == '0' && length > 3)
+            return -1;
+        long value = 0;
+        for (int i = 2; i < length; i++) {
+            char c = id.charAt(i);
+            if (c < '0' || c > '9')
+                return -1;
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+}
@@ -0,0 +1,167 @@
+package com.qualys.validator.util;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+// Non-throwing, allocation-free parser for the timestamps DataLogicRule accepts, i.e. anything
+// DateTimeFormatter.ISO_DATE_TIME parses into a LocalDateTime.
+// The common shape yyyy-MM-ddTHH:mm[:ss[.fffffffff]][Z|+HH:MM[:ss]] is scanned by hand. Rare legal
+// variants (signed or 5+ digit years, lower-case 't'/'z', "[Zone/Id]" suffixes) go to java.time;
+// input that cannot be a timestamp at all is rejected without it.
+// Like LocalDateTime.parse, the offset is validated but ignored: values are local date-times
+// expressed as seconds since 1970-01-01T00:00.
+public final class Iso8601 {
+
+    public static final long INVALID = Long.MIN_VALUE;
+    private static final long SLOW_PATH = Long.MIN_VALUE + 1;
+
+    private static final int[] DAYS_IN_MONTH = { 31, 28, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31 };
+
+    private Iso8601() {
+    }
+
+    public static long epochSecond(CharSequence text) {
+        long fast = scan(text, false);
+        if (fast != SLOW_PATH)
+            return fast;
+        LocalDateTime parsed = parseSlow(text);
+        return parsed == null ? INVALID : parsed.toEpochSecond(ZoneOffset.UTC);
+    }
+
+    // Fraction of the second, only needed to break ties between equal epochSecond values
+    public static int nanoOfSecond(CharSequence text) {
+        long fast = scan(text, true);
+        if (fast != SLOW_PATH)
+            return fast == INVALID ? 0 : (int) fast;
+        LocalDateTime parsed = parseSlow(text);
+        return parsed == null ? 0 : parsed.getNano();
+    }
+
+    // Returns epoch seconds (or nanos when wantNanos), INVALID, or SLOW_PATH
+    private static long scan(CharSequence s, boolean wantNanos) {
+        int length = s.length();
+        if (length == 0)
+            return INVALID;
+        char first = s.charAt(0);
+        if (first == '+' || first == '-')
+            return SLOW_PATH;
+        if (length >= 5 && isDigit(s.charAt(4)) && isDigits(s, 0, 4))
+            return SLOW_PATH;
+        if (length < 16 || !isDigits(s, 0, 4) || s.charAt(4) != '-' || !isDigits(s, 5, 7) || s.charAt(7) != '-'
+                || !isDigits(s, 8, 10))
+            return INVALID;
+        char t = s.charAt(10);
+        if (t == 't')
+            return SLOW_PATH;
+        if (t != 'T' || !isDigits(s, 11, 13) || s.charAt(13) != ':' || !isDigits(s, 14, 16))
+            return INVALID;
+
+        int year = digits(s, 0, 4);
+        int month = digits(s, 5, 7);
+        int day = digits(s, 8, 10);
+        int hour = digits(s, 11, 13);
+        int minute = digits(s, 14, 16);
+        int second = 0;
+        int nanos = 0;
+
+        int pos = 16;
+        if (pos < length && s.charAt(pos) == ':') {
+            if (pos + 3 > length || !isDigits(s, pos + 1, pos + 3))
+                return INVALID;
+            second = digits(s, pos + 1, pos + 3);
+            pos += 3;
+            if (pos < length && s.charAt(pos) == '.') {
+                pos++;
+                int start = pos;
+                while (pos < length && isDigit(s.charAt(pos)) && pos - start < 9) {
+                    nanos = nanos * 10 + (s.charAt(pos) - '0');
+                    pos++;
+                }
+                if (pos == start || (pos < length && isDigit(s.charAt(pos))))
+                    return pos == start ? SLOW_PATH : INVALID;
+                for (int i = pos - start; i < 9; i++)
+                    nanos *= 10;
+            }
+        }
+
+        if (pos < length) {
+            char zone = s.charAt(pos);
+            if (zone == 'Z') {
+                pos++;
+            } else if (zone == '+' || zone == '-') {
+                if (pos + 6 > length || !isDigits(s, pos + 1, pos + 3) || s.charAt(pos + 3) != ':'
+                        || !isDigits(s, pos + 4, pos + 6))
+                    return SLOW_PATH;
+                int offsetSeconds = digits(s, pos + 1, pos + 3) * 3600 + digits(s, pos + 4, pos + 6) * 60;
+                if (digits(s, pos + 4, pos + 6) > 59)
+                    return INVALID;
+                pos += 6;
+                if (pos < length && s.charAt(pos) == ':') {
+                    if (pos + 3 > length || !isDigits(s, pos + 1, pos + 3) || digits(s, pos + 1, pos + 3) > 59)
+                        return INVALID;
+                    offsetSeconds += digits(s, pos + 1, pos + 3);
+                    pos += 3;
+                }
+                if (offsetSeconds > 18 * 3600)
+                    return INVALID;
+            } else {
+                return zone == 'z' || zone == '[' ? SLOW_PATH : INVALID;
+            }
+            if (pos < length)
+                return s.charAt(pos) == '[' ? SLOW_PATH : INVALID;
+        }
+
+        if (month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month) || hour > 23 || minute > 59
+                || second > 59)
+            return INVALID;
+        if (wantNanos)
+            return nanos;
+        return daysSinceEpoch(year, month, day) * 86400L + hour * 3600L + minute * 60L + second;
+    }
+
+    private static LocalDateTime parseSlow(CharSequence text) {
+        try {
+            return LocalDateTime.parse(text, DateTimeFormatter.ISO_DATE_TIME);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isDigits(CharSequence s, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (!isDigit(s.charAt(i)))
+                return false;
+        }
+        return true;
+    }
+
+    private static int digits(CharSequence s, int from, int to) {
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            value = value * 10 + (s.charAt(i) - '0');
+        }
+        return value;
+    }
+
+    private static int daysInMonth(int year, int month) {
+        if (month == 2 && (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0)))
+            return 29;
+        return DAYS_IN_MONTH[month - 1];
+    }
+
+    // Howard Hinnant's days_from_civil
+    private static long daysSinceEpoch(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = (y >= 0 ? y : y - 399) / 400;
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097L + dayOfEra - 719468;
+    }
+}
@@ -0,0 +1,125 @@
+package com.qualys.validator.util;
+
+import java.util.function.LongConsumer;
+
+// Open-addressing set of primitive longs (linear probing, power-of-two table).
+// Costs 8 bytes per slot instead of a boxed key plus a HashMap node per entry.
+// Not thread-safe.
+public class LongHashSet {
+
+    private static final float LOAD_FACTOR = 0.6f;
+    private static final long EMPTY = 0L;
+
+    private long[] table;
+    private int mask;
+    private int size;
+    private int resizeAt;
+    // EMPTY marks free slots, so the key 0 itself is tracked separately
+    private boolean containsEmptyKey;
+
+    public LongHashSet() {
+        this(1024);
+    }
+
+    public LongHashSet(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(16, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        allocate(capacity);
+    }
+
+    // Returns false if the key was already present
+    public boolean add(long key) {
+        if (key == EMPTY) {
+            if (containsEmptyKey)
+                return false;
+            containsEmptyKey = true;
+            size++;
+            return true;
+        }
+        int slot = mix(key) & mask;
+        while (true) {
+            long existing = table[slot];
+            if (existing == EMPTY)
+                break;
+            if (existing == key)
+                return false;
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = key;
+        if (++size >= resizeAt)
+            rehash(table.length << 1);
+        return true;
+    }
+
+    public boolean contains(long key) {
+        if (key == EMPTY)
+            return containsEmptyKey;
+        int slot = mix(key) & mask;
+        while (true) {
+            long existing = table[slot];
+            if (existing == EMPTY)
+                return false;
+            if (existing == key)
+                return true;
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long memoryBytes() {
+        return (long) table.length * Long.BYTES;
+    }
+
+    public void clear() {
+        java.util.Arrays.fill(table, EMPTY);
+        containsEmptyKey = false;
+        size = 0;
+    }
+
+    public void forEach(LongConsumer consumer) {
+        if (containsEmptyKey)
+            consumer.accept(EMPTY);
+        for (long key : table) {
+            if (key != EMPTY)
+                consumer.accept(key);
+        }
+    }
+
+    public long[] toArray() {
+        long[] keys = new long[size];
+        int i = 0;
+        if (containsEmptyKey)
+            keys[i++] = EMPTY;
+        for (long key : table) {
+            if (key != EMPTY)
+                keys[i++] = key;
+        }
+        return keys;
+    }
+
+    private void allocate(int capacity) {
+        table = new long[capacity];
+        mask = capacity - 1;
+        resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private void rehash(int capacity) {
+        long[] old = table;
+        allocate(capacity);
+        for (long key : old) {
+            if (key == EMPTY)
+                continue;
+            int slot = mix(key) & mask;
+            while (table[slot] != EMPTY)
+                slot = (slot + 1) & mask;
+            table[slot] = key;
+        }
+    }
+
+    // Sequential ids would cluster badly under linear probing without a finalizer
+    public static int mix(long key) {
+        return (int) Hashing.mix64(key);
+    }
+}
@@ -0,0 +1,110 @@
+package com.qualys.validator.util;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+// Streaming quantiles of non-negative longs (cents, quantities) in a fixed array: log-linear buckets
+// as in LatencyHistogram, every power of two split into SUB_BUCKETS, so a quantile is reported
+// within 1/SUB_BUCKETS of the true value whatever the number or range of values. Two sketches merge
+// exactly by adding counts, so shards can be combined. Not thread-safe.
+public final class QuantileSketch {
+
+    private static final int SUB_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int BUCKETS = (64 - SUB_BITS + 1) * SUB_BUCKETS;
+
+    private final long[] counts = new long[BUCKETS];
+    private long count;
+    private long max;
+
+    public void record(long value) {
+        if (value < 0)
+            value = 0;
+        counts[bucket(value)]++;
+        count++;
+        if (value > max)
+            max = value;
+    }
+
+    public void add(QuantileSketch other) {
+        for (int i = 0; i < BUCKETS; i++)
+            counts[i] += other.counts[i];
+        count += other.count;
+        max = Math.max(max, other.max);
+    }
+
+    public long count() {
+        return count;
+    }
+
+    public long max() {
+        return max;
+    }
+
+    // Upper bound of the bucket holding the q-th quantile, capped at the largest value seen
+    public long quantile(double q) {
+        if (count == 0)
+            return 0;
+        long rank = Math.max(1, (long) Math.ceil(q * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank)
+                return Math.min(max, upperBound(i));
+        }
+        return max;
+    }
+
+    public static long memoryBytes() {
+        return BUCKETS * 8L;
+    }
+
+    // Only the non-empty buckets
+    public void writeSnapshot(DataOutput out) throws IOException {
+        int used = 0;
+        for (long bucketCount : counts) {
+            if (bucketCount != 0)
+                used++;
+        }
+        out.writeLong(max);
+        out.writeInt(used);
+        for (int i = 0; i < BUCKETS; i++) {
+            if (counts[i] != 0) {
+                out.writeShort(i);
+                out.writeLong(counts[i]);
+            }
+        }
+    }
+
+    // Adds the snapshot to what this sketch holds
+    public void readSnapshot(DataInput in) throws IOException {
+        max = Math.max(max, in.readLong());
+        int used = in.readInt();
+        for (int i = 0; i < used; i++) {
+            int bucket = in.readUnsignedShort();
+            if (bucket >= BUCKETS)
+                throw new IOException("Quantile sketch snapshot has bucket " + bucket + " of " + BUCKETS);
+            long bucketCount = in.readLong();
+            counts[bucket] += bucketCount;
+            count += bucketCount;
+        }
+    }
+
+    private static int bucket(long value) {
+        if (value < SUB_BUCKETS)
+            return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    private static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS)
+            return bucket;
+        int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+        long sub = bucket % SUB_BUCKETS;
+        long lower = (SUB_BUCKETS + sub) << (exponent - SUB_BITS);
+        return lower + (1L << (exponent - SUB_BITS)) - 1;
+    }
+}
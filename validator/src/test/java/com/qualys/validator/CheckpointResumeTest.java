@@ -0,0 +1,68 @@
+package com.qualys.validator;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// A run killed outright (no shutdown hook, no final checkpoint) and resumed from its last checkpoint
+// ends with the same error log, index and totals as a run that was never interrupted. The first run
+// follows the input, so it is still alive whatever point it has reached when it is killed; the
+// rest of the input is only appended afterwards, so the resumed run always has work left.
+class CheckpointResumeTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void killedRunResumesToTheSameResult() throws Exception {
+        Path full = CliRun.generate(dir.resolve("records.json"), 60_000);
+        List<String> lines = Files.readAllLines(full);
+        int split = lines.size() * 2 / 3;
+
+        String uninterrupted = CliRun.run(dir.resolve("uninterrupted"), full.toString(), "--threads", "4");
+
+        Path resumed = dir.resolve("resumed");
+        Files.createDirectories(resumed);
+        Path input = resumed.resolve("input.json");
+        Files.write(input, lines.subList(0, split));
+        Path checkpoint = resumed.resolve("run.ckpt");
+        Process first = CliRun.start(resumed, input.toString(), "--threads", "4", "--checkpoint", checkpoint.toString(),
+                "--checkpoint-interval", "1s", "--follow");
+        try {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(60);
+            while (!Files.exists(checkpoint) && System.nanoTime() < deadline)
+                Thread.sleep(10);
+            assertTrue(Files.exists(checkpoint), "no checkpoint was written");
+            assertTrue(first.isAlive());
+        } finally {
+            first.destroyForcibly().waitFor();
+        }
+
+        Files.write(input, lines.subList(split, lines.size()), StandardOpenOption.APPEND);
+        String output = CliRun.run(resumed, input.toString(), "--threads", "4", "--checkpoint", checkpoint.toString(),
+                "--resume");
+        assertTrue(output.startsWith("Resuming after line "), output);
+
+        assertArrayEquals(Files.readAllBytes(dir.resolve("uninterrupted/validation_errors.ndjson")),
+                Files.readAllBytes(resumed.resolve("validation_errors.ndjson")));
+        assertArrayEquals(Files.readAllBytes(dir.resolve("uninterrupted/validation_errors.ndjson.idx")),
+                Files.readAllBytes(resumed.resolve("validation_errors.ndjson.idx")));
+        assertEquals(totals(uninterrupted), totals(output));
+    }
+
+    private static String totals(String output) {
+        return output.lines()
+                .filter(line -> line.startsWith("Total:") || line.startsWith("Invalid:") || line.startsWith("Order-id index:"))
+                .collect(Collectors.joining("\n"));
+    }
+}
@@ -0,0 +1,59 @@
+package com.qualys.validator;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Runs Main in a child JVM on the test classpath. Main exits the JVM on bad input and writes its
+// report and error log into the working directory, so every run gets a directory of its own.
+final class CliRun {
+
+    private static final long TIMEOUT_SECONDS = 120;
+
+    private CliRun() {
+    }
+
+    // Standard output of a run that has to succeed
+    static String run(Path workingDir, String... args) throws IOException, InterruptedException {
+        Process process = start(workingDir, args);
+        assertTrue(process.waitFor(TIMEOUT_SECONDS, TimeUnit.SECONDS), "validator did not finish");
+        String output = Files.readString(workingDir.resolve("stdout.txt"), StandardCharsets.UTF_8);
+        assertEquals(0, process.exitValue(), output + Files.readString(workingDir.resolve("stderr.txt")));
+        return output;
+    }
+
+    static Process start(Path workingDir, String... args) throws IOException {
+        Files.createDirectories(workingDir);
+        List<String> command = new ArrayList<>(List.of(Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp", System.getProperty("java.class.path"), Main.class.getName()));
+        command.addAll(List.of(args));
+        return new ProcessBuilder(command)
+                .directory(workingDir.toFile())
+                .redirectOutput(workingDir.resolve("stdout.txt").toFile())
+                .redirectError(workingDir.resolve("stderr.txt").toFile())
+                .start();
+    }
+
+    // A generated input with a little of every defect, plus lines that are not JSON
+    static Path generate(Path file, long records) throws IOException {
+        RecordGenerator generator = new RecordGenerator();
+        generator.records = records;
+        generator.seed = 7;
+        generator.threads = 2;
+        generator.users = records / 20;
+        for (RecordGenerator.Defect defect : RecordGenerator.Defect.values())
+            generator.rates[defect.ordinal()] = 0.01;
+        generator.generate(file);
+        Files.writeString(file, "not json\n{\"order_id\": \"O-broken\",\n", StandardCharsets.UTF_8,
+                StandardOpenOption.APPEND);
+        return file;
+    }
+}
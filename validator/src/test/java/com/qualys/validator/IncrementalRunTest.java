@@ -0,0 +1,81 @@
+package com.qualys.validator;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// --incremental reuses the results of unchanged lines and nothing else: every run's error log must
+// match a run without the cache over the same input, and only lines that were parsed, carry no
+// CREATED_IN_FUTURE (which depends on the clock) and did not change since the last run are reused.
+class IncrementalRunTest {
+
+    private static final int RECORDS = 5_000;
+    private static final Pattern REUSED = Pattern.compile("Result cache: (\\d+) of (\\d+) lines reused");
+    private static final String FUTURE = "{\"order_id\":\"O-9000001\",\"user_id\":\"U-1\",\"currency\":\"USD\","
+            + "\"items\":[{\"sku\":\"SKU-1\",\"qty\":1,\"price\":5.00}],\"total_amount\":5.00,"
+            + "\"created_at\":\"2099-01-01T00:00:00Z\",\"updated_at\":\"2099-01-01T00:05:00Z\","
+            + "\"metadata\":{\"channel\":\"web\"}}";
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void reusesOnlyWhatCannotHaveChanged() throws Exception {
+        Path generated = CliRun.generate(dir.resolve("generated.json"), RECORDS);
+        List<String> lines = new ArrayList<>(Files.readAllLines(generated));
+        lines.add(RECORDS / 2, FUTURE);
+        Path input = dir.resolve("records.json");
+        Files.write(input, lines);
+        // Generated records, not the future one or the two lines that are not JSON
+        int cacheable = RECORDS;
+
+        assertEquals(List.of(0, lines.size()), reused(run("first", input)));
+        assertEquals(List.of(cacheable, lines.size()), reused(run("unchanged", input)));
+
+        // One changed line is validated again; the rest still come from the cache
+        int changed = 100;
+        String before = lines.get(changed);
+        lines.set(changed, before.replaceFirst("\"total_amount\": ?[0-9.]+", "\"total_amount\": 1.23"));
+        assertNotEquals(before, lines.get(changed));
+        Files.write(input, lines);
+        assertEquals(List.of(cacheable - 1, lines.size()), reused(run("changed", input)));
+        assertTrue(Files.readString(dir.resolve("changed/validation_errors.ndjson"))
+                .contains("{\"line\":" + (changed + 1) + ",\"code\":\"TOTAL_MISMATCH\""));
+
+        // Other rule settings start the cache afresh
+        String output = run("fail-fast", input, "--fail-fast");
+        assertTrue(output.contains("it was written with other rule settings"), output);
+        assertEquals(List.of(0, lines.size()), reused(output));
+    }
+
+    // Runs against the cache and checks the error log against a run with the same options without it
+    private String run(String name, Path input, String... options) throws Exception {
+        List<String> plain = new ArrayList<>(List.of(input.toString()));
+        plain.addAll(List.of(options));
+        List<String> incremental = new ArrayList<>(plain);
+        incremental.addAll(List.of("--incremental", dir.resolve("results.cache").toString()));
+
+        String output = CliRun.run(dir.resolve(name), incremental.toArray(new String[0]));
+        CliRun.run(dir.resolve(name + "-plain"), plain.toArray(new String[0]));
+        assertArrayEquals(Files.readAllBytes(dir.resolve(name + "-plain/validation_errors.ndjson")),
+                Files.readAllBytes(dir.resolve(name + "/validation_errors.ndjson")), name);
+        return output;
+    }
+
+    private static List<Integer> reused(String output) {
+        Matcher matcher = REUSED.matcher(output);
+        assertTrue(matcher.find(), output);
+        return List.of(Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2)));
+    }
+}
@@ -0,0 +1,37 @@
+package com.qualys.validator;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// The error log and its index come out byte for byte the same with one worker thread as with
+// several: record-local rules run on the workers, but everything is committed in input order.
+class ThreadParityTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void errorLogDoesNotDependOnThreads() throws Exception {
+        Path input = CliRun.generate(dir.resolve("records.json"), 50_000);
+
+        CliRun.run(dir.resolve("serial"), input.toString(), "--threads", "1");
+        byte[] serialLog = Files.readAllBytes(dir.resolve("serial/validation_errors.ndjson"));
+        byte[] serialIndex = Files.readAllBytes(dir.resolve("serial/validation_errors.ndjson.idx"));
+        assertTrue(serialLog.length > 0);
+
+        for (String threads : new String[] { "2", "8" }) {
+            Path run = dir.resolve("threads-" + threads);
+            CliRun.run(run, input.toString(), "--threads", threads);
+            assertArrayEquals(serialLog, Files.readAllBytes(run.resolve("validation_errors.ndjson")),
+                    threads + " threads");
+            assertArrayEquals(serialIndex, Files.readAllBytes(run.resolve("validation_errors.ndjson.idx")),
+                    threads + " threads");
+        }
+    }
+}
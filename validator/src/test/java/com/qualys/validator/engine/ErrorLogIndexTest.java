@@ -0,0 +1,110 @@
+package com.qualys.validator.engine;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// The .idx sidecar holds the per-category counts and the byte offset of every INDEX_STRIDE-th entry
+// of each category, checked here against the offsets of the log's own lines. Arguments with
+// multi-byte characters keep byte and char positions apart. ErrorLogReader pages starting on and
+// around the indexed entries must match the log.
+class ErrorLogIndexTest {
+
+    private static final ErrorCode[] CODES = { ErrorCode.UNKNOWN_FIELD, ErrorCode.MISSING_CHANNEL,
+            ErrorCode.TOTAL_MISMATCH, ErrorCode.INJECTION_UNKNOWN_FIELD, ErrorCode.INVALID_CURRENCY,
+            ErrorCode.DUPLICATE_ORDER_ID };
+    private static final int ENTRIES = 12_000;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void indexPointsAtEveryStrideEntry() throws IOException {
+        Path path = dir.resolve("errors.ndjson");
+        Random random = new Random(5);
+        List<ErrorCode> written = new ArrayList<>();
+        List<Integer> lines = new ArrayList<>();
+        try (ErrorLog log = new ErrorLog(path)) {
+            int line = 0;
+            for (int i = 0; i < ENTRIES; i++) {
+                line += random.nextInt(3);
+                // Skewed, so categories reach their strides at different times
+                ErrorCode code = CODES[Math.min(random.nextInt(CODES.length + 3), CODES.length - 1)];
+                String arg = random.nextBoolean() ? "é€".repeat(random.nextInt(4)) + i : null;
+                log.append(line, code, arg, arg != null && random.nextBoolean() ? "x" : null);
+                written.add(code);
+                lines.add(line);
+                if (i == ENTRIES / 2)
+                    log.flush();
+            }
+        }
+
+        // Expected from the log itself: each entry's byte offset and category
+        byte[] bytes = Files.readAllBytes(path);
+        List<Long> lineOffsets = new ArrayList<>();
+        for (int start = 0; start < bytes.length; ) {
+            lineOffsets.add((long) start);
+            while (bytes[start] != '\n')
+                start++;
+            start++;
+        }
+        assertEquals(ENTRIES, lineOffsets.size());
+        String[] text = new String(bytes, StandardCharsets.UTF_8).split("\n");
+
+        int categories = ValidationError.Category.values().length;
+        long[] expectedCounts = new long[categories];
+        List<String> expectedIndex = new ArrayList<>();
+        for (int i = 0; i < ENTRIES; i++) {
+            ErrorCode code = written.get(i);
+            assertTrue(text[i].startsWith("{\"line\":" + lines.get(i) + ",\"code\":\"" + code.name() + "\""), text[i]);
+            int category = code.getCategory().ordinal();
+            if (expectedCounts[category]++ % ErrorLog.INDEX_STRIDE == 0)
+                expectedIndex.add(category + "@" + lineOffsets.get(i));
+        }
+
+        Path indexPath = ErrorLog.indexPath(path);
+        assertEquals(ErrorLog.indexHeaderBytes() + (long) expectedIndex.size() * ErrorLog.INDEX_ENTRY_BYTES,
+                Files.size(indexPath));
+        try (DataInputStream index = new DataInputStream(Files.newInputStream(indexPath))) {
+            assertEquals(ErrorLog.INDEX_STRIDE, index.readInt());
+            assertEquals(categories, index.readInt());
+            for (int category = 0; category < categories; category++)
+                assertEquals(expectedCounts[category], index.readLong(), "count of category " + category);
+            List<String> actualIndex = new ArrayList<>();
+            for (int i = 0; i < expectedIndex.size(); i++)
+                actualIndex.add(index.readUnsignedByte() + "@" + index.readLong());
+            assertEquals(expectedIndex, actualIndex);
+        }
+
+        ErrorLogReader reader = new ErrorLogReader(path);
+        for (ValidationError.Category category : ValidationError.Category.values()) {
+            List<Integer> categoryLines = new ArrayList<>();
+            for (int i = 0; i < ENTRIES; i++) {
+                if (written.get(i).getCategory() == category)
+                    categoryLines.add(lines.get(i));
+            }
+            assertEquals(categoryLines.size(), reader.count(category));
+            int stride = ErrorLog.INDEX_STRIDE;
+            for (long from : new long[] { 0, stride - 1, stride, stride + 1, 2L * stride + 7, categoryLines.size() - 3 }) {
+                if (from < 0)
+                    continue;
+                List<Integer> page = new ArrayList<>();
+                reader.read(category, from, 10, entry -> page.add(entry.lineNumber));
+                int end = (int) Math.min(categoryLines.size(), from + 10);
+                assertEquals(from < end ? categoryLines.subList((int) from, end) : List.of(), page,
+                        category + " from " + from);
+            }
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.qualys.validator.io;
+
+import com.qualys.validator.model.Record;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Records, parse errors and skipped lines reach the sink in file order with their own line numbers,
+// whatever the number of workers. The input spans several chunks of NdjsonChunker.DEFAULT_CHUNK_BYTES
+// and two files, so chunks are parsed concurrently and finish out of order.
+class ParallelRecordReaderTest {
+
+    private static final int LINES_PER_FILE = 60_000;
+    private static final String PADDING = "x".repeat(120);
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void deliversInFileOrder() throws IOException {
+        Path first = write("first.json", 1);
+        Path second = write("second.json", LINES_PER_FILE + 1);
+        assertTrue(Files.size(first) > 2L * NdjsonChunker.DEFAULT_CHUNK_BYTES);
+        long totalBytes = Files.size(first) + Files.size(second);
+
+        for (int threads : new int[] { 1, 2, 4, 8 }) {
+            OrderCheckingSink sink = new OrderCheckingSink();
+            new ParallelRecordReader(threads).read(List.of(first, second), 0, 0, record -> record.orderId, sink);
+
+            assertEquals(2 * LINES_PER_FILE, sink.lastLine, threads + " threads");
+            assertEquals(totalBytes, sink.lastOffset, threads + " threads");
+            assertEquals(List.of(1, LINES_PER_FILE + 1), sink.fileStarts, threads + " threads");
+        }
+    }
+
+    private Path write(String name, int firstLine) throws IOException {
+        Path file = dir.resolve(name);
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (int line = firstLine; line < firstLine + LINES_PER_FILE; line++) {
+                out.write(line(line));
+                out.write('\n');
+            }
+        }
+        return file;
+    }
+
+    private static String line(int line) {
+        if (isParseError(line))
+            return "{\"order_id\": \"O-" + line + "\", broken";
+        if (isSkipped(line))
+            return String.valueOf(line);
+        return "{\"order_id\":\"O-" + line + "\",\"user_id\":\"U-" + line % 97 + "\",\"note\":\"" + PADDING + "\"}";
+    }
+
+    private static boolean isParseError(int line) {
+        return line % 997 == 0;
+    }
+
+    // Values that are not objects take a line number but are not delivered
+    private static boolean isSkipped(int line) {
+        return line % 1009 == 0;
+    }
+
+    private static final class OrderCheckingSink implements ParallelRecordReader.Sink<String> {
+        int lastLine;
+        long lastOffset;
+        final List<Integer> fileStarts = new ArrayList<>();
+
+        @Override
+        public void accept(int lineNumber, Record record, String workerResult) {
+            expectNext(lineNumber);
+            assertTrue(!isParseError(lineNumber) && !isSkipped(lineNumber), "record at line " + lineNumber);
+            assertEquals("O-" + lineNumber, record.orderId);
+            assertEquals(record.orderId, workerResult, "worker result of line " + lineNumber);
+        }
+
+        @Override
+        public void parseError(int lineNumber, String message) {
+            expectNext(lineNumber);
+            assertTrue(isParseError(lineNumber), "parse error at line " + lineNumber + ": " + message);
+        }
+
+        @Override
+        public void progress(int lineNumber, long inputOffset) {
+            assertTrue(lineNumber >= lastLine && inputOffset >= lastOffset);
+            lastOffset = inputOffset;
+        }
+
+        @Override
+        public void startFile(Path file, int firstLine) {
+            fileStarts.add(firstLine);
+        }
+
+        // Skipped lines are the only ones that may be passed over
+        private void expectNext(int lineNumber) {
+            for (int line = lastLine + 1; line < lineNumber; line++)
+                assertTrue(isSkipped(line), "line " + line + " missing before " + lineNumber);
+            assertTrue(lineNumber > lastLine, "line " + lineNumber + " after " + lastLine);
+            lastLine = lineNumber;
+        }
+    }
+}
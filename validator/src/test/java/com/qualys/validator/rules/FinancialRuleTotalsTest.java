@@ -0,0 +1,238 @@
+package com.qualys.validator.rules;
+
+import com.qualys.validator.engine.ErrorCode;
+import com.qualys.validator.engine.ValidationResult;
+import com.qualys.validator.util.Cents;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// Differential test of FinancialRule.Totals against the all-BigDecimal computation the rule used to
+// do. Every case runs through the BigDecimal entry points (long cents when the amounts allow it), the
+// long-cents entry points fed from the number text as LeanRecordScanner does, and once more with a
+// leading 3-decimal zero item that puts the record on the BigDecimal fallback from the start.
+// Errors are compared by code and by the text of their arguments, so the calculated total must also
+// come out with the same scale.
+class FinancialRuleTotalsTest {
+
+    private static final String MAX_CENTS = "92233720368547758.07";
+
+    private final FinancialRule.Totals totals = new FinancialRule.Totals();
+
+    @Test
+    void scaleAboveTwo() {
+        check(items(3, "19.999"), discounts(), "59.997");
+        check(items(1, "0.005"), discounts(), "0.00");
+        check(items(2, "10.00"), discounts("0.125"), "19.875");
+        check(items(2, "10.00"), discounts(), "20.0001");
+        check(items(7, "1.1", 1, "2.25"), discounts("0.5"), "9.45");
+        check(items(1, "1E+3"), discounts(), "1000");
+        check(items(1, "1000"), discounts(), "1E+3");
+    }
+
+    @Test
+    void negativeAndZero() {
+        check(items(1, "-5.00"), discounts(), "-5.00");
+        check(items(0, "5.00"), discounts(), "0");
+        check(items(-1, "5.00"), discounts(), "-5.00");
+        check(items(1, "0.00", 1, "0"), discounts(), "0.00");
+        check(items(1, "10.00"), discounts("-1.50"), "11.50");
+        check(items(1, "-0.001"), discounts("-0.000"), "0");
+        check(items(), discounts(), "0");
+        check(items(), discounts(), null);
+        check(items(1, "3.00"), discounts("5.00"), "-2.00");
+    }
+
+    @Test
+    void toleranceBoundary() {
+        for (String total : new String[] { "10.01", "9.99", "10.010", "9.990", "10.011", "9.989", "10.02", "9.98",
+                "10.0100000001", "9.9899999999" }) {
+            check(items(1, "10.00"), discounts(), total);
+            check(items(1, "10.005"), discounts(), total);
+            check(items(2, "5"), discounts("0.01"), total);
+        }
+    }
+
+    @Test
+    void outlierBoundaries() {
+        for (String price : new String[] { "9999999.99", "10000000", "10000000.00", "10000000.001", "10000000.01",
+                "1E+7", "1.0000001E+7" }) {
+            check(items(1, price), discounts(), price);
+        }
+        check(items(10000, "1.00"), discounts(), "10000.00");
+        check(items(10001, "1.00"), discounts(), "10001.00");
+    }
+
+    @Test
+    void longOverflow() {
+        check(items(1, MAX_CENTS), discounts(), MAX_CENTS);
+        check(items(2, MAX_CENTS), discounts(), "184467440737095516.14");
+        check(items(1, MAX_CENTS, 1, "0.01"), discounts(), MAX_CENTS);
+        check(items(10000, "90000000000000000.00"), discounts(), "1");
+        check(items(1, "1.00"), discounts(MAX_CENTS, MAX_CENTS), "0");
+        check(items(1, MAX_CENTS), discounts("-" + MAX_CENTS), "0");
+        check(items(1, "-" + MAX_CENTS), discounts(MAX_CENTS), "0");
+        check(items(1, "10.00"), discounts(), MAX_CENTS);
+        check(items(1, MAX_CENTS), discounts(), "-" + MAX_CENTS);
+        check(items(1, "123456789012345678901234567890.12"), discounts(), "123456789012345678901234567890.12");
+    }
+
+    @Test
+    void randomRecords() {
+        Random random = new Random(20261018L);
+        String[] magnitudes = { "0", "9", "99", "10000000", "999999999999", "92233720368547758", "1000000000000000000" };
+        for (int n = 0; n < 20000; n++) {
+            List<Object> items = new ArrayList<>();
+            for (int i = random.nextInt(4); i > 0; i--) {
+                items.add(random.nextInt(20) == 0 ? 10000 + random.nextInt(3) : random.nextInt(12) - 1);
+                items.add(amount(random, magnitudes));
+            }
+            List<String> discounts = new ArrayList<>();
+            for (int i = random.nextInt(3); i > 0; i--)
+                discounts.add(amount(random, magnitudes));
+            String total = random.nextInt(10) == 0 ? null : amount(random, magnitudes);
+            // Often land on or next to the true total, so the tolerance edge is exercised
+            if (total != null && random.nextBoolean()) {
+                BigDecimal exact = reference(items, discounts, null).calculated;
+                BigDecimal nudge = new BigDecimal(random.nextInt(5) - 2).movePointLeft(2 + random.nextInt(2));
+                total = exact.add(nudge).toString();
+            }
+            check(items, discounts, total);
+        }
+    }
+
+    private static String amount(Random random, String[] magnitudes) {
+        BigDecimal whole = new BigDecimal(magnitudes[random.nextInt(magnitudes.length)]);
+        BigDecimal value = new BigDecimal(whole.toBigInteger()
+                .multiply(BigInteger.valueOf(random.nextInt(1000))).divide(BigInteger.valueOf(999)))
+                .add(new BigDecimal(random.nextInt(1000)).movePointLeft(3))
+                .setScale(random.nextInt(4), RoundingMode.DOWN);
+        if (random.nextInt(8) == 0)
+            value = value.negate();
+        return value.toString();
+    }
+
+    private void check(List<Object> items, List<String> discounts, String total) {
+        BigDecimal totalAmount = total != null ? new BigDecimal(total) : null;
+        String expected = reference(items, discounts, totalAmount).errors.toString();
+        String description = "items " + items + ", discounts " + discounts + ", total " + total;
+
+        assertEquals(expected, viaDecimals(items, discounts, totalAmount), "BigDecimal entry points, " + description);
+        assertEquals(expected, viaCents(items, discounts, totalAmount), "cents entry points, " + description);
+
+        List<Object> forced = new ArrayList<>(List.of(1, "0.000"));
+        forced.addAll(items);
+        String expectedForced = reference(forced, discounts, totalAmount).errors.toString();
+        assertEquals(expectedForced, viaDecimals(forced, discounts, totalAmount), "fallback, " + description);
+    }
+
+    private String viaDecimals(List<Object> items, List<String> discounts, BigDecimal totalAmount) {
+        ValidationResult result = new ValidationResult();
+        totals.reset();
+        for (int i = 0; i < items.size(); i += 2)
+            totals.addItem((Integer) items.get(i), new BigDecimal((String) items.get(i + 1)), result);
+        for (String discount : discounts)
+            totals.addDiscount(new BigDecimal(discount), result);
+        totals.finish(totalAmount, result);
+        return render(result);
+    }
+
+    private String viaCents(List<Object> items, List<String> discounts, BigDecimal totalAmount) {
+        ValidationResult result = new ValidationResult();
+        totals.reset();
+        for (int i = 0; i < items.size(); i += 2) {
+            int qty = (Integer) items.get(i);
+            char[] text = ((String) items.get(i + 1)).toCharArray();
+            long cents = Cents.parse(text, 0, text.length);
+            if (cents == Cents.NONE)
+                totals.addItem(qty, new BigDecimal(text), result);
+            else
+                totals.addItem(qty, cents, Cents.scale(text, 0, text.length), result);
+        }
+        for (String discount : discounts) {
+            char[] text = discount.toCharArray();
+            long cents = Cents.parse(text, 0, text.length);
+            if (cents == Cents.NONE)
+                totals.addDiscount(new BigDecimal(text), result);
+            else
+                totals.addDiscount(cents, Cents.scale(text, 0, text.length), result);
+        }
+        totals.finish(totalAmount, result);
+        return render(result);
+    }
+
+    private static String render(ValidationResult result) {
+        List<String> errors = new ArrayList<>();
+        for (int i = 0; i < result.errorCount(); i++) {
+            Object arg0 = result.getArg(i, 0);
+            Object arg1 = result.getArg(i, 1);
+            errors.add(result.getCode(i).name() + (arg0 != null ? " " + arg0 : "") + (arg1 != null ? " " + arg1 : ""));
+        }
+        return errors.toString();
+    }
+
+    private static final class Reference {
+        final List<String> errors = new ArrayList<>();
+        BigDecimal calculated;
+    }
+
+    // The rule's computation before Totals, unchanged apart from naming the error codes
+    private static Reference reference(List<Object> items, List<String> discounts, BigDecimal totalAmount) {
+        Reference reference = new Reference();
+        List<String> errors = reference.errors;
+
+        BigDecimal itemsTotal = BigDecimal.ZERO;
+        for (int i = 0; i < items.size(); i += 2) {
+            int qty = (Integer) items.get(i);
+            BigDecimal price = new BigDecimal((String) items.get(i + 1));
+
+            if (qty <= 0)
+                errors.add(ErrorCode.ITEM_QTY_NOT_POSITIVE.name());
+            if (price.compareTo(BigDecimal.ZERO) < 0)
+                errors.add(ErrorCode.ITEM_PRICE_NEGATIVE.name());
+
+            if (qty > 10000)
+                errors.add(ErrorCode.QTY_OUTLIER.name());
+            if (price.compareTo(new BigDecimal("10000000")) > 0)
+                errors.add(ErrorCode.PRICE_OUTLIER.name());
+
+            itemsTotal = itemsTotal.add(price.multiply(BigDecimal.valueOf(qty)));
+        }
+
+        BigDecimal discountsTotal = BigDecimal.ZERO;
+        for (String discount : discounts) {
+            BigDecimal amount = new BigDecimal(discount);
+            if (amount.compareTo(BigDecimal.ZERO) < 0)
+                errors.add(ErrorCode.DISCOUNT_NEGATIVE.name());
+            discountsTotal = discountsTotal.add(amount);
+        }
+
+        BigDecimal calculatedTotal = itemsTotal.subtract(discountsTotal);
+        reference.calculated = calculatedTotal;
+        if (totalAmount != null) {
+            if (calculatedTotal.subtract(totalAmount).abs().compareTo(new BigDecimal("0.01")) > 0)
+                errors.add(ErrorCode.TOTAL_MISMATCH.name() + " " + calculatedTotal + " " + totalAmount);
+            if (totalAmount.compareTo(BigDecimal.ZERO) < 0)
+                errors.add(ErrorCode.NEGATIVE_TOTAL.name());
+        }
+
+        if (discountsTotal.compareTo(itemsTotal) > 0)
+            errors.add(ErrorCode.DISCOUNT_EXCEEDS_GROSS.name());
+        return reference;
+    }
+
+    private static List<Object> items(Object... qtyPricePairs) {
+        return List.of(qtyPricePairs);
+    }
+
+    private static List<String> discounts(String... amounts) {
+        return List.of(amounts);
+    }
+}
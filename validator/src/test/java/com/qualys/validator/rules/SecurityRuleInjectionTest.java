@@ -0,0 +1,127 @@
+package com.qualys.validator.rules;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.qualys.validator.engine.ErrorCode;
+import com.qualys.validator.engine.ValidationResult;
+import com.qualys.validator.io.LeanRecordScanner;
+import com.qualys.validator.model.Record;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.params.provider.Arguments.arguments;
+
+// An injection pattern in any string field of a record, or in the name of an unknown field, is
+// reported, and the same way whether the record is databound or read by LeanRecordScanner.
+class SecurityRuleInjectionTest {
+
+    private static final String PAYLOAD = "x<SCRIPT>alert(1)";
+
+    private final SecurityRule rule = new SecurityRule();
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final JsonFactory jsonFactory = new JsonFactory();
+    private final LeanRecordScanner scanner = new LeanRecordScanner(rule.getInjectionPatterns());
+
+    static Stream<Arguments> fields() {
+        return Stream.of(
+                arguments("order_id", ErrorCode.INJECTION_ORDER_ID),
+                arguments("user_id", ErrorCode.INJECTION_USER_ID),
+                arguments("currency", ErrorCode.INJECTION_CURRENCY),
+                arguments("created_at", ErrorCode.INJECTION_CREATED_AT),
+                arguments("updated_at", ErrorCode.INJECTION_UPDATED_AT),
+                arguments("metadata.channel", ErrorCode.INJECTION_METADATA),
+                arguments("items.sku", ErrorCode.INJECTION_SKU),
+                arguments("discounts.type", ErrorCode.INJECTION_DISCOUNT_TYPE),
+                arguments("unknown field value", ErrorCode.INJECTION_UNKNOWN_FIELD),
+                arguments("unknown field name", ErrorCode.INJECTION_UNKNOWN_FIELD),
+                arguments("nested unknown field value", ErrorCode.INJECTION_UNKNOWN_FIELD),
+                arguments("nested unknown field name", ErrorCode.INJECTION_UNKNOWN_FIELD));
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("fields")
+    void injectionIsReported(String field, ErrorCode expected) throws Exception {
+        String json = record(field);
+
+        List<String> bound = bound(json);
+        List<String> scanned = scanned(json);
+
+        assertTrue(bound.contains(expected.name()), field + ": " + bound);
+        assertEquals(bound, scanned, field);
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("fields")
+    void cleanRecordRaisesNothing(String field, ErrorCode expected) throws Exception {
+        String json = record(field).replace(PAYLOAD, "clean");
+
+        assertEquals(List.of(), bound(json), field);
+        assertEquals(List.of(), scanned(json), field);
+    }
+
+    // A valid record with PAYLOAD in the given field
+    private static String record(String field) {
+        String orderId = field.equals("order_id") ? PAYLOAD : "O-1";
+        String userId = field.equals("user_id") ? PAYLOAD : "U-1";
+        String currency = field.equals("currency") ? PAYLOAD : "USD";
+        String createdAt = field.equals("created_at") ? PAYLOAD : "2026-02-10T07:12:30Z";
+        String updatedAt = field.equals("updated_at") ? PAYLOAD : "2026-02-10T07:15:30Z";
+        String channel = field.equals("metadata.channel") ? PAYLOAD : "store";
+        String sku = field.equals("items.sku") ? PAYLOAD : "SKU-1";
+        String type = field.equals("discounts.type") ? PAYLOAD : "PROMO";
+        String unknown;
+        switch (field) {
+            case "unknown field value":
+                unknown = ",\"note\":\"" + PAYLOAD + "\"";
+                break;
+            case "unknown field name":
+                unknown = ",\"" + PAYLOAD + "\":1";
+                break;
+            case "nested unknown field value":
+                unknown = ",\"extra\":{\"tags\":[1,{\"a\":\"" + PAYLOAD + "\"}]}";
+                break;
+            case "nested unknown field name":
+                unknown = ",\"extra\":{\"tags\":[1,{\"" + PAYLOAD + "\":true}]}";
+                break;
+            default:
+                unknown = "";
+        }
+        return "{\"order_id\":\"" + orderId + "\",\"user_id\":\"" + userId + "\",\"currency\":\"" + currency
+                + "\",\"items\":[{\"sku\":\"" + sku + "\",\"qty\":2,\"price\":5.00}],"
+                + "\"discounts\":[{\"type\":\"" + type + "\",\"amount\":1.00}],\"total_amount\":9.00,"
+                + "\"created_at\":\"" + createdAt + "\",\"updated_at\":\"" + updatedAt + "\","
+                + "\"metadata\":{\"channel\":\"" + channel + "\"}" + unknown + "}";
+    }
+
+    private List<String> bound(String json) throws Exception {
+        ValidationResult result = new ValidationResult();
+        rule.validate(mapper.readValue(json, Record.class), null, result);
+        return codes(result);
+    }
+
+    private List<String> scanned(String json) throws Exception {
+        ValidationResult result = new ValidationResult();
+        Record scalars = new Record();
+        try (JsonParser parser = jsonFactory.createParser(json)) {
+            parser.nextToken();
+            assertTrue(scanner.scan(parser, scalars), "lean scan gave up on " + json);
+        }
+        rule.validate(scalars, scanner, null, result);
+        return codes(result);
+    }
+
+    private static List<String> codes(ValidationResult result) {
+        List<String> codes = new ArrayList<>();
+        for (int i = 0; i < result.errorCount(); i++)
+            codes.add(result.getCode(i).name());
+        return codes;
+    }
+}
@@ -0,0 +1,67 @@
+package com.qualys.validator.server;
+
+import com.qualys.validator.CliOptions;
+import com.qualys.validator.rules.SecurityRule;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// A record the rules throw on (a price whose exponent overflows BigDecimal arithmetic) is answered
+// with a parseError line, and the records after it and the summary still come back.
+class ValidationServerTest {
+
+    private static final String VALID = "{\"order_id\":\"%s\",\"user_id\":\"U-1\",\"currency\":\"USD\","
+            + "\"items\":[{\"sku\":\"SKU-1\",\"qty\":1,\"price\":5.00}],\"total_amount\":5.00,"
+            + "\"created_at\":\"2026-02-10T07:12:30Z\",\"updated_at\":\"2026-02-10T07:15:30Z\","
+            + "\"metadata\":{\"channel\":\"store\"}}";
+    private static final String OVERFLOWING = "{\"order_id\":\"O-2\",\"user_id\":\"U-1\",\"currency\":\"USD\","
+            + "\"items\":[{\"sku\":\"SKU-1\",\"qty\":1,\"price\":1E+2147483647}],\"total_amount\":5.00,"
+            + "\"created_at\":\"2026-02-10T07:12:30Z\",\"updated_at\":\"2026-02-10T07:15:30Z\","
+            + "\"metadata\":{\"channel\":\"store\"}}";
+
+    private ValidationServer server;
+
+    @BeforeEach
+    void start() throws Exception {
+        // Port 0 binds any free port
+        server = new ValidationServer(new CliOptions(), SecurityRule.DEFAULT_INJECTION_PATTERNS);
+        server.start();
+    }
+
+    @AfterEach
+    void stop() {
+        server.stop();
+    }
+
+    @Test
+    void recordTheRulesFailOnDoesNotEndTheResponse() throws Exception {
+        List<String> lines = post(String.join("\n", String.format(VALID, "O-1"), OVERFLOWING,
+                "{\"order_id\":\"O-3\",\"items\":[null]}", "not json", String.format(VALID, "O-5")) + "\n");
+
+        assertEquals(6, lines.size(), String.join("\n", lines));
+        assertTrue(lines.get(0).startsWith("{\"line\":1,\"order_id\":\"O-1\",\"valid\":"), lines.get(0));
+        assertTrue(lines.get(1).startsWith("{\"line\":2,\"parseError\":"), lines.get(1));
+        assertTrue(lines.get(2).startsWith("{\"line\":3,\"order_id\":\"O-3\",\"valid\":false"), lines.get(2));
+        assertTrue(lines.get(3).startsWith("{\"line\":4,\"parseError\":"), lines.get(3));
+        assertTrue(lines.get(4).startsWith("{\"line\":5,\"order_id\":\"O-5\",\"valid\":"), lines.get(4));
+        assertEquals("{\"summary\":{\"records\":3,\"invalid\":1,\"parseErrors\":2}}", lines.get(5));
+    }
+
+    private List<String> post(String body) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + server.getPort() + "/validate"))
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        HttpResponse<String> response = HttpClient.newHttpClient().send(request, HttpResponse.BodyHandlers.ofString());
+        assertEquals(200, response.statusCode());
+        return response.body().lines().toList();
+    }
+}